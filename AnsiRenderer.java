@@ -0,0 +1,380 @@
+import java.awt.Color;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws a Game in a terminal using ANSI escape sequences, for watching games
+ * on machines without a display. Every frame is compared to the last frame
+ * sent, and only spaces that changed are written: a cursor move where one is
+ * needed, a color where it differs from the last one, and the space itself.
+ * A frame is built in a reusable byte buffer and sent in a single write, and
+ * frames requested faster than the frame rate are skipped, so the terminal is
+ * never sent more than it can show. Skipped frames lose nothing, since the
+ * next frame is compared against what the terminal actually shows.
+ * @author Zach Cotter
+ */
+public class AnsiRenderer {
+
+    private static final byte ESC = 27;
+    private static final int EMPTY = 0;
+    private static final int BLOCK = 1 << 24;
+    private static final int GHOST = 2 << 24;
+    private static final int UNKNOWN = -1;
+    private static final byte[] EMPTY_TEXT = {' ', '.'};
+    private static final byte[] BLOCK_TEXT = {' ', ' '};
+    private static final byte[] GHOST_TEXT = {'[', ']'};
+    private static final int STATUS_WIDTH = 32;
+
+    private final OutputStream out;
+    private final long frameNanos;
+    private byte[] buffer;
+    private int length;
+    private int[] frame;
+    private int[] shown;
+    private int shownWidth;
+    private int shownHeight;
+    private int shownScore;
+    private int shownLevel;
+    private int cursorX;
+    private int cursorY;
+    private int style;
+    private long lastFrameTime;
+
+    /**
+     * Constructs a renderer writing to the given stream.
+     * @param out OutputStream connected to the terminal
+     * @param maxFramesPerSecond int representing the most frames sent per
+     * second, or 0 for no limit
+     */
+    public AnsiRenderer(OutputStream out,
+                        int maxFramesPerSecond) {
+        this.out = out;
+        this.frameNanos = maxFramesPerSecond > 0
+                          ? 1000000000L / maxFramesPerSecond : 0;
+        buffer = new byte[4096];
+        shownWidth = -1;
+        shownHeight = -1;
+        lastFrameTime = System.nanoTime() - frameNanos;
+    }
+
+    /**
+     * Sends the changes since the last frame, unless the last frame was sent
+     * too recently.
+     * @param game Game to draw
+     * @return whether or not a frame was sent
+     * @throws IOException if the terminal can not be written
+     */
+    public boolean render(Game game) throws IOException {
+        long now = System.nanoTime();
+        if (now - lastFrameTime < frameNanos) {
+            return false;
+        }
+        lastFrameTime = now;
+        Board board = game.getBoard();
+        int width = board.getWidth();
+        int height = board.getHeight();
+        length = 0;
+        if (width != shownWidth || height != shownHeight) {
+            startOver(width,
+                      height);
+        }
+        buildFrame(game);
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int code = frame[row + x];
+                if (code != shown[row + x]) {
+                    writeCell(x,
+                              y,
+                              code);
+                    shown[row + x] = code;
+                }
+            }
+        }
+        if (game.getScore() != shownScore || game.getLevel() != shownLevel) {
+            writeStatus(game.getScore(),
+                        game.getLevel(),
+                        height);
+        }
+        if (length > 0) {
+            setStyle(EMPTY);
+            moveCursor(0,
+                       height + 2);
+            out.write(buffer,
+                      0,
+                      length);
+            out.flush();
+        }
+        return true;
+    }
+
+    /**
+     * Forgets what the terminal shows, so the next frame redraws everything.
+     */
+    public void reset() {
+        shownWidth = -1;
+        shownHeight = -1;
+        lastFrameTime = System.nanoTime() - frameNanos;
+    }
+
+    /**
+     * Restores the terminal's colors and cursor.
+     * @throws IOException if the terminal can not be written
+     */
+    public void close() throws IOException {
+        length = 0;
+        append(ESC);
+        append("[0m");
+        append(ESC);
+        append("[?25h\n");
+        out.write(buffer,
+                  0,
+                  length);
+        out.flush();
+    }
+
+    /**
+     * Clears the terminal and resizes the frames for a board of the given
+     * size.
+     */
+    private void startOver(int width,
+                           int height) {
+        frame = new int[width * height];
+        shown = new int[width * height];
+        Arrays.fill(shown,
+                    UNKNOWN);
+        shownWidth = width;
+        shownHeight = height;
+        shownScore = -1;
+        shownLevel = -1;
+        style = UNKNOWN;
+        //clear the screen and hide the cursor
+        append(ESC);
+        append("[0m");
+        append(ESC);
+        append("[2J");
+        append(ESC);
+        append("[?25l");
+        cursorX = -1;
+        cursorY = -1;
+    }
+
+    /**
+     * Fills the frame with what each space should show: the pile, then the
+     * ghost of the current Tetra, then the current Tetra.
+     */
+    private void buildFrame(Game game) {
+        Board board = game.getBoard();
+        int width = board.getWidth();
+        int top = board.getTop();
+        Arrays.fill(frame,
+                    0,
+                    top * width,
+                    EMPTY);
+        for (int y = top; y < board.getHeight(); y++) {
+            for (int x = 0; x < width; x++) {
+                Color color = board.getColor(x,
+                                             y);
+                frame[y * width + x] = color == null
+                                       ? EMPTY : BLOCK | toAnsi(color);
+            }
+        }
+        Tetra current = game.getCurrent();
+        int ghostDistance = game.getGhostDistance();
+        int color = toAnsi(current.getColor());
+        for (Coordinate c : current.getCells()) {
+            int ghostY = c.getY() + ghostDistance;
+            if (board.inbounds(c.getX(),
+                               ghostY)) {
+                frame[ghostY * width + c.getX()] = GHOST | color;
+            }
+        }
+        for (Coordinate c : current.getCells()) {
+            if (board.inbounds(c.getX(),
+                               c.getY())) {
+                frame[c.getY() * width + c.getX()] = BLOCK | color;
+            }
+        }
+    }
+
+    /**
+     * Appends the sequences drawing one space. Each space is two characters
+     * wide so that spaces look square.
+     */
+    private void writeCell(int x,
+                           int y,
+                           int code) {
+        moveCursor(x * 2,
+                   y);
+        setStyle(code);
+        byte[] text = EMPTY_TEXT;
+        if ((code & BLOCK) != 0) {
+            text = BLOCK_TEXT;
+        }
+        else if ((code & GHOST) != 0) {
+            text = GHOST_TEXT;
+        }
+        append(text[0]);
+        append(text[1]);
+        cursorX += 2;
+    }
+
+    /**
+     * Appends the score and level line below the board.
+     */
+    private void writeStatus(int score,
+                             int level,
+                             int height) {
+        moveCursor(0,
+                   height + 1);
+        setStyle(EMPTY);
+        int start = length;
+        append("Score ");
+        appendInt(score);
+        append("  Level ");
+        appendInt(level);
+        while (length - start < STATUS_WIDTH) {
+            append((byte) ' ');
+        }
+        cursorX += length - start;
+        shownScore = score;
+        shownLevel = level;
+    }
+
+    /**
+     * Appends a cursor move, unless the cursor is already in place. Positions
+     * are zero based, while the terminal counts from one.
+     */
+    private void moveCursor(int column,
+                            int row) {
+        if (column == cursorX && row == cursorY) {
+            return;
+        }
+        append(ESC);
+        append((byte) '[');
+        appendInt(row + 1);
+        append((byte) ';');
+        appendInt(column + 1);
+        append((byte) 'H');
+        cursorX = column;
+        cursorY = row;
+    }
+
+    /**
+     * Appends the color sequence for a space, unless it is already in effect.
+     */
+    private void setStyle(int code) {
+        if (code == style) {
+            return;
+        }
+        append(ESC);
+        append("[0");
+        if ((code & BLOCK) != 0) {
+            append(";48;5;");
+            appendInt(code & 0xFF);
+        }
+        else if ((code & GHOST) != 0) {
+            append(";38;5;");
+            appendInt(code & 0xFF);
+        }
+        append((byte) 'm');
+        style = code;
+    }
+
+    /**
+     * Finds the nearest of the 216 colors of the xterm color cube.
+     * @param color Color to convert
+     * @return int representing an xterm 256 color index
+     */
+    private static int toAnsi(Color color) {
+        int r = (color.getRed() * 5 + 127) / 255;
+        int g = (color.getGreen() * 5 + 127) / 255;
+        int b = (color.getBlue() * 5 + 127) / 255;
+        return 16 + 36 * r + 6 * g + b;
+    }
+
+    private void append(byte b) {
+        if (length == buffer.length) {
+            buffer = Arrays.copyOf(buffer,
+                                   buffer.length * 2);
+        }
+        buffer[length++] = b;
+    }
+
+    private void append(String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            append((byte) ascii.charAt(i));
+        }
+    }
+
+    private void appendInt(int value) {
+        if (value < 0) {
+            append((byte) '-');
+            value = -value;
+        }
+        if (value >= 10) {
+            appendInt(value / 10);
+        }
+        append((byte) ('0' + value % 10));
+    }
+
+    /**
+     * Plays a game with random moves in the terminal, for checking the
+     * renderer over SSH.
+     * Usage: java AnsiRenderer [columns rows [framesPerSecond [seed]]]
+     * @param args String[] of optional board size, frame rate and seed
+     * @throws IOException if the terminal can not be written
+     */
+    public static void main(String[] args) throws IOException {
+        int columns = Board.DEFAULT_WIDTH;
+        int rows = Board.DEFAULT_HEIGHT;
+        int framesPerSecond = 60;
+        long seed = System.nanoTime();
+        if (args.length >= 2) {
+            columns = Integer.parseInt(args[0]);
+            rows = Integer.parseInt(args[1]);
+        }
+        if (args.length >= 3) {
+            framesPerSecond = Integer.parseInt(args[2]);
+        }
+        if (args.length >= 4) {
+            seed = Long.parseLong(args[3]);
+        }
+        Game game = new Game(columns,
+                             rows,
+                             seed);
+        Random moves = new Random(seed);
+        AnsiRenderer renderer =
+            new AnsiRenderer(new FileOutputStream(FileDescriptor.out),
+                             framesPerSecond);
+        while (!game.isGameOver()) {
+            int move = moves.nextInt(8);
+            if (move == 0) {
+                game.moveLeft();
+            }
+            else if (move == 1) {
+                game.moveRight();
+            }
+            else if (move == 2) {
+                game.rotate(true);
+            }
+            else {
+                game.step();
+            }
+            renderer.render(game);
+            try {
+                Thread.sleep(1);
+            }
+            catch (InterruptedException ex) {
+                break;
+            }
+        }
+        renderer.reset();
+        renderer.render(game);
+        renderer.close();
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ * Turns the left and right keys into column moves, timed from the moment a
+ * key went down rather than by the operating system's key repeat. A key
+ * pressed once moves the Tetra once; held past the delayed auto shift (DAS)
+ * it moves again every auto repeat rate (ARR) interval, and with an ARR of 0
+ * it slides straight to the wall. Times are System.nanoTime() values, and the
+ * game loop asks for the moves due up to a given time, so a late loop makes up
+ * the moves it missed instead of losing them. If both keys are held the one
+ * pressed last wins, and releasing it hands over to the other with a fresh
+ * delay.
+ * @author Zach Cotter
+ */
+public class AutoShift {
+
+    public static final long DEFAULT_DELAY_NANOS = 133000000L;
+    public static final long DEFAULT_REPEAT_NANOS = 33000000L;
+
+    private final long delayNanos;
+    private final long repeatNanos;
+    private boolean leftHeld;
+    private boolean rightHeld;
+    //-1 for left, 1 for right, 0 when neither key is held
+    private int direction;
+    private long chargeStart;
+    //auto shifts already handed out for the current hold
+    private long shifted;
+
+    /**
+     * Constructs an auto shift with the default timings.
+     */
+    public AutoShift() {
+        this(DEFAULT_DELAY_NANOS,
+             DEFAULT_REPEAT_NANOS);
+    }
+
+    /**
+     * Constructs an auto shift with the given timings.
+     * @param delayNanos long representing how long a key must be held before
+     * it repeats
+     * @param repeatNanos long representing the time between repeats, 0 to
+     * move all the way at once
+     */
+    public AutoShift(long delayNanos,
+                     long repeatNanos) {
+        if (delayNanos < 0 || repeatNanos < 0) {
+            throw new IllegalArgumentException("Negative auto shift timing");
+        }
+        this.delayNanos = delayNanos;
+        this.repeatNanos = repeatNanos;
+    }
+
+    /**
+     * Records a key going down. Repeated presses of a key already held, as
+     * sent by operating system key repeat, are ignored.
+     * @param direction int representing the key, -1 for left or 1 for right
+     * @param nanos long representing when the key went down
+     * @return True if this was a new press, which the caller should answer
+     * with one immediate move
+     */
+    public boolean press(int direction,
+                         long nanos) {
+        if (direction < 0 ? leftHeld : rightHeld) {
+            return false;
+        }
+        if (direction < 0) {
+            leftHeld = true;
+        }
+        else {
+            rightHeld = true;
+        }
+        charge(direction,
+               nanos);
+        return true;
+    }
+
+    /**
+     * Records a key going up.
+     * @param direction int representing the key, -1 for left or 1 for right
+     * @param nanos long representing when the key went up
+     */
+    public void release(int direction,
+                        long nanos) {
+        if (direction < 0) {
+            leftHeld = false;
+        }
+        else {
+            rightHeld = false;
+        }
+        if (direction == this.direction) {
+            charge(leftHeld ? -1 : rightHeld ? 1 : 0,
+                   nanos);
+        }
+    }
+
+    /**
+     * Forgets both keys, for when the game stops listening to them.
+     */
+    public void reset() {
+        leftHeld = false;
+        rightHeld = false;
+        direction = 0;
+    }
+
+    /**
+     * Accessor for the direction being held.
+     * @return int representing -1 for left, 1 for right, 0 for neither
+     */
+    public int getDirection() {
+        return direction;
+    }
+
+    /**
+     * Counts the auto shifts that have come due since the last call.
+     * @param nanos long representing the time to count up to
+     * @return int representing the moves to make in getDirection(), or
+     * Integer.MAX_VALUE to move as far as possible
+     */
+    public int poll(long nanos) {
+        long held = nanos - chargeStart;
+        if (direction == 0 || held < delayNanos) {
+            return 0;
+        }
+        if (repeatNanos == 0) {
+            return Integer.MAX_VALUE;
+        }
+        long due = 1 + (held - delayNanos) / repeatNanos;
+        long moves = due - shifted;
+        shifted = due;
+        return (int) Math.min(moves,
+                              Integer.MAX_VALUE);
+    }
+
+    private void charge(int direction,
+                        long nanos) {
+        this.direction = direction;
+        chargeStart = nanos;
+        shifted = 0;
+    }
+}
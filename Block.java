@@ -2,23 +2,25 @@ import java.awt.Color;
 import java.awt.Graphics;
 
 /**
- * Represents a Tetris block by position in the grid and color. Includes functions
- * to move the block within a hypothetical grid.
+ * Represents a Tetris block by position in the grid and color. Blocks are
+ * immutable; the position is a shared Coordinate, so a Block is equal to and
+ * hashes like any other Block in the same space.
  * @author Zach Cotter
  */
-public class Block {
+public final class Block {
 
-    private int x;
-    private int y;
-    private Color color;
+    static final int GHOST_INSET = 2;
+
+    private final Coordinate position;
+    private final Color color;
 
     /**
      * Constructs a test block
      */
     public Block() {
-        x = -1;
-        y = -1;
-        color = Color.BLACK;
+        this(-1,
+             -1,
+             Color.BLACK);
     }
 
     /**
@@ -30,8 +32,19 @@ public class Block {
     public Block(int x,
                  int y,
                  Color color) {
-        this.x = x;
-        this.y = y;
+        this(Coordinate.at(x,
+                           y),
+             color);
+    }
+
+    /**
+     * Constructs a block using the given parameters
+     * @param position Coordinate representing position of block in grid
+     * @param color Color representing the color of the block.
+     */
+    public Block(Coordinate position,
+                 Color color) {
+        this.position = position;
         this.color = color;
     }
 
@@ -40,7 +53,7 @@ public class Block {
      * @return int representing x position of block in grid
      */
     public int getX() {
-        return x;
+        return position.getX();
     }
 
     /**
@@ -48,31 +61,15 @@ public class Block {
      * @return int representing y position of block in grid
      */
     public int getY() {
-        return y;
+        return position.getY();
     }
 
     /**
-     * Mutates the x position of the block in the grid
-     * @param x int representing x position of block in grid
+     * Accesses position of block in grid
+     * @return Coordinate representing position of block in grid
      */
-    public void setX(int x) {
-        this.x = x;
-    }
-
-    /**
-     * Mutates the y position of the block int the grid
-     * @param y int representing x position of block in grid
-     */
-    public void setY(int y) {
-        this.y = y;
-    }
-
-    /**
-     * Mutates color of block.
-     * @param color Color of block.
-     */
-    public void setColor(Color color) {
-        this.color = color;
+    public Coordinate getPosition() {
+        return position;
     }
 
     /**
@@ -84,153 +81,31 @@ public class Block {
     }
 
     /**
-     * Moves the block down a row if the result is inbounds
-     * @return whether or not the piece was moved
-     */
-    public boolean moveDown() {
-        if (TetrisFrame.inbounds(x,
-                                 y + 1)) {
-            y += 1;
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Moves the block right a column if the result is inbounds
-     * @return whether or not the piece was moved.
-     */
-    public boolean moveRight() {
-        if (TetrisFrame.inbounds(x + 1,
-                                 y)) {
-            x += 1;
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Moves the block left a column if the result is inbounds
-     * @return whether or not the piece was moved.
-     */
-    public boolean moveLeft() {
-        if (TetrisFrame.inbounds(x - 1,
-                                 y)) {
-            x -= 1;
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Recursively calls moveDown() until it returns false.
-     */
-    public void moveDownToLowestPossible() {
-        boolean keepGoing = false;
-        while (keepGoing) {
-            keepGoing = moveDown();
-        }
-    }
-
-    /**
-     * determines if this block is inbounds
-     * @return Whether or not this block is currently inbounds
-     */
-    public boolean inbounds() {
-        return TetrisFrame.inbounds(x,
-                                    y);
-    }
-
-    /**
-     * Rotates this block counter clockwise around the given grid space, if the
-     * result is inbounds
-     * @param centerPoint Coordinate of axis of rotation
-     * @return whether or not the rotation was successful
-     */
-    public boolean rotateCCW(Coordinate centerPoint) {
-        int targetX = centerPoint.getX() + (centerPoint.getY() - this.getY());
-        int targetY = centerPoint.getY() + (this.getX() - centerPoint.getX());
-        if (TetrisFrame.inbounds(targetX,
-                                 targetY)) {
-            x = targetX;
-            y = targetY;
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Determines if this block can rotate counter clockwise around the given
-     * grid space
-     * @param centerPoint Coordinate of axis of rotation
-     * @return whether or not the rotation would be successful
-     */
-    public boolean canRotateCCW(Coordinate centerPoint) {
-        int targetX = centerPoint.getX() + (centerPoint.getY() - this.getY());
-        int targetY = centerPoint.getY() + (this.getX() - centerPoint.getX());
-        if (TetrisFrame.inbounds(targetX,
-                                 targetY)) {
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Rotates this block clockwise around the given grid space, if the
-     * result is inbounds
-     * @param centerPoint Coordinate of axis of rotation
-     * @return whether or not the rotation was successful
-     */
-    public boolean rotateCW(Coordinate centerPoint) {
-        final int oldX = getX();
-        final int oldY = getY();
-        boolean keepTurning = rotateCCW(centerPoint);
-        if (keepTurning) {
-            keepTurning = rotateCCW(centerPoint);
-        }
-        if (keepTurning) {
-            keepTurning = rotateCCW(centerPoint);
-        }
-        if (!keepTurning) {
-            x = oldX;
-            y = oldY;
-            return false;
-        }
-        else {
-            return true;
-        }
-    }
-
-    /**
-     * Determines if this block can rotate clockwise around the given
-     * grid space
-     * @param centerPoint Coordinate of axis of rotation
-     * @return whether or not the rotation would be successful
+     * Paints the block in the given Graphics.
+     * @param g Graphics of owner component.
      */
-    public boolean canRotateCW(Coordinate centerPoint) {
-        Block testBlock = new Block(this.getX(),
-                                    this.getY(),
-                                    this.getColor());
-        if (testBlock.canRotateCCW(centerPoint)) {
-            testBlock.rotateCCW(centerPoint);
-            if (testBlock.canRotateCCW(centerPoint)) {
-                testBlock.rotateCCW(centerPoint);
-                if (testBlock.canRotateCCW(centerPoint)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    public void paint(Graphics g) {
+        paint(g,
+              this.getX(),
+              this.getY(),
+              this.getColor());
     }
 
     /**
-     * Paints the block in the given Graphics.
+     * Paints a block of the given color at the given grid space. Used for
+     * Blocks in the pile, which are stored by color only.
      * @param g Graphics of owner component.
-     */
-    public void paint(Graphics g) {
-        g.setColor(this.getColor());
-        g.fillRect(this.getX() * World.BLOCK_SIZE,
-                   this.getY() * World.BLOCK_SIZE,
+     * @param x int representing x position of block in grid
+     * @param y int representing y position of block in grid
+     * @param color Color of the block
+     */
+    public static void paint(Graphics g,
+                             int x,
+                             int y,
+                             Color color) {
+        g.setColor(color);
+        g.fillRect(x * World.BLOCK_SIZE,
+                   y * World.BLOCK_SIZE,
                    World.BLOCK_SIZE,
                    World.BLOCK_SIZE);
     }
@@ -240,8 +115,22 @@ public class Block {
      * @param g Graphics of owner component
      */
     public void paintAsEmpty(Graphics g) {
-        int xPos = this.getX() * World.BLOCK_SIZE;
-        int yPos = this.getY() * World.BLOCK_SIZE;
+        paintAsEmpty(g,
+                     this.getX(),
+                     this.getY());
+    }
+
+    /**
+     * Paints the given grid space white
+     * @param g Graphics of owner component
+     * @param x int representing x position of the space in grid
+     * @param y int representing y position of the space in grid
+     */
+    public static void paintAsEmpty(Graphics g,
+                                    int x,
+                                    int y) {
+        int xPos = x * World.BLOCK_SIZE;
+        int yPos = y * World.BLOCK_SIZE;
         g.setColor(Color.white);
         g.fillRect(xPos,
                    yPos,
@@ -249,6 +138,28 @@ public class Block {
                    World.BLOCK_SIZE);
     }
 
+    /**
+     * Paints an outline of a block of the given color at the given grid
+     * space, marking where a falling block will land.
+     * @param g Graphics of owner component
+     * @param x int representing x position of the space in grid
+     * @param y int representing y position of the space in grid
+     * @param color Color of the falling block
+     */
+    public static void paintGhost(Graphics g,
+                                  int x,
+                                  int y,
+                                  Color color) {
+        paintAsEmpty(g,
+                     x,
+                     y);
+        g.setColor(color);
+        g.drawRect(x * World.BLOCK_SIZE + GHOST_INSET,
+                   y * World.BLOCK_SIZE + GHOST_INSET,
+                   World.BLOCK_SIZE - 2 * GHOST_INSET - 1,
+                   World.BLOCK_SIZE - 2 * GHOST_INSET - 1);
+    }
+
     /**
      * Determines if the location given is equivalent to the location of this
      * block
@@ -267,11 +178,10 @@ public class Block {
      * @param obj Block to be compared to.
      * @return Whether or not the given object is equivalent to this.
      */
+    @Override
     public boolean equals(Object obj) {
         if (obj instanceof Block) {
-            Block o = (Block) obj;
-            return equals(o.getX(),
-                          o.getY());
+            return position.equals(((Block) obj).position);
         }
         return false;
     }
@@ -282,7 +192,16 @@ public class Block {
      * @return Whether or not the given block is equivalent to this one.
      */
     public boolean equals(Block other) {
-        return other.getX() == getX() && other.getY() == getY();
+        return position.equals(other.position);
+    }
+
+    /**
+     * Returns a hash code consistent with equals(), which ignores color.
+     * @return int hash of the position of this block
+     */
+    @Override
+    public int hashCode() {
+        return position.hashCode();
     }
 
     /**
@@ -291,6 +210,6 @@ public class Block {
      */
     @Override
     public String toString() {
-        return "(" + x + ", " + y + ") " + color;
+        return position + " " + color;
     }
 }
@@ -0,0 +1,555 @@
+import java.awt.Color;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Represents the pile of the game-play grid. Each row is stored as its own
+ * array of Colors so that clearing a row only moves row references, and the
+ * number of Blocks in each row is tracked so that full and empty rows are found
+ * without scanning cells. The highest occupied row is tracked as well, so work
+ * done after a lock is bounded by the height of the pile rather than the
+ * height of the grid. The highest occupied space of each column is cached so
+ * that the distance a falling Block can drop is usually found without a scan.
+ * The board carries a Zobrist style hash of which spaces are occupied, kept up
+ * to date as Blocks are placed and rows cleared, so that searches can
+ * recognize a pile they have already seen. Each row keeps the XOR of random
+ * keys for its occupied columns, moving with the row when rows are cleared,
+ * and the hash combines every occupied row's key with a key for its height.
+ * Colors are not part of the hash. Rows also keep a bit mask of their occupied
+ * columns, for code that looks at whole rows at once, and a stamp of the last
+ * change to them, so copies of the pile can be refreshed a row at a time.
+ * Copies share row arrays with the board they were copied from, and a row is
+ * only cloned the first time either board writes to it, so a copy costs a few
+ * arrays the height of the board however full the pile is, and a history of
+ * copies only holds new memory for the rows that changed between them.
+ * @author Zach Cotter
+ */
+public class Board {
+
+    public static final int DEFAULT_WIDTH = 10;
+    public static final int DEFAULT_HEIGHT = 20;
+    //the widest standard Tetra spans four columns; sets of wider shapes
+    //need wider boards, see ShapeSet.getMinimumWidth()
+    public static final int MIN_WIDTH = 4;
+    public static final int MIN_HEIGHT = 4;
+    //columns covered by row masks
+    public static final int MASK_WIDTH = 64;
+    //keep column and row keys apart
+    private static final long COLUMN_SALT = 0x434F4C0000000000L;
+    private static final long ROW_SALT = 0x524F570000000000L;
+
+    private final int width;
+    private final int height;
+    private final Color[][] rows;
+    //rows that may be referenced by another board, and must be cloned
+    //before they are written
+    private final boolean[] rowShared;
+    private final int[] rowCounts;
+    private final int[] columnTops;
+    private final long[] rowKeys;
+    private final long[] rowMasks;
+    //changes counted from construction; each row holds the count of the
+    //change that last wrote it
+    private final long[] rowStamps;
+    private long changes;
+    private int blockCount;
+    private int top;
+    private long hash;
+
+    /**
+     * Constructs an empty board of the default size.
+     */
+    public Board() {
+        this(DEFAULT_WIDTH,
+             DEFAULT_HEIGHT);
+    }
+
+    /**
+     * Constructs an empty board of the given size.
+     * @param width int representing the number of columns
+     * @param height int representing the number of rows
+     */
+    public Board(int width,
+                 int height) {
+        if (width < MIN_WIDTH || height < MIN_HEIGHT) {
+            throw new IllegalArgumentException("Board must be at least "
+                                               + MIN_WIDTH + "x" + MIN_HEIGHT
+                                               + ", was " + width + "x"
+                                               + height);
+        }
+        this.width = width;
+        this.height = height;
+        Coordinate.ensureCapacity(width,
+                                  height);
+        rows = new Color[height][width];
+        rowShared = new boolean[height];
+        rowCounts = new int[height];
+        columnTops = new int[width];
+        Arrays.fill(columnTops,
+                    height);
+        rowKeys = new long[height];
+        rowMasks = new long[height];
+        rowStamps = new long[height];
+        blockCount = 0;
+        top = height;
+        hash = 0;
+    }
+
+    /**
+     * Copy constructor. The rows are shared until one of the boards writes
+     * to them.
+     * @param other Board to copy
+     */
+    private Board(Board other) {
+        width = other.width;
+        height = other.height;
+        rows = other.rows.clone();
+        rowShared = new boolean[height];
+        Arrays.fill(rowShared,
+                    true);
+        Arrays.fill(other.rowShared,
+                    true);
+        rowCounts = other.rowCounts.clone();
+        columnTops = other.columnTops.clone();
+        rowKeys = other.rowKeys.clone();
+        rowMasks = other.rowMasks.clone();
+        rowStamps = other.rowStamps.clone();
+        changes = other.changes;
+        blockCount = other.blockCount;
+        top = other.top;
+        hash = other.hash;
+    }
+
+    /**
+     * Instantiates a new Board with the same Blocks as this, completely
+     * independent of it. Rows are shared until they are written, so copying
+     * is cheap and does not depend on how full the board is.
+     * @return a new, identical Board
+     */
+    public Board copy() {
+        return new Board(this);
+    }
+
+    /**
+     * Makes this board hold the same pile as another board of the same size,
+     * reusing this board's rows rather than allocating new ones.
+     * @param other Board to copy
+     */
+    public void copyFrom(Board other) {
+        if (other.width != width || other.height != height) {
+            throw new IllegalArgumentException("Board sizes differ");
+        }
+        for (int y = 0; y < height; y++) {
+            if (rowShared[y]) {
+                rows[y] = other.rows[y].clone();
+                rowShared[y] = false;
+            }
+            else {
+                System.arraycopy(other.rows[y],
+                                 0,
+                                 rows[y],
+                                 0,
+                                 width);
+            }
+        }
+        System.arraycopy(other.rowCounts,
+                         0,
+                         rowCounts,
+                         0,
+                         height);
+        System.arraycopy(other.columnTops,
+                         0,
+                         columnTops,
+                         0,
+                         width);
+        System.arraycopy(other.rowKeys,
+                         0,
+                         rowKeys,
+                         0,
+                         height);
+        System.arraycopy(other.rowMasks,
+                         0,
+                         rowMasks,
+                         0,
+                         height);
+        changes++;
+        Arrays.fill(rowStamps,
+                    changes);
+        blockCount = other.blockCount;
+        top = other.top;
+        hash = other.hash;
+    }
+
+    /**
+     * Writes the size of this board and every Block in it.
+     * @param out DataOutput to write to
+     * @throws IOException if the output can not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(width);
+        out.writeInt(height);
+        out.writeInt(top);
+        for (int y = top; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                Color color = rows[y][x];
+                //colors are opaque, so 0 can stand for an empty space
+                out.writeInt(color == null ? 0 : color.getRGB());
+            }
+        }
+    }
+
+    /**
+     * Reads a board written by writeTo().
+     * @param in DataInput to read from
+     * @return the Board read
+     * @throws IOException if the input can not be read or is not a board
+     */
+    public static Board readFrom(DataInput in) throws IOException {
+        int width = in.readInt();
+        int height = in.readInt();
+        int top = in.readInt();
+        if (top < 0 || top > height) {
+            throw new IOException("Corrupt board");
+        }
+        Board board;
+        try {
+            board = new Board(width,
+                              height);
+        }
+        catch (IllegalArgumentException ex) {
+            throw new IOException(ex);
+        }
+        for (int y = top; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = in.readInt();
+                if (rgb != 0) {
+                    board.place(x,
+                                y,
+                                new Color(rgb,
+                                          true));
+                }
+            }
+        }
+        return board;
+    }
+
+    /**
+     * Accessor for the number of columns
+     * @return int representing the width of the board
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Accessor for the number of rows
+     * @return int representing the height of the board
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Determines if a location is in the bounds of the board.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @return True if both values are within the bounds of the board,
+     * @return False otherwise.
+     */
+    public boolean inbounds(int x,
+                            int y) {
+        return ((x >= 0)
+                && (x < width)
+                && (y >= 0)
+                && (y < height));
+    }
+
+    /**
+     * Determines if a location in the bounds of the board holds a Block.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @return whether or not the location is occupied
+     */
+    public boolean isOccupied(int x,
+                              int y) {
+        return rows[y][x] != null;
+    }
+
+    /**
+     * Determines if a location is either out of bounds or occupied, meaning
+     * a falling Block can not be placed there.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @return whether or not the location is blocked
+     */
+    public boolean isBlocked(int x,
+                             int y) {
+        return !inbounds(x,
+                         y) || rows[y][x] != null;
+    }
+
+    /**
+     * Accesses the color of the Block at the given location.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @return Color of the Block, or null if the location is empty
+     */
+    public Color getColor(int x,
+                          int y) {
+        return rows[y][x];
+    }
+
+    /**
+     * Copies the colors of a row into an array.
+     * @param y int representing the row
+     * @param dest Color[] to copy into, null where the row is empty
+     * @param offset int representing the index in dest of the first column
+     */
+    public void copyRow(int y,
+                        Color[] dest,
+                        int offset) {
+        System.arraycopy(rows[y],
+                         0,
+                         dest,
+                         offset,
+                         width);
+    }
+
+    /**
+     * Adds a Block of the given color to the pile.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @param color Color of the Block
+     */
+    public void place(int x,
+                      int y,
+                      Color color) {
+        if (rows[y][x] == null) {
+            hash ^= hashRow(y);
+            rowCounts[y]++;
+            rowKeys[y] ^= mix(x + COLUMN_SALT);
+            if (x < MASK_WIDTH) {
+                rowMasks[y] |= 1L << x;
+            }
+            hash ^= hashRow(y);
+            blockCount++;
+        }
+        if (rowShared[y]) {
+            rows[y] = rows[y].clone();
+            rowShared[y] = false;
+        }
+        rows[y][x] = color;
+        rowStamps[y] = ++changes;
+        if (y < top) {
+            top = y;
+        }
+        if (y < columnTops[x]) {
+            columnTops[x] = y;
+        }
+    }
+
+    /**
+     * Accessor for the highest occupied row.
+     * @return int representing the y value of the highest row holding a
+     * Block, or the height of the board if the board is empty.
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Accessor for the highest occupied space of a column.
+     * @param x int representing the column
+     * @return int representing the y value of the highest Block in the
+     * column, or the height of the board if the column is empty.
+     */
+    public int getColumnTop(int x) {
+        return columnTops[x];
+    }
+
+    /**
+     * Determines how many rows a Block at the given location could fall
+     * before landing on the pile or the bottom of the board.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @return int representing the number of empty spaces below the location
+     */
+    public int findDropDistance(int x,
+                                int y) {
+        if (y < columnTops[x]) {
+            return columnTops[x] - 1 - y;
+        }
+        //tucked under an overhang, so the column must be scanned
+        int landing = y + 1;
+        while (landing < height && rows[landing][x] == null) {
+            landing++;
+        }
+        return landing - 1 - y;
+    }
+
+    /**
+     * Counts the rows between the highest Block and the bottom of the board.
+     * @return int representing the height of the pile in rows
+     */
+    public int getPileHeight() {
+        return height - top;
+    }
+
+    /**
+     * Determines if there are no Blocks on the board.
+     * @return True if the board is empty
+     */
+    public boolean isEmpty() {
+        return blockCount == 0;
+    }
+
+    /**
+     * Determines if every column of the given row holds a Block.
+     * @param y int representing the row
+     * @return True if the row is full
+     */
+    public boolean isRowFull(int y) {
+        return rowCounts[y] == width;
+    }
+
+    /**
+     * Erases the full rows between the given rows and moves the rows above
+     * them down. Only rows from the top of the pile down to the lowest cleared
+     * row are touched, and they are moved by reference.
+     * @param fromY int representing the highest row that may be full
+     * @param toY int representing the lowest row that may be full
+     * @return int representing the number of rows cleared
+     */
+    public int clearFullRows(int fromY,
+                             int toY) {
+        int lowest = -1;
+        for (int y = toY; y >= fromY; y--) {
+            if (isRowFull(y)) {
+                lowest = y;
+                break;
+            }
+        }
+        if (lowest == -1) {
+            return 0;
+        }
+        int oldTop = top;
+        for (int y = oldTop; y <= lowest; y++) {
+            hash ^= hashRow(y);
+        }
+        int write = lowest;
+        Color[][] cleared = new Color[toY - fromY + 1][];
+        int clearedCount = 0;
+        for (int read = lowest; read >= oldTop; read--) {
+            if (read >= fromY && isRowFull(read)) {
+                //a shared row may still be in use by another board
+                cleared[clearedCount++] = rowShared[read] ? null : rows[read];
+                blockCount -= width;
+                continue;
+            }
+            rows[write] = rows[read];
+            rowShared[write] = rowShared[read];
+            rowCounts[write] = rowCounts[read];
+            rowKeys[write] = rowKeys[read];
+            rowMasks[write] = rowMasks[read];
+            write--;
+        }
+        //recycle the cleared arrays as the new empty rows at the top
+        for (int i = 0; i < clearedCount; i++) {
+            Color[] row = cleared[i];
+            if (row == null) {
+                row = new Color[width];
+            }
+            else {
+                Arrays.fill(row,
+                            null);
+            }
+            rows[write] = row;
+            rowShared[write] = false;
+            rowCounts[write] = 0;
+            rowKeys[write] = 0;
+            rowMasks[write] = 0;
+            write--;
+        }
+        top = Math.min(oldTop + clearedCount,
+                       height);
+        while (top < height && rowCounts[top] == 0) {
+            top++;
+        }
+        for (int y = top; y <= lowest; y++) {
+            hash ^= hashRow(y);
+        }
+        //every row from the old top down has moved or been emptied
+        changes++;
+        Arrays.fill(rowStamps,
+                    oldTop,
+                    lowest + 1,
+                    changes);
+        for (int x = 0; x < width; x++) {
+            int y = top;
+            while (y < height && rows[y][x] == null) {
+                y++;
+            }
+            columnTops[x] = y;
+        }
+        return clearedCount;
+    }
+
+    /**
+     * Accessor for when a row last changed, so a copy of the board's rows
+     * can be brought up to date by copying only the rows whose stamp is not
+     * the one it copied. Stamps only mean anything compared with earlier
+     * stamps of the same Board.
+     * @param y int representing the row
+     * @return long that changes whenever the row's Blocks do
+     */
+    public long getRowStamp(int y) {
+        return rowStamps[y];
+    }
+
+    /**
+     * Accessor for the occupied columns of a row. Only the first MASK_WIDTH
+     * columns are covered.
+     * @param y int representing the row
+     * @return long with bit x set if column x of the row holds a Block
+     */
+    public long getRowMask(int y) {
+        return rowMasks[y];
+    }
+
+    /**
+     * Accessor for the hash of the occupied spaces. Boards with Blocks in the
+     * same spaces have the same hash, whatever their colors or the order the
+     * Blocks arrived in.
+     * @return long representing the hash, 0 for an empty board
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Determines what a row adds to the hash.
+     * @param y int representing the row
+     * @return long representing the row's share of the hash, 0 if it is empty
+     */
+    private long hashRow(int y) {
+        if (rowCounts[y] == 0) {
+            return 0;
+        }
+        return mix(rowKeys[y] ^ mix(y + ROW_SALT));
+    }
+
+    /**
+     * Scrambles a value into a well distributed random looking key, the same
+     * every run, so no key tables need to be stored or grown.
+     * @param value long to scramble
+     * @return long key
+     */
+    static long mix(long value) {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,282 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures the features of a pile that bots weigh when choosing a placement:
+ * column heights, holes, transitions and wells. Boards up to MASK_WIDTH
+ * columns are measured a whole row at a time from the Board's row masks, with
+ * each bit of a mask standing for a column, so a handful of bitwise operations
+ * and bit counts do the work of a loop over every space. Wider boards fall back
+ * to checking one space at a time, which gives the same results.
+ * Features for many candidate boards are written to one int array, one
+ * vector of FEATURE_COUNT values per board, indexed by the feature constants.
+ * @author Zach Cotter
+ */
+public final class BoardFeatures {
+
+    //sum of column heights
+    public static final int AGGREGATE_HEIGHT = 0;
+    //height of the tallest column
+    public static final int MAX_HEIGHT = 1;
+    //sum of height differences between neighboring columns
+    public static final int BUMPINESS = 2;
+    //empty spaces with a Block somewhere above them
+    public static final int HOLES = 3;
+    //changes between empty and occupied along each row, walls counting as
+    //occupied
+    public static final int ROW_TRANSITIONS = 4;
+    //changes between empty and occupied down each column, the floor counting
+    //as occupied
+    public static final int COLUMN_TRANSITIONS = 5;
+    //open spaces with occupied spaces or walls on both sides, each counting
+    //its depth in the well, so a well d deep counts 1 + 2 + ... + d
+    public static final int CUMULATIVE_WELLS = 6;
+    public static final int FEATURE_COUNT = 7;
+
+    private BoardFeatures() {
+    }
+
+    /**
+     * Measures a batch of boards.
+     * @param boards Board[] to measure
+     * @param count int representing how many of the boards to measure
+     * @param features int[] receiving FEATURE_COUNT values per board, the
+     * values for boards[i] starting at i * FEATURE_COUNT
+     */
+    public static void extract(Board[] boards,
+                               int count,
+                               int[] features) {
+        for (int i = 0; i < count; i++) {
+            extract(boards[i],
+                    features,
+                    i * FEATURE_COUNT);
+        }
+    }
+
+    /**
+     * Measures a board, a row at a time if it is narrow enough.
+     * @param board Board to measure
+     * @param features int[] receiving the values
+     * @param offset int representing where the values start
+     */
+    public static void extract(Board board,
+                               int[] features,
+                               int offset) {
+        if (board.getWidth() > Board.MASK_WIDTH) {
+            extractScalar(board,
+                          features,
+                          offset);
+            return;
+        }
+        int width = board.getWidth();
+        int height = board.getHeight();
+        int top = board.getTop();
+        long full = width == 64 ? -1L : (1L << width) - 1;
+        long rightWall = 1L << (width - 1);
+        extractHeights(board,
+                       features,
+                       offset);
+        int holes = 0;
+        //empty rows above the pile only meet the walls
+        int rowTransitions = 2 * top;
+        int columnTransitions = 0;
+        int wells = 0;
+        //runs[k] holds the columns whose well has gone on for more than k rows
+        long[] runs = new long[height - top + 1];
+        int runLevels = 0;
+        long above = 0;
+        long previous = top > 0 ? 0 : board.getRowMask(0);
+        for (int y = top; y < height; y++) {
+            long row = board.getRowMask(y);
+            holes += Long.bitCount(above & ~row);
+            rowTransitions += Long.bitCount((row ^ (row >>> 1)) & (full >>> 1))
+                              + (int) (~row & 1)
+                              + (int) ((~row >>> (width - 1)) & 1);
+            columnTransitions += Long.bitCount(previous ^ row);
+            long well = ~row & ~above & full
+                        & ((row << 1) | 1)
+                        & ((row >>> 1) | rightWall);
+            for (int k = runLevels; k > 0; k--) {
+                runs[k] = well & runs[k - 1];
+            }
+            runs[0] = well;
+            runLevels++;
+            while (runLevels > 0 && runs[runLevels - 1] == 0) {
+                runLevels--;
+            }
+            for (int k = 0; k < runLevels; k++) {
+                wells += Long.bitCount(runs[k]);
+            }
+            above |= row;
+            previous = row;
+        }
+        //the floor below the bottom row
+        columnTransitions += Long.bitCount(~previous & full);
+        features[offset + HOLES] = holes;
+        features[offset + ROW_TRANSITIONS] = rowTransitions;
+        features[offset + COLUMN_TRANSITIONS] = columnTransitions;
+        features[offset + CUMULATIVE_WELLS] = wells;
+    }
+
+    /**
+     * Measures a board one space at a time. Works on boards of any width.
+     * @param board Board to measure
+     * @param features int[] receiving the values
+     * @param offset int representing where the values start
+     */
+    public static void extractScalar(Board board,
+                                     int[] features,
+                                     int offset) {
+        int width = board.getWidth();
+        int height = board.getHeight();
+        extractHeights(board,
+                       features,
+                       offset);
+        int holes = 0;
+        int rowTransitions = 0;
+        int columnTransitions = 0;
+        int wells = 0;
+        for (int y = 0; y < height; y++) {
+            boolean last = true;
+            for (int x = 0; x < width; x++) {
+                boolean occupied = board.isOccupied(x,
+                                                    y);
+                if (occupied != last) {
+                    rowTransitions++;
+                }
+                last = occupied;
+            }
+            if (!last) {
+                rowTransitions++;
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            int columnTop = board.getColumnTop(x);
+            int run = 0;
+            for (int y = 0; y < height; y++) {
+                boolean occupied = board.isOccupied(x,
+                                                    y);
+                if (!occupied && y > columnTop) {
+                    holes++;
+                }
+                boolean below = y == height - 1 || board.isOccupied(x,
+                                                                   y + 1);
+                if (occupied != below) {
+                    columnTransitions++;
+                }
+                if (!occupied && y < columnTop
+                    && (x == 0 || board.isOccupied(x - 1,
+                                                   y))
+                    && (x == width - 1 || board.isOccupied(x + 1,
+                                                           y))) {
+                    run++;
+                    wells += run;
+                }
+                else {
+                    run = 0;
+                }
+            }
+        }
+        features[offset + HOLES] = holes;
+        features[offset + ROW_TRANSITIONS] = rowTransitions;
+        features[offset + COLUMN_TRANSITIONS] = columnTransitions;
+        features[offset + CUMULATIVE_WELLS] = wells;
+    }
+
+    /**
+     * Fills in the height features from the Board's cached column tops.
+     */
+    private static void extractHeights(Board board,
+                                       int[] features,
+                                       int offset) {
+        int height = board.getHeight();
+        int aggregate = 0;
+        int max = 0;
+        int bumpiness = 0;
+        int last = -1;
+        for (int x = 0; x < board.getWidth(); x++) {
+            int columnHeight = height - board.getColumnTop(x);
+            aggregate += columnHeight;
+            max = Math.max(max,
+                           columnHeight);
+            if (last >= 0) {
+                bumpiness += Math.abs(columnHeight - last);
+            }
+            last = columnHeight;
+        }
+        features[offset + AGGREGATE_HEIGHT] = aggregate;
+        features[offset + MAX_HEIGHT] = max;
+        features[offset + BUMPINESS] = bumpiness;
+    }
+
+    /**
+     * Compares the row mask and space by space versions on boards from random
+     * games, then prints how many boards each measures per second.
+     * Usage: java BoardFeatures [boards [rounds]]
+     * @param args String[] of optional board count and number of timed rounds
+     */
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 10000;
+        int rounds = args.length >= 2 ? Integer.parseInt(args[1]) : 50;
+        Random random = new Random(1);
+        Board[] boards = new Board[count];
+        Game game = new Game(Board.DEFAULT_WIDTH,
+                             Board.DEFAULT_HEIGHT,
+                             random.nextLong());
+        for (int i = 0; i < count; i++) {
+            if (game.isGameOver()) {
+                game = new Game(Board.DEFAULT_WIDTH,
+                                Board.DEFAULT_HEIGHT,
+                                random.nextLong());
+            }
+            for (int shift = random.nextInt(9) - 4; shift != 0;
+                 shift -= Integer.signum(shift)) {
+                if (shift < 0) {
+                    game.moveLeft();
+                }
+                else {
+                    game.moveRight();
+                }
+            }
+            game.hardDrop();
+            boards[i] = game.getBoard().copy();
+        }
+        int[] packed = new int[count * FEATURE_COUNT];
+        int[] scalar = new int[count * FEATURE_COUNT];
+        extract(boards,
+                count,
+                packed);
+        for (int i = 0; i < count; i++) {
+            extractScalar(boards[i],
+                          scalar,
+                          i * FEATURE_COUNT);
+        }
+        if (!Arrays.equals(packed,
+                           scalar)) {
+            System.out.println("Row mask and scalar features differ");
+            return;
+        }
+        long packedNanos = Long.MAX_VALUE;
+        long scalarNanos = Long.MAX_VALUE;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            extract(boards,
+                    count,
+                    packed);
+            packedNanos = Math.min(packedNanos,
+                                   System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                extractScalar(boards[i],
+                              scalar,
+                              i * FEATURE_COUNT);
+            }
+            scalarNanos = Math.min(scalarNanos,
+                                   System.nanoTime() - start);
+        }
+        System.out.println("row masks: " + count * 1000000000L / packedNanos
+                           + " boards/s");
+        System.out.println("scalar:    " + count * 1000000000L / scalarNanos
+                           + " boards/s");
+    }
+}
@@ -1,37 +1,52 @@
 
 /**
 
- * Represents integer cartesian coordinates.
+ * Represents immutable integer cartesian coordinates. Coordinates covering
+
+ * every space of every Board in use, plus a margin for rotations that leave
+
+ * the grid, are preallocated in a shared table and handed out by at(), so
+
+ * moving a Tetra allocates nothing and equal Coordinates are usually the same
+
+ * object.
 
  * @author Zach Cotter
 
  */
-public class Coordinate {
+public final class Coordinate {
 
-    private int x;
-    private int y;
+    //spaces outside the grid a rotation can reach before it is rejected
+    private static final int MARGIN = 4;
+
+    private static volatile Table table = new Table(Board.DEFAULT_WIDTH,
+                                                    Board.DEFAULT_HEIGHT,
+                                                    null);
+
+    private final int x;
+    private final int y;
 
     /**
-    
+
      * Creates a new coordinate (-1,-1).
-    
+
      */
     public Coordinate() {
 
-        x = -1;
-
-        y = -1;
+        this(-1, -1);
 
     }
 
     /**
-    
-     * Creates a new coordinate (x,y)
-    
+
+     * Creates a new coordinate (x,y). Prefer at(), which does not allocate
+
+     * for spaces in the table.
+
      * @param x int representing x value of new coordinate
-    
+
      * @param y int representing y value of new coordinate
-    
+
      */
     public Coordinate(int x, int y) {
 
@@ -42,11 +57,67 @@ public class Coordinate {
     }
 
     /**
-    
+
+     * Returns the shared Coordinate (x,y). Spaces outside the table are
+
+     * allocated on each call.
+
+     * @param x int representing x value of the coordinate
+
+     * @param y int representing y value of the coordinate
+
+     * @return Coordinate (x,y)
+
+     */
+    public static Coordinate at(int x, int y) {
+
+        Table t = table;
+
+        int tx = x + MARGIN;
+
+        int ty = y + MARGIN;
+
+        if (tx >= 0 && tx < t.width && ty >= 0 && ty < t.height) {
+
+            return t.cells[ty * t.width + tx];
+
+        }
+
+        return new Coordinate(x, y);
+
+    }
+
+    /**
+
+     * Grows the shared table, if needed, to cover a grid of the given size.
+
+     * Coordinates already handed out stay in the table.
+
+     * @param width int representing the number of columns of the grid
+
+     * @param height int representing the number of rows of the grid
+
+     */
+    public static synchronized void ensureCapacity(int width, int height) {
+
+        Table t = table;
+
+        if (width + 2 * MARGIN > t.width || height + 2 * MARGIN > t.height) {
+
+            table = new Table(Math.max(width, t.width - 2 * MARGIN),
+                              Math.max(height, t.height - 2 * MARGIN),
+                              t);
+
+        }
+
+    }
+
+    /**
+
      * Accessor for x value
-    
+
      * @return int representing x value of this
-    
+
      */
     public int getX() {
 
@@ -55,11 +126,11 @@ public class Coordinate {
     }
 
     /**
-    
+
      * Accessor for y value
-    
+
      * @return int representing y value of this
-    
+
      */
     public int getY() {
 
@@ -68,37 +139,28 @@ public class Coordinate {
     }
 
     /**
-    
-     * Mutator for x value
-    
-     * @param x int representing new x value of this
-    
-     */
-    public void setX(int x) {
 
-        this.x = x;
+     * Returns the Coordinate offset from this one.
 
-    }
+     * @param dx int representing horizontal offset
+
+     * @param dy int representing vertical offset
+
+     * @return Coordinate (x + dx, y + dy)
 
-    /**
-    
-     * Mutator for y value
-    
-     * @param y int representing new y value of this
-    
      */
-    public void setY(int y) {
+    public Coordinate translate(int dx, int dy) {
 
-        this.y = y;
+        return at(x + dx, y + dy);
 
     }
 
     /**
-    
+
      * Returns a String representing this.
-    
+
      * @return A String representation of this coordinate: (x,y)
-    
+
      */
     @Override
     public String toString() {
@@ -108,19 +170,25 @@ public class Coordinate {
     }
 
     /**
-    
+
      * Determines if this is equivalent to the given object, if it is even an
-    
+
      * instanceof Coordinate
-    
+
      * @param obj Object to be compared to this.
-    
+
      * @return Whether or not the objects are equivalent
-    
+
      */
     @Override
     public boolean equals(Object obj) {
 
+        if (obj == this) {
+
+            return true;
+
+        }
+
         if (obj instanceof Coordinate) {
 
             Coordinate o = (Coordinate) obj;
@@ -132,4 +200,65 @@ public class Coordinate {
         return false;
 
     }
+
+    /**
+
+     * Returns a hash code consistent with equals().
+
+     * @return int hash of the x and y values
+
+     */
+    @Override
+    public int hashCode() {
+
+        return 31 * x + y;
+
+    }
+
+    /**
+
+     * Preallocated Coordinates for a rectangle of spaces, stored row by row.
+
+     */
+    private static final class Table {
+
+        private final int width;
+        private final int height;
+        private final Coordinate[] cells;
+
+        private Table(int gridWidth, int gridHeight, Table previous) {
+
+            width = gridWidth + 2 * MARGIN;
+
+            height = gridHeight + 2 * MARGIN;
+
+            cells = new Coordinate[width * height];
+
+            for (int ty = 0; ty < height; ty++) {
+
+                for (int tx = 0; tx < width; tx++) {
+
+                    Coordinate c = null;
+
+                    if (previous != null && tx < previous.width
+                        && ty < previous.height) {
+
+                        c = previous.cells[ty * previous.width + tx];
+
+                    }
+
+                    if (c == null) {
+
+                        c = new Coordinate(tx - MARGIN, ty - MARGIN);
+
+                    }
+
+                    cells[ty * width + tx] = c;
+
+                }
+
+            }
+
+        }
+    }
 }
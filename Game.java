@@ -0,0 +1,830 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Runs game operations without any graphics, so the same game can be shown
+ * by the Swing World, a terminal, or nothing at all. Blocks that have already
+ * reached the bottom are stored by a Board. The Tetra still in motion is
+ * referred to in comments as the "current Tetra", and the Blocks in the Board
+ * as the "pile". Given the same seed and the same sequence of calls, a Game
+ * always plays out the same way, and copy() captures everything needed to
+ * carry on from the same point. Outside code follows what happens in the game
+ * through GameListeners.
+ * A Tetra resting on the pile locks after the lock delay, counted in ticks.
+ * Each successful move or rotation restarts the delay, until the Tetra has
+ * used up its move resets. With no lock delay, a resting Tetra locks the next
+ * time gravity would move it down a row.
+ * @author Zach Cotter
+ */
+public class Game {
+
+    private static final int POINTS_PER_BLOCK = 10;
+    private static final int POINTS_PER_TOTAL_CLEAR = 500;
+    private static final int POINTS_PER_CLEAR = 100;
+    private static final int POINTS_PER_LEVEL = 1000;
+    //milliseconds between calls to step() in real time play
+    public static final int TICK_MILLIS = 16;
+    //about half a second
+    public static final int DEFAULT_LOCK_DELAY_TICKS = 30;
+    public static final int DEFAULT_LOCK_RESETS = 15;
+    //same linear congruential generator as java.util.Random, kept in a field
+    //so that copies of a game draw the same pieces
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    private static final GameListener[] NO_LISTENERS = new GameListener[0];
+
+    private final Board board;
+    private final ShapeSet shapes;
+    private long generatorState;
+    private Tetra current;
+    //the Tetra locked before lastLocked, recycled as the next current Tetra
+    private Tetra spare;
+    private int ghostDistance;
+    private GravityCurve gravityCurve = GravityCurve.STANDARD;
+    private int gravityAccumulator;
+    private int lockDelayTicks;
+    private int lockResetLimit;
+    //ticks the current Tetra has rested on the pile
+    private int lockTimer;
+    //times the current Tetra has restarted its lock delay
+    private int lockResets;
+    private int score;
+    private int level;
+    private boolean gameOver;
+    private int lockCount;
+    private Tetra lastLocked;
+    private int lastRowsCleared;
+    private int lastChangedTop;
+    private int lastChangedBottom;
+    //replaced rather than changed, so a listener may add or remove listeners
+    //while events are being dispatched
+    private GameListener[] listeners = NO_LISTENERS;
+    private GameEvent event;
+
+    /**
+     * Constructs a new game on a board of the given size, with pieces chosen
+     * by a generator seeded from the clock.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     */
+    public Game(int columns,
+                int rows) {
+        this(columns,
+             rows,
+             System.nanoTime());
+    }
+
+    /**
+     * Constructs a new game on a board of the given size, with pieces chosen
+     * by a generator with the given seed.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     * @param seed long seed of the piece generator
+     */
+    public Game(int columns,
+                int rows,
+                long seed) {
+        this(columns,
+             rows,
+             seed,
+             ShapeSet.STANDARD);
+    }
+
+    /**
+     * Constructs a new game on a board of the given size, with pieces chosen
+     * from the given set by a generator with the given seed.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     * @param seed long seed of the piece generator
+     * @param shapes ShapeSet the pieces are drawn from
+     */
+    public Game(int columns,
+                int rows,
+                long seed,
+                ShapeSet shapes) {
+        if (columns < shapes.getMinimumWidth()
+            || rows < shapes.getMinimumHeight()) {
+            throw new IllegalArgumentException("Board must be at least "
+                                               + shapes.getMinimumWidth() + "x"
+                                               + shapes.getMinimumHeight()
+                                               + " for these shapes, was "
+                                               + columns + "x" + rows);
+        }
+        this.board = new Board(columns,
+                               rows);
+        this.shapes = shapes;
+        generatorState = (seed ^ MULTIPLIER) & MASK;
+        score = 0;
+        level = 0;
+        gravityAccumulator = 0;
+        gameOver = false;
+        spawnTetra();
+    }
+
+    /**
+     * Copy constructor
+     * @param other Game to copy
+     */
+    private Game(Game other) {
+        board = other.board.copy();
+        shapes = other.shapes;
+        generatorState = other.generatorState;
+        current = other.current.cloneMethod();
+        ghostDistance = other.ghostDistance;
+        gravityCurve = other.gravityCurve;
+        gravityAccumulator = other.gravityAccumulator;
+        lockDelayTicks = other.lockDelayTicks;
+        lockResetLimit = other.lockResetLimit;
+        lockTimer = other.lockTimer;
+        lockResets = other.lockResets;
+        score = other.score;
+        level = other.level;
+        gameOver = other.gameOver;
+        lockCount = other.lockCount;
+        //copied, since the Tetra is recycled at the next lock
+        lastLocked = other.lastLocked == null ? null
+                                              : other.lastLocked.cloneMethod();
+        lastRowsCleared = other.lastRowsCleared;
+        lastChangedTop = other.lastChangedTop;
+        lastChangedBottom = other.lastChangedBottom;
+    }
+
+    /**
+     * Constructs a game around a board read from a saved state, leaving every
+     * other field for readState() to fill in.
+     * @param board Board holding the pile
+     * @param shapes ShapeSet the pieces are drawn from
+     */
+    private Game(Board board,
+                 ShapeSet shapes) {
+        this.board = board;
+        this.shapes = shapes;
+    }
+
+    /**
+     * Writes everything needed to carry on from this point except the
+     * GravityCurve, which callers store once for the whole game.
+     * @param out DataOutput to write to
+     * @throws IOException if the output can not be written
+     */
+    public void writeState(DataOutput out) throws IOException {
+        board.writeTo(out);
+        out.writeLong(generatorState);
+        current.writeTo(out);
+        out.writeInt(ghostDistance);
+        out.writeInt(gravityAccumulator);
+        out.writeInt(score);
+        out.writeInt(level);
+        out.writeBoolean(gameOver);
+        out.writeInt(lockCount);
+        out.writeBoolean(lastLocked != null);
+        if (lastLocked != null) {
+            lastLocked.writeTo(out);
+        }
+        out.writeInt(lastRowsCleared);
+        out.writeInt(lastChangedTop);
+        out.writeInt(lastChangedBottom);
+        out.writeInt(lockDelayTicks);
+        out.writeInt(lockResetLimit);
+        out.writeInt(lockTimer);
+        out.writeInt(lockResets);
+    }
+
+    /**
+     * Reads a game of the standard pieces written by writeState().
+     * @param in DataInput to read from
+     * @param gravityCurve GravityCurve the game was played with
+     * @return a Game in the saved state
+     * @throws IOException if the input can not be read
+     */
+    public static Game readState(DataInput in,
+                                 GravityCurve gravityCurve) throws IOException {
+        return readState(in,
+                         gravityCurve,
+                         ShapeSet.STANDARD);
+    }
+
+    /**
+     * Reads a game written by writeState().
+     * @param in DataInput to read from
+     * @param gravityCurve GravityCurve the game was played with
+     * @param shapes ShapeSet the game draws its pieces from
+     * @return a Game in the saved state
+     * @throws IOException if the input can not be read
+     */
+    public static Game readState(DataInput in,
+                                 GravityCurve gravityCurve,
+                                 ShapeSet shapes) throws IOException {
+        Board board = Board.readFrom(in);
+        if (board.getWidth() < shapes.getMinimumWidth()
+            || board.getHeight() < shapes.getMinimumHeight()) {
+            throw new IOException("Board too small for the shapes");
+        }
+        Game game = new Game(board,
+                             shapes);
+        game.generatorState = in.readLong();
+        game.current = Tetra.readFrom(in);
+        game.ghostDistance = in.readInt();
+        game.gravityCurve = gravityCurve;
+        game.gravityAccumulator = in.readInt();
+        game.score = in.readInt();
+        game.level = in.readInt();
+        game.gameOver = in.readBoolean();
+        game.lockCount = in.readInt();
+        if (in.readBoolean()) {
+            game.lastLocked = Tetra.readFrom(in);
+        }
+        game.lastRowsCleared = in.readInt();
+        game.lastChangedTop = in.readInt();
+        game.lastChangedBottom = in.readInt();
+        game.lockDelayTicks = in.readInt();
+        game.lockResetLimit = in.readInt();
+        game.lockTimer = in.readInt();
+        game.lockResets = in.readInt();
+        return game;
+    }
+
+    /**
+     * Instantiates a new Game in the same state as this, completely
+     * independent of it. Listeners are not copied.
+     * @return a new, identical Game
+     */
+    public Game copy() {
+        return new Game(this);
+    }
+
+    /**
+     * Puts this game in the same state as another, reusing this game's Board
+     * rows and Tetras instead of allocating new ones, so a game can be saved
+     * and restored over and over without garbage. Listeners are not copied.
+     * @param other Game on a board of the same size with the same pieces
+     * @throws IllegalArgumentException if the boards or ShapeSets differ
+     */
+    public void copyFrom(Game other) {
+        if (other.shapes != shapes) {
+            throw new IllegalArgumentException("ShapeSets differ");
+        }
+        board.copyFrom(other.board);
+        generatorState = other.generatorState;
+        current.copyFrom(other.current);
+        ghostDistance = other.ghostDistance;
+        gravityCurve = other.gravityCurve;
+        gravityAccumulator = other.gravityAccumulator;
+        lockDelayTicks = other.lockDelayTicks;
+        lockResetLimit = other.lockResetLimit;
+        lockTimer = other.lockTimer;
+        lockResets = other.lockResets;
+        score = other.score;
+        level = other.level;
+        gameOver = other.gameOver;
+        lockCount = other.lockCount;
+        if (other.lastLocked == null) {
+            if (spare == null) {
+                spare = lastLocked;
+            }
+            lastLocked = null;
+        }
+        else {
+            if (lastLocked == null) {
+                lastLocked = spare != null ? spare
+                                           : other.lastLocked.cloneMethod();
+                spare = null;
+            }
+            lastLocked.copyFrom(other.lastLocked);
+        }
+        lastRowsCleared = other.lastRowsCleared;
+        lastChangedTop = other.lastChangedTop;
+        lastChangedBottom = other.lastChangedBottom;
+    }
+
+    /**
+     * Adds a listener to be told of every event from now on.
+     * @param listener GameListener to add
+     */
+    public void addGameListener(GameListener listener) {
+        if (event == null) {
+            event = new GameEvent(this);
+        }
+        GameListener[] added = new GameListener[listeners.length + 1];
+        System.arraycopy(listeners,
+                         0,
+                         added,
+                         0,
+                         listeners.length);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    /**
+     * Removes a listener added with addGameListener().
+     * @param listener GameListener to remove
+     */
+    public void removeGameListener(GameListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                GameListener[] removed = new GameListener[listeners.length - 1];
+                System.arraycopy(listeners,
+                                 0,
+                                 removed,
+                                 0,
+                                 i);
+                System.arraycopy(listeners,
+                                 i + 1,
+                                 removed,
+                                 i,
+                                 removed.length - i);
+                listeners = removed.length == 0 ? NO_LISTENERS : removed;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Accessor for the pieces the game draws from.
+     * @return ShapeSet of the pieces
+     */
+    public ShapeSet getShapes() {
+        return shapes;
+    }
+
+    /**
+     * Accessor for the pile.
+     * @return Board holding the pile
+     */
+    public Board getBoard() {
+        return board;
+    }
+
+    /**
+     * Accessor for the Tetra currently in motion.
+     * @return the current Tetra
+     */
+    public Tetra getCurrent() {
+        return current;
+    }
+
+    /**
+     * Accessor for the rows the current Tetra will fall before landing.
+     * @return int representing the distance between the current Tetra and its
+     * landing position.
+     */
+    public int getGhostDistance() {
+        return ghostDistance;
+    }
+
+    /**
+     * Accessor for the score
+     * @return int representing the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Accessor for the current level.
+     * @return int representing the level, starting at 0
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Accessor for whether the pile has reached the top row.
+     * @return True if the game is over
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Mutator for the speed curve used from the next tick on.
+     * GravityCurve.HIGH_GRAVITY plays every level at 20G.
+     * @param gravityCurve GravityCurve giving the speed of each level
+     */
+    public void setGravityCurve(GravityCurve gravityCurve) {
+        this.gravityCurve = gravityCurve;
+        settleIfInstant();
+    }
+
+    /**
+     * Mutator for how long a resting Tetra waits before it locks.
+     * @param ticks int representing the lock delay in ticks, 0 to lock the
+     * next time gravity would move the Tetra
+     * @param resets int representing how many times moving or rotating a
+     * Tetra may restart its lock delay
+     */
+    public void setLockDelay(int ticks,
+                             int resets) {
+        if (ticks < 0 || resets < 0) {
+            throw new IllegalArgumentException("Negative lock delay");
+        }
+        lockDelayTicks = ticks;
+        lockResetLimit = resets;
+    }
+
+    /**
+     * Accessor for the lock delay.
+     * @return int representing the ticks a resting Tetra waits before it
+     * locks
+     */
+    public int getLockDelayTicks() {
+        return lockDelayTicks;
+    }
+
+    /**
+     * Accessor for the limit on lock delay restarts.
+     * @return int representing the times moving or rotating may restart the
+     * lock delay of one Tetra
+     */
+    public int getLockResetLimit() {
+        return lockResetLimit;
+    }
+
+    /**
+     * Accessor for the number of Tetras added to the pile so far. A change
+     * tells callers that the pile changed and a new Tetra spawned.
+     * @return int representing the number of locked Tetras
+     */
+    public int getLockCount() {
+        return lockCount;
+    }
+
+    /**
+     * Accessor for the Tetra most recently added to the pile. The Tetra is
+     * recycled after the next lock, so callers wanting to keep it must copy it.
+     * @return the last locked Tetra, or null if none has locked
+     */
+    public Tetra getLastLocked() {
+        return lastLocked;
+    }
+
+    /**
+     * Accessor for the rows erased by the last lock.
+     * @return int representing the number of rows cleared
+     */
+    public int getLastRowsCleared() {
+        return lastRowsCleared;
+    }
+
+    /**
+     * Accessor for the highest row changed by the last lock.
+     * @return int representing the y value of the highest changed row
+     */
+    public int getLastChangedTop() {
+        return lastChangedTop;
+    }
+
+    /**
+     * Accessor for the lowest row changed by the last lock.
+     * @return int representing the y value of the lowest changed row
+     */
+    public int getLastChangedBottom() {
+        return lastChangedBottom;
+    }
+
+    /**
+     * Applies one game tick of gravity to the current Tetra. The rows gained
+     * this tick are dropped in a single move, never further than the ghost; a
+     * Tetra already resting on its ghost is added to the pile once its lock
+     * delay runs out.
+     * @return whether or not the Tetra moved
+     */
+    public boolean step() {
+        if (gameOver) {
+            return false;
+        }
+        if (lockDelayTicks > 0) {
+            if (ghostDistance == 0) {
+                if (++lockTimer >= lockDelayTicks) {
+                    addCurrentToPile();
+                }
+                return false;
+            }
+            lockTimer = 0;
+        }
+        gravityAccumulator += gravityCurve.getGravity(level);
+        int rows = gravityAccumulator / GravityCurve.ROW;
+        if (rows == 0) {
+            return false;
+        }
+        gravityAccumulator -= rows * GravityCurve.ROW;
+        if (ghostDistance == 0) {
+            addCurrentToPile();
+            return false;
+        }
+        int drop = Math.min(rows,
+                            ghostDistance);
+        current.translate(0,
+                          drop);
+        ghostDistance -= drop;
+        return true;
+    }
+
+    /**
+     * Moves the current Tetra left a column if possible.
+     * @return whether or not movement was successful
+     */
+    public boolean moveLeft() {
+        return attemptToMoveCurrent(-1);
+    }
+
+    /**
+     * Moves the current Tetra right a column if possible.
+     * @return whether or not movement was successful
+     */
+    public boolean moveRight() {
+        return attemptToMoveCurrent(1);
+    }
+
+    /**
+     * Moves the current Tetra straight to its ghost and adds it to the pile.
+     * @return always returns false.
+     */
+    public boolean hardDrop() {
+        if (gameOver) {
+            return false;
+        }
+        current.translate(0,
+                          ghostDistance);
+        ghostDistance = 0;
+        addCurrentToPile();
+        return false;
+    }
+
+    /**
+     * Rotates the current Tetra if the result fits on the board.
+     * @param clockwise whether or not the rotation is clockwise
+     * @return whether or not a rotation could be made.
+     */
+    public boolean rotate(boolean clockwise) {
+        if (gameOver) {
+            return false;
+        }
+        if (clockwise) {
+            current.rotateClockwise();
+        }
+        else {
+            current.rotateCounterClockwise();
+        }
+        if (!current.fits(board)) {
+            if (clockwise) {
+                current.rotateCounterClockwise();
+            }
+            else {
+                current.rotateClockwise();
+            }
+            return false;
+        }
+        updateGhost();
+        settleIfInstant();
+        resetLockDelay();
+        return true;
+    }
+
+    /**
+     * Moves the current Tetra one column in the given direction if every
+     * target space is inbounds and unoccupied.
+     * @param direction int representing lateral offset of target location
+     * (ie -1==left, 1==right)
+     * @return whether or not movement was successful
+     */
+    private boolean attemptToMoveCurrent(int direction) {
+        if (gameOver) {
+            return false;
+        }
+        for (Coordinate c : current.getCells()) {
+            if (board.isBlocked(c.getX() + direction,
+                                c.getY())) {
+                return false;
+            }
+        }
+        current.translate(direction,
+                          0);
+        updateGhost();
+        settleIfInstant();
+        resetLockDelay();
+        return true;
+    }
+
+    /**
+     * Restarts the lock delay after a successful move or rotation, unless the
+     * current Tetra has used up its resets.
+     */
+    private void resetLockDelay() {
+        if (lockTimer > 0 && lockResets < lockResetLimit) {
+            lockTimer = 0;
+            lockResets++;
+        }
+    }
+
+    /**
+     * Adds the current Tetra to the pile, processes the pile, then brings in
+     * the next Tetra.
+     */
+    private void addCurrentToPile() {
+        TetrisEvents.PieceLock event = new TetrisEvents.PieceLock();
+        event.begin();
+        int oldScore = score;
+        int oldLevel = level;
+        for (Coordinate c : current.getCells()) {
+            board.place(c.getX(),
+                        c.getY(),
+                        current.getColor());
+            score += POINTS_PER_BLOCK;
+        }
+        lastChangedTop = board.getTop();
+        lastChangedBottom = current.findTopBound();
+        lastRowsCleared = dumpFullRows();
+        if (lastRowsCleared == 0) {
+            lastChangedTop = current.findBottomBound();
+        }
+        checkGridEmptyForScore();
+        level = score / POINTS_PER_LEVEL;
+        gravityAccumulator = 0;
+        lockTimer = 0;
+        lockResets = 0;
+        spare = lastLocked;
+        lastLocked = current;
+        lockCount++;
+        if (board.getTop() == 0) {
+            gameOver = true;
+        }
+        if (listeners != NO_LISTENERS) {
+            fireLockEvents(oldScore,
+                           oldLevel);
+        }
+        spawnTetra();
+        //fired after the spawn, so a Tetra spawning onto the pile ends the
+        //game exactly as the pile reaching the top row does
+        if (gameOver && listeners != NO_LISTENERS) {
+            fire(GameEvent.GAME_OVER,
+                 null,
+                 0,
+                 0);
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.score = score;
+            event.boardHeight = board.getPileHeight();
+            event.commit();
+        }
+    }
+
+    /**
+     * Tells the listeners everything the last lock did, in the order it
+     * happened. Whether it ended the game is only known once the next Tetra
+     * has spawned, so GAME_OVER is left to addCurrentToPile().
+     * @param oldScore int representing the score before the lock
+     * @param oldLevel int representing the level before the lock
+     */
+    private void fireLockEvents(int oldScore,
+                                int oldLevel) {
+        fire(GameEvent.LOCKED,
+             lastLocked,
+             0,
+             0);
+        if (lastRowsCleared > 0) {
+            fire(GameEvent.ROWS_CLEARED,
+                 null,
+                 lastRowsCleared,
+                 0);
+        }
+        fire(GameEvent.SCORE_CHANGED,
+             null,
+             0,
+             score - oldScore);
+        if (level != oldLevel) {
+            fire(GameEvent.LEVEL_CHANGED,
+                 null,
+                 0,
+                 0);
+        }
+    }
+
+    /**
+     * Fills in the shared GameEvent and passes it to every listener.
+     */
+    private void fire(int type,
+                      Tetra tetra,
+                      int rowsCleared,
+                      int scoreDelta) {
+        event.set(type,
+                  tetra,
+                  rowsCleared,
+                  scoreDelta);
+        for (GameListener listener : listeners) {
+            listener.gameChanged(event);
+        }
+    }
+
+    /**
+     * Determines if there are no blocks in the grid for scoring purposes.
+     */
+    private void checkGridEmptyForScore() {
+        if (board.isEmpty()) {
+            score += POINTS_PER_TOTAL_CLEAR;
+        }
+    }
+
+    /**
+     * Erases rows of the grid that are full and moves rows above down as
+     * needed. Only the rows spanned by the current Tetra can have become full.
+     * @return int representing the number of rows erased.
+     */
+    private int dumpFullRows() {
+        TetrisEvents.RowClear event = new TetrisEvents.RowClear();
+        event.begin();
+        int rowsCleared = board.clearFullRows(current.findBottomBound(),
+                                              current.findTopBound());
+        score += POINTS_PER_CLEAR * rowsCleared;
+        event.end();
+        if (event.shouldCommit()) {
+            event.rowsCleared = rowsCleared;
+            event.boardHeight = board.getPileHeight();
+            event.commit();
+        }
+        return rowsCleared;
+    }
+
+    /**
+     * Pseudorandomly chooses the next Tetra from the ShapeSet and makes it
+     * the current Tetra, recycling the spare Tetra if there is one. A Tetra
+     * that spawns onto the pile ends the game.
+     * @see java.util.Random
+     */
+    private void spawnTetra() {
+        TetraShape shape = shapes.get(nextInt(shapes.size()));
+        if (spare == null) {
+            current = new Tetra(shape,
+                                board.getWidth());
+        }
+        else {
+            spare.reset(shape,
+                        board.getWidth());
+            current = spare;
+            spare = null;
+        }
+        for (Coordinate c : current.getCells()) {
+            if (board.isBlocked(c.getX(),
+                                c.getY())) {
+                //no room for the new Tetra, which ends the game
+                gameOver = true;
+                ghostDistance = 0;
+                return;
+            }
+        }
+        updateGhost();
+        settleIfInstant();
+        if (listeners != NO_LISTENERS && !gameOver) {
+            fire(GameEvent.SPAWNED,
+                 current,
+                 0,
+                 0);
+        }
+    }
+
+    /**
+     * Draws the next value from the piece generator, exactly as
+     * java.util.Random.nextInt(bound) would.
+     * @param bound int representing the number of possible values
+     * @return int between 0 inclusive and bound exclusive
+     */
+    private int nextInt(int bound) {
+        int r = next31();
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return (int) ((bound * (long) r) >> 31);
+        }
+        for (int u = r; u - (r = u % bound) + m < 0; u = next31()) {
+        }
+        return r;
+    }
+
+    private int next31() {
+        generatorState = (generatorState * MULTIPLIER + ADDEND) & MASK;
+        return (int) (generatorState >>> (48 - 31));
+    }
+
+    /**
+     * Recomputes the rows between the current Tetra and its ghost. Only needed
+     * when the Tetra moves sideways, rotates, or the pile changes; gravity
+     * simply shortens the distance.
+     */
+    private void updateGhost() {
+        ghostDistance = current.findDropDistance(board);
+    }
+
+    /**
+     * At 20G the current Tetra never hangs in the air, so after it spawns,
+     * moves sideways or rotates it drops straight to its ghost.
+     */
+    private void settleIfInstant() {
+        if (gravityCurve.isInstant(level) && ghostDistance > 0) {
+            current.translate(0,
+                              ghostDistance);
+            ghostDistance = 0;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Describes something that happened in a Game: a Tetra spawning or locking,
+ * rows clearing, the score or level changing, or the game ending. Each Game
+ * owns a single GameEvent that it fills in and passes to every GameListener
+ * for each event, so playing allocates nothing however many listeners there
+ * are, and a Game with no listeners never touches it. A GameEvent is only
+ * meaningful during the call it is passed to.
+ * @author Zach Cotter
+ */
+public final class GameEvent {
+
+    //a new current Tetra entered the board; getTetra() is the new Tetra
+    public static final int SPAWNED = 0;
+    //the current Tetra was added to the pile; getTetra() is the locked Tetra
+    public static final int LOCKED = 1;
+    //full rows were erased; getRowsCleared() is how many
+    public static final int ROWS_CLEARED = 2;
+    //points were scored; getScoreDelta() is how many, getScore() the total
+    public static final int SCORE_CHANGED = 3;
+    //the level went up; getLevel() is the new level
+    public static final int LEVEL_CHANGED = 4;
+    //the game ended, with the pile in the top row or no room for a new Tetra
+    public static final int GAME_OVER = 5;
+
+    private final Game game;
+    private int type;
+    private Tetra tetra;
+    private int rowsCleared;
+    private int scoreDelta;
+
+    /**
+     * Constructs the event a Game reuses for all of its events.
+     * @param game Game the events come from
+     */
+    GameEvent(Game game) {
+        this.game = game;
+    }
+
+    /**
+     * Fills in the event for the next dispatch.
+     * @param type int representing one of the type constants
+     * @param tetra Tetra spawned or locked, or null
+     * @param rowsCleared int representing the rows erased
+     * @param scoreDelta int representing the points scored
+     * @return this event
+     */
+    GameEvent set(int type,
+                  Tetra tetra,
+                  int rowsCleared,
+                  int scoreDelta) {
+        this.type = type;
+        this.tetra = tetra;
+        this.rowsCleared = rowsCleared;
+        this.scoreDelta = scoreDelta;
+        return this;
+    }
+
+    /**
+     * Accessor for the kind of event.
+     * @return int representing one of the type constants
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Accessor for the Game the event came from.
+     * @return Game the event came from
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Accessor for the Tetra that spawned or locked. It belongs to the Game
+     * and must not be changed.
+     * @return Tetra of a SPAWNED or LOCKED event, otherwise null
+     */
+    public Tetra getTetra() {
+        return tetra;
+    }
+
+    /**
+     * Accessor for the number of rows erased.
+     * @return int representing the rows cleared by a ROWS_CLEARED event,
+     * otherwise 0
+     */
+    public int getRowsCleared() {
+        return rowsCleared;
+    }
+
+    /**
+     * Accessor for the points scored.
+     * @return int representing the points of a SCORE_CHANGED event,
+     * otherwise 0
+     */
+    public int getScoreDelta() {
+        return scoreDelta;
+    }
+
+    /**
+     * Accessor for the score after the event.
+     * @return int representing the Game's score
+     */
+    public int getScore() {
+        return game.getScore();
+    }
+
+    /**
+     * Accessor for the level after the event.
+     * @return int representing the Game's level
+     */
+    public int getLevel() {
+        return game.getLevel();
+    }
+
+    /**
+     * Plays random games with a listener counting their events, checking
+     * that every finished game is told GAME_OVER exactly once, that a LOCKED
+     * event comes with every lock and that the score deltas add up to the
+     * final score.
+     * Usage: java GameEvent [games]
+     * @param args String[] of an optional number of games
+     */
+    public static void main(String[] args) {
+        int games = args.length >= 1 ? Integer.parseInt(args[0]) : 2000;
+        final int[] counts = new int[GAME_OVER + 1];
+        final int[] points = new int[1];
+        GameListener counter = event -> {
+            counts[event.getType()]++;
+            points[0] += event.getScoreDelta();
+        };
+        Random random = new Random(1);
+        for (int i = 0; i < games; i++) {
+            Arrays.fill(counts,
+                        0);
+            points[0] = 0;
+            Game game = new Game(Board.DEFAULT_WIDTH,
+                                 Board.DEFAULT_HEIGHT,
+                                 random.nextLong());
+            game.addGameListener(counter);
+            while (!game.isGameOver()) {
+                Replay.apply(game,
+                             (byte) random.nextInt(Replay.COUNTER_CLOCKWISE
+                                                   + 1));
+            }
+            if (counts[GAME_OVER] != 1
+                || counts[LOCKED] != game.getLockCount()
+                || points[0] != game.getScore()) {
+                throw new IllegalStateException("Game " + i + " sent "
+                                                + counts[GAME_OVER]
+                                                + " GAME_OVER, "
+                                                + counts[LOCKED] + " LOCKED for "
+                                                + game.getLockCount()
+                                                + " locks, " + points[0]
+                                                + " points for a score of "
+                                                + game.getScore());
+            }
+        }
+        System.out.println(games + " games, each ended with one GAME_OVER");
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tree of saved positions of a Game, for training mode. Recording a position
+ * keeps a copy of the Game, and because copies of a Board share every row
+ * neither of them has written since, each saved position only holds new
+ * memory for the rows that changed since the position before it, plus a few
+ * arrays the height of the board. Undo and redo move along the tree without
+ * touching the saved positions, and hand back a fresh copy to play on, so a
+ * saved position never changes. Recording after an undo starts a new branch
+ * instead of discarding the old one, so any line of play can be returned to.
+ * @author Zach Cotter
+ */
+public class GameHistory {
+
+    private final Node root;
+    private Node current;
+    private int size;
+
+    /**
+     * Saved position.
+     */
+    private static class Node {
+
+        private final Game game;
+        private final Node parent;
+        private final List<Node> children = new ArrayList<Node>(1);
+        //the branch redo() follows, the last one recorded or visited
+        private int preferred;
+
+        private Node(Game game,
+                     Node parent) {
+            this.game = game;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Constructs a history starting from the given position.
+     * @param start Game whose current state is the first position
+     */
+    public GameHistory(Game start) {
+        root = new Node(start.copy(),
+                        null);
+        current = root;
+        size = 1;
+    }
+
+    /**
+     * Saves the state of a game as the position after the current one, and
+     * makes it the current position. If the current position already has
+     * later positions, the new one starts another branch beside them.
+     * @param game Game in the state to save, which may go on being played
+     */
+    public void record(Game game) {
+        Node node = new Node(game.copy(),
+                             current);
+        current.children.add(node);
+        current.preferred = current.children.size() - 1;
+        current = node;
+        size++;
+    }
+
+    /**
+     * Returns a copy of the current position to play on.
+     * @return a new Game in the current position
+     */
+    public Game getGame() {
+        return current.game.copy();
+    }
+
+    /**
+     * Determines if there is a position before the current one.
+     * @return True if undo() can move back
+     */
+    public boolean canUndo() {
+        return current.parent != null;
+    }
+
+    /**
+     * Determines if there is a position after the current one.
+     * @return True if redo() can move forward
+     */
+    public boolean canRedo() {
+        return !current.children.isEmpty();
+    }
+
+    /**
+     * Moves back to the previous position.
+     * @return a new Game in the previous position
+     * @throws IllegalStateException if the current position is the first
+     */
+    public Game undo() {
+        if (!canUndo()) {
+            throw new IllegalStateException("Nothing to undo");
+        }
+        current = current.parent;
+        return getGame();
+    }
+
+    /**
+     * Moves forward along the branch last recorded or visited from the
+     * current position.
+     * @return a new Game in the next position
+     * @throws IllegalStateException if the current position is the last of
+     * its branch
+     */
+    public Game redo() {
+        if (!canRedo()) {
+            throw new IllegalStateException("Nothing to redo");
+        }
+        return redo(current.preferred);
+    }
+
+    /**
+     * Moves forward along the given branch from the current position.
+     * @param branch int representing the branch, in the order they were
+     * recorded
+     * @return a new Game in the next position
+     * @throws IndexOutOfBoundsException if there is no such branch
+     */
+    public Game redo(int branch) {
+        Node next = current.children.get(branch);
+        current.preferred = branch;
+        current = next;
+        return getGame();
+    }
+
+    /**
+     * Accessor for the number of branches after the current position.
+     * @return int representing the number of positions redo(int) can move to
+     */
+    public int getBranchCount() {
+        return current.children.size();
+    }
+
+    /**
+     * Accessor for the number of moves from the first position to the
+     * current one.
+     * @return int representing the depth of the current position
+     */
+    public int getDepth() {
+        int depth = 0;
+        for (Node node = current; node.parent != null; node = node.parent) {
+            depth++;
+        }
+        return depth;
+    }
+
+    /**
+     * Accessor for the number of saved positions, on every branch.
+     * @return int representing the number of positions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Records every lock of random games, undoing and branching now and
+     * then, and prints the memory held per saved position.
+     * Usage: java GameHistory [positions]
+     * @param args String[] of an optional number of positions to record
+     */
+    public static void main(String[] args) {
+        int positions = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+        Random random = new Random(1);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.nanoTime();
+        Game game = new Game(Board.DEFAULT_WIDTH,
+                             Board.DEFAULT_HEIGHT,
+                             1);
+        GameHistory history = new GameHistory(game);
+        int undos = 0;
+        while (history.size() < positions) {
+            if (game.isGameOver() || (random.nextInt(8) == 0
+                                      && history.canUndo())) {
+                for (int i = random.nextInt(4); i >= 0 && history.canUndo();
+                     i--) {
+                    game = history.undo();
+                    undos++;
+                }
+            }
+            int lockCount = game.getLockCount();
+            while (game.getLockCount() == lockCount) {
+                Replay.apply(game,
+                             (byte) random.nextInt(Replay.COUNTER_CLOCKWISE
+                                                   + 1));
+            }
+            history.record(game);
+        }
+        long nanos = System.nanoTime() - start;
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.println(history.size() + " positions, " + undos
+                           + " undos in " + nanos / 1000000 + " ms, "
+                           + (after - before) / history.size()
+                           + " bytes per position");
+    }
+}
@@ -0,0 +1,17 @@
+/**
+ * Receives the GameEvents of a Game it was added to with
+ * Game.addGameListener(). Events are delivered on the thread driving the
+ * Game, in the middle of the action that caused them, so a listener must
+ * return quickly and must not act on the Game itself.
+ * @author Zach Cotter
+ */
+public interface GameListener {
+
+    /**
+     * Called for every event of the Game. The GameEvent is reused for the
+     * next event, so anything needed afterwards must be copied out of it
+     * before returning.
+     * @param event GameEvent describing what happened
+     */
+    void gameChanged(GameEvent event);
+}
@@ -0,0 +1,323 @@
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * Read-only picture of a Game at one moment: the pile, the current Tetra and
+ * its ghost, and the numbers shown beside them. A reader keeps one snapshot
+ * and has a SnapshotPublisher fill it again whenever the game has changed, so
+ * reading never allocates once the snapshot has grown to the board's size.
+ * Spaces are kept as one array of colors, a row at a time, with null for empty
+ * spaces. Each row carries the version of the capture that last changed it,
+ * and captures and copies only copy the rows that changed, so between locks,
+ * when the pile stands still, no rows are copied at all; readers that draw
+ * the pile can use the same versions to redraw only the rows that changed.
+ * @author Zach Cotter
+ */
+public class GameSnapshot {
+
+    private static final Color[] NO_CELLS = new Color[0];
+    private static final int[] NO_COORDINATES = new int[0];
+    private static final long[] NO_ROWS = new long[0];
+
+    private int width;
+    private int height;
+    private int top;
+    private Color[] cells = NO_CELLS;
+    //version that last changed each row
+    private long[] rowVersions = NO_ROWS;
+    //what the rows were last brought up to date from, a Board when captured
+    //and a GameSnapshot when copied, with the Board's stamp of each row
+    private Object rowSource;
+    private long[] rowStamps = NO_ROWS;
+    private int currentSize;
+    private int[] currentX = NO_COORDINATES;
+    private int[] currentY = NO_COORDINATES;
+    private Color currentColor;
+    private int ghostDistance;
+    private int score;
+    private int level;
+    private int lockCount;
+    private boolean gameOver;
+    private long version;
+    private long publishedNanos;
+
+    /**
+     * Constructs an empty snapshot, of no game, with version 0.
+     */
+    public GameSnapshot() {
+    }
+
+    /**
+     * Constructs a snapshot of the current state of a game.
+     * @param game Game to capture
+     */
+    public GameSnapshot(Game game) {
+        capture(game);
+    }
+
+    /**
+     * Overwrites this snapshot with the current state of a game and moves it
+     * to the next version. Only the rows the Board has changed since the last
+     * capture from it are copied.
+     * @param game Game to capture
+     */
+    public final void capture(Game game) {
+        Board board = game.getBoard();
+        boolean all = board != rowSource;
+        if (board.getWidth() != width || board.getHeight() != height) {
+            width = board.getWidth();
+            height = board.getHeight();
+            cells = new Color[width * height];
+            rowVersions = new long[height];
+            rowStamps = new long[height];
+            all = true;
+        }
+        version++;
+        for (int y = 0; y < height; y++) {
+            long stamp = board.getRowStamp(y);
+            if (all || stamp != rowStamps[y]) {
+                board.copyRow(y,
+                              cells,
+                              y * width);
+                rowStamps[y] = stamp;
+                rowVersions[y] = version;
+            }
+        }
+        rowSource = board;
+        top = board.getTop();
+        Tetra current = game.getCurrent();
+        Coordinate[] currentCells = current.getCells();
+        if (currentX.length < currentCells.length) {
+            currentX = new int[currentCells.length];
+            currentY = new int[currentCells.length];
+        }
+        for (int i = 0; i < currentCells.length; i++) {
+            currentX[i] = currentCells[i].getX();
+            currentY[i] = currentCells[i].getY();
+        }
+        currentSize = currentCells.length;
+        currentColor = current.getColor();
+        ghostDistance = game.getGhostDistance();
+        score = game.getScore();
+        level = game.getLevel();
+        lockCount = game.getLockCount();
+        gameOver = game.isGameOver();
+        publishedNanos = System.nanoTime();
+    }
+
+    /**
+     * Overwrites this snapshot with another. The other snapshot may be
+     * written while this runs, so nothing read from it is trusted beyond
+     * staying inside this snapshot's own arrays; the caller must check
+     * afterwards that it was not written, and copy again if it was.
+     * @param other GameSnapshot to copy
+     */
+    void copyFrom(GameSnapshot other) {
+        Color[] otherCells = other.cells;
+        long[] otherVersions = other.rowVersions;
+        boolean all = other != rowSource;
+        if (cells.length != otherCells.length
+            || rowVersions.length != otherVersions.length) {
+            cells = new Color[otherCells.length];
+            rowVersions = new long[otherVersions.length];
+            all = true;
+        }
+        //rows only change between copies if their versions do
+        int rowLength = otherVersions.length == 0
+                        ? 0 : otherCells.length / otherVersions.length;
+        for (int y = 0; y < otherVersions.length; y++) {
+            long rowVersion = otherVersions[y];
+            if (all || rowVersion != rowVersions[y]) {
+                System.arraycopy(otherCells,
+                                 y * rowLength,
+                                 cells,
+                                 y * rowLength,
+                                 rowLength);
+                rowVersions[y] = rowVersion;
+            }
+        }
+        rowSource = other;
+        int[] otherX = other.currentX;
+        int[] otherY = other.currentY;
+        int size = Math.min(other.currentSize,
+                            Math.min(otherX.length,
+                                     otherY.length));
+        if (currentX.length < size) {
+            currentX = new int[size];
+            currentY = new int[size];
+        }
+        System.arraycopy(otherX,
+                         0,
+                         currentX,
+                         0,
+                         size);
+        System.arraycopy(otherY,
+                         0,
+                         currentY,
+                         0,
+                         size);
+        currentSize = size;
+        width = other.width;
+        height = other.height;
+        top = other.top;
+        currentColor = other.currentColor;
+        ghostDistance = other.ghostDistance;
+        score = other.score;
+        level = other.level;
+        lockCount = other.lockCount;
+        gameOver = other.gameOver;
+        version = other.version;
+        publishedNanos = other.publishedNanos;
+    }
+
+    /**
+     * Marks this snapshot as holding no published state, after a copy that
+     * was overlapped by a capture.
+     */
+    void invalidate() {
+        version = -1;
+        //rows may be torn too, so none can be trusted by the next copy
+        Arrays.fill(rowVersions,
+                    -1);
+    }
+
+    /**
+     * Accessor for the version, which counts the captures behind this
+     * snapshot. Two snapshots from the same publisher with the same version
+     * hold the same state.
+     * @return long representing the version, 0 if nothing has been captured
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Accessor for when the state was captured.
+     * @return long representing the System.nanoTime() of the capture
+     */
+    public long getPublishedNanos() {
+        return publishedNanos;
+    }
+
+    /**
+     * Accessor for the width of the board.
+     * @return int representing the number of columns
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Accessor for the height of the board.
+     * @return int representing the number of rows
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Accessor for the highest occupied row.
+     * @return int representing the y value of the highest row holding a
+     * Block, or the height of the board if the board is empty.
+     */
+    public int getTop() {
+        return top;
+    }
+
+    /**
+     * Accesses the color of the Block at the given location in the pile.
+     * @param x int representing x value of the location
+     * @param y int representing y value of the location
+     * @return Color of the Block, or null if the location is empty
+     */
+    public Color getColor(int x,
+                          int y) {
+        return cells[y * width + x];
+    }
+
+    /**
+     * Accessor for the version of the capture that last changed a row of the
+     * pile. A reader that drew the row at this version need not draw it
+     * again.
+     * @param y int representing the row
+     * @return long representing the version
+     */
+    public long getRowVersion(int y) {
+        return rowVersions[y];
+    }
+
+    /**
+     * Accessor for the number of spaces in the current Tetra.
+     * @return int representing the number of spaces
+     */
+    public int getCurrentSize() {
+        return currentSize;
+    }
+
+    /**
+     * Accessor for the x value of a space in the current Tetra.
+     * @param i int representing the space, below getCurrentSize()
+     * @return int representing the x value
+     */
+    public int getCurrentX(int i) {
+        return currentX[i];
+    }
+
+    /**
+     * Accessor for the y value of a space in the current Tetra.
+     * @param i int representing the space, below getCurrentSize()
+     * @return int representing the y value
+     */
+    public int getCurrentY(int i) {
+        return currentY[i];
+    }
+
+    /**
+     * Accessor for the color of the current Tetra.
+     * @return Color of the current Tetra
+     */
+    public Color getCurrentColor() {
+        return currentColor;
+    }
+
+    /**
+     * Accessor for how far the current Tetra would fall if dropped.
+     * @return int representing the number of rows between the current Tetra
+     * and its ghost
+     */
+    public int getGhostDistance() {
+        return ghostDistance;
+    }
+
+    /**
+     * Accessor for the score.
+     * @return int representing the score
+     */
+    public int getScore() {
+        return score;
+    }
+
+    /**
+     * Accessor for the level.
+     * @return int representing the level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Accessor for the number of Tetras locked into the pile.
+     * @return int representing the lock count
+     */
+    public int getLockCount() {
+        return lockCount;
+    }
+
+    /**
+     * Accessor for whether the game had ended.
+     * @return True if the game was over
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+}
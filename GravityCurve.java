@@ -0,0 +1,72 @@
+/**
+ * Table of the speed at which the current Tetra falls at each level. Speeds
+ * are in 1/256ths of a row per game tick, so a level can fall less than one
+ * row per tick, several rows per tick, or all the way to the landing position
+ * every tick (20G). Levels past the end of the table use the last entry.
+ * @author Zach Cotter
+ */
+public class GravityCurve {
+
+    //fractions of a row per game tick
+    public static final int ROW = 256;
+    //twenty rows per tick is more than any piece can fall, so drops are instant
+    public static final int INSTANT = 20 * ROW;
+
+    /**
+     * Starts at roughly one row per 600 milliseconds, matching the old Timer
+     * delay, and reaches 20G at level 30.
+     */
+    public static final GravityCurve STANDARD = new GravityCurve(new int[]{
+        7, 7, 7, 8, 8, 8, 9, 9, 10, 10,
+        11, 11, 12, 13, 14, 15, 16, 17, 19, 21,
+        24, 28, 32, 40, 48, 64, 128, 256, 512, 1024,
+        INSTANT});
+    /**
+     * Instant drop from the first level.
+     */
+    public static final GravityCurve HIGH_GRAVITY = new GravityCurve(new int[]{
+        INSTANT});
+
+    private final int[] gravities;
+
+    /**
+     * Constructs a curve from the given table.
+     * @param gravities int[] of speeds in 1/256ths of a row per tick, indexed
+     * by level
+     */
+    public GravityCurve(int[] gravities) {
+        if (gravities.length == 0) {
+            throw new IllegalArgumentException("Gravity table is empty");
+        }
+        this.gravities = gravities.clone();
+    }
+
+    /**
+     * Accessor for the speed at a level.
+     * @param level int representing the level, starting at 0
+     * @return int representing 1/256ths of a row per tick
+     */
+    public int getGravity(int level) {
+        return gravities[Math.min(level,
+                                  gravities.length - 1)];
+    }
+
+    /**
+     * Accessor for the table of speeds.
+     * @return int[] copy of the speeds in 1/256ths of a row per tick, indexed
+     * by level
+     */
+    public int[] getGravities() {
+        return gravities.clone();
+    }
+
+    /**
+     * Determines if pieces at a level fall to their landing position
+     * immediately.
+     * @param level int representing the level, starting at 0
+     * @return True if the level is 20G or faster
+     */
+    public boolean isInstant(int level) {
+        return getGravity(level) >= INSTANT;
+    }
+}
@@ -1,16 +1,21 @@
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.message.BasicNameValuePair;
@@ -21,81 +26,200 @@ import org.json.JSONObject;
 
 /**
  * Interacts with a mySQL database using JSON and PHP in order to maintain
- * a high score table.
+ * a high score table. The server tags each version of the table with an ETag,
+ * so a table that is already held can be checked with a conditional request
+ * and is only downloaded again if it changed. Callers should normally go
+ * through HighScoreCache rather than fetching directly. Setting the
+ * tetris.leaderboard system property to the address of a ShardedLeaderboard
+ * uses it in place of the scripts.
  * @author Zach Cotter
  */
 public class HighScore {
 
-    private ArrayList<HighScoreEntry> list;    
+    //base URL of a ShardedLeaderboard to use in place of the PHP scripts
+    public static final String LEADERBOARD_PROPERTY = "tetris.leaderboard";
+    private static final String LEADERBOARD =
+        System.getProperty(LEADERBOARD_PROPERTY);
+    private static final String TABLE_URL = LEADERBOARD == null
+        ? "http://www.zachcotter.com/Tetris/scorecheck.php"
+        : LEADERBOARD + "/scores";
+    private static final String POST_URL = LEADERBOARD == null
+        ? "http://www.zachcotter.com/Tetris/postscore.php"
+        : LEADERBOARD + "/post";
+
+    private ArrayList<HighScoreEntry> list;
+    private String eTag;
 
     /**
      * Connects to the database and initializes the list.
      */
     public HighScore() {
         list = new ArrayList<HighScoreEntry>();
+        load(null);
+    }
+
+    /**
+     * Constructs an empty table without connecting.
+     * @param unused boolean distinguishing this from the public constructor
+     */
+    private HighScore(boolean unused) {
+        list = new ArrayList<HighScoreEntry>();
+    }
+
+    /**
+     * Constructs an empty table, for when the server can not be reached.
+     * @return a HighScore with no entries
+     */
+    static HighScore empty() {
+        return new HighScore(false);
+    }
+
+    /**
+     * Fetches the table unless it is unchanged since the given copy.
+     * @param cached HighScore fetched earlier, or null
+     * @return cached if the server reports it is still current, a newly
+     * fetched HighScore if not, or null if the server could not be reached
+     */
+    static HighScore fetch(HighScore cached) {
+        HighScore fresh = new HighScore(false);
+        int status = fresh.load(cached == null ? null : cached.eTag);
+        if (status == HttpStatus.SC_NOT_MODIFIED) {
+            return cached;
+        }
+        return status == HttpStatus.SC_OK ? fresh : null;
+    }
+
+    /**
+     * Accessor for the version tag the server gave this table.
+     * @return String ETag, or null if the server sent none
+     */
+    public String getETag() {
+        return eTag;
+    }
+
+    /**
+     * Requests the table from the server and fills the list with it.
+     * @param ifNoneMatch String ETag of a table already held, or null
+     * @return int representing the HTTP status, or -1 if the request failed
+     */
+    private int load(String ifNoneMatch) {
+        TetrisEvents.HighScoreRequest event =
+            new TetrisEvents.HighScoreRequest();
+        event.begin();
+        int status = -1;
         try {
             //connects to and runs the mySQL query in the PHP script.
             HttpClient client = new DefaultHttpClient();
-            HttpPost post = new HttpPost(
-                    "http://www.zachcotter.com/Tetris/scorecheck.php");
-            HttpResponse response = client.execute(post);
-            HttpEntity entity = response.getEntity();
-            InputStream is = entity.getContent();
-
-            //converts the response into a string
-            BufferedReader reader =
-                           new BufferedReader(new InputStreamReader(is));
-            String result = "";
-            String line = "";
-            while ((line = reader.readLine()) != null) {
-                result += line + "\n";
+            HttpGet get = new HttpGet(TABLE_URL);
+            if (ifNoneMatch != null) {
+                get.setHeader("If-None-Match",
+                              ifNoneMatch);
             }
-            reader.close();
-            is.close();
+            HttpResponse response = client.execute(get);
+            status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_OK) {
+                Header header = response.getFirstHeader("ETag");
+                eTag = header == null ? null : header.getValue();
+                HttpEntity entity = response.getEntity();
+                InputStream is = entity.getContent();
+
+                //converts the response into a string
+                BufferedReader reader =
+                               new BufferedReader(new InputStreamReader(is));
+                String result = "";
+                String line = "";
+                while ((line = reader.readLine()) != null) {
+                    result += line + "\n";
+                }
+                reader.close();
+                is.close();
 
-            //converts the JSON representation of data to HighScoreEntry objects.
-            JSONArray data = new JSONArray(result);
-            for (int i = 0; i < data.length(); i++) {
-                JSONObject jsonEntry = data.getJSONObject(i);
-                list.add(new HighScoreEntry(jsonEntry.getString("name"),
-                                            jsonEntry.getInt("score")));
+                //converts the JSON representation of data to HighScoreEntry
+                //objects.
+                JSONArray data = new JSONArray(result);
+                for (int i = 0; i < data.length(); i++) {
+                    JSONObject jsonEntry = data.getJSONObject(i);
+                    list.add(new HighScoreEntry(jsonEntry.getString("name"),
+                                                jsonEntry.getInt("score")));
+                }
             }
         }
         catch (JSONException ex) {
+            status = -1;
             Logger.getLogger(HighScore.class.getName()).log(Level.SEVERE,
                                                             null,
                                                             ex);
         }
         catch (ClientProtocolException ex) {
+            status = -1;
             Logger.getLogger(HighScore.class.getName()).log(Level.SEVERE,
                                                             null,
                                                             ex);
         }
         catch (IOException ex) {
+            status = -1;
             Logger.getLogger(HighScore.class.getName()).log(Level.SEVERE,
                                                             null,
                                                             ex);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = status == HttpStatus.SC_NOT_MODIFIED
+                              ? "revalidate" : "fetch";
+            event.entries = list.size();
+            event.success = status == HttpStatus.SC_OK
+                            || status == HttpStatus.SC_NOT_MODIFIED;
+            event.commit();
+        }
+        return status;
     }
-    
+
     /**
-     * Posts a new entry to the database.
+     * Posts a new entry to the database. Blocks until the server answers, so
+     * HighScoreCache.postScore() is preferred on the event dispatch thread.
      * @param e The high score entry to add.
+     * @return whether or not the entry was sent
      */
-    public static void postScore(HighScoreEntry e){
+    public static boolean postScore(HighScoreEntry e){
+        return postScore(e,
+                         null);
+    }
+
+    /**
+     * Posts a new entry to the database along with the Replay of the game,
+     * which the server plays back to check the score before accepting it.
+     * @param e The high score entry to add.
+     * @param replay Replay of the game that scored it, or null to send the
+     * score alone
+     * @return whether or not the entry was sent and accepted
+     */
+    public static boolean postScore(HighScoreEntry e,
+                                    Replay replay){
+        TetrisEvents.HighScoreRequest event =
+            new TetrisEvents.HighScoreRequest();
+        event.begin();
+        boolean success = false;
         try {
             //converts the HighScoreEntry to a type that can be used by the client
             ArrayList<NameValuePair> pairs = new ArrayList<NameValuePair>();
             pairs.add(new BasicNameValuePair("name", e.getName()));
             pairs.add(new BasicNameValuePair("score", "" + e.getScore()));
+            if (replay != null) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                replay.write(bytes);
+                pairs.add(new BasicNameValuePair("replay",
+                        Base64.getEncoder().encodeToString(
+                            bytes.toByteArray())));
+            }
             
             //passes the data retrieved from the HighScoreEntry to the php
             //script,which executes a SQL insert.
             HttpClient client = new DefaultHttpClient();
-            HttpPost post = new HttpPost(
-                    "http://www.zachcotter.com/Tetris/postscore.php");
+            HttpPost post = new HttpPost(POST_URL);
             post.setEntity(new UrlEncodedFormEntity(pairs));
-            client.execute(post);
+            HttpResponse response = client.execute(post);
+            success = response.getStatusLine().getStatusCode()
+                      == HttpStatus.SC_OK;
         }
         catch (ClientProtocolException ex) {
             Logger.getLogger(HighScore.class.getName()).log(Level.SEVERE,
@@ -107,9 +231,20 @@ public class HighScore {
                                                             null,
                                                             ex);
         }
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "post";
+            event.entries = 1;
+            event.success = success;
+            event.commit();
+        }
+        return success;
     }
     
     public int getValueToQualify(){
+        if (list.isEmpty()) {
+            return 0;
+        }
         return list.get(list.size() - 1).getScore();
     }
     
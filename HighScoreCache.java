@@ -0,0 +1,197 @@
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Holds one copy of the high score table for the whole program. A table
+ * younger than the time to live is served from memory; an older one is
+ * checked with the server by a conditional request, which only downloads the
+ * table again if it changed. All network traffic runs on a single background
+ * thread, so callers on the event dispatch thread never wait on the server,
+ * and requests made while a refresh is running share it. Posting a score
+ * through the cache refreshes the table afterwards, so the new entry shows up
+ * the next time the table is opened.
+ * @author Zach Cotter
+ */
+public final class HighScoreCache {
+
+    public static final long DEFAULT_TIME_TO_LIVE_MILLIS = 60000;
+
+    private static final HighScoreCache SHARED =
+        new HighScoreCache(DEFAULT_TIME_TO_LIVE_MILLIS);
+
+    private final long timeToLiveNanos;
+    private final ExecutorService worker;
+    private HighScore table;
+    private long fetchedAt;
+    private Future<HighScore> refresh;
+
+    /**
+     * Constructs an empty cache.
+     * @param timeToLiveMillis long representing how long a table is served
+     * without checking with the server
+     */
+    public HighScoreCache(long timeToLiveMillis) {
+        timeToLiveNanos = timeToLiveMillis * 1000000L;
+        worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                                       "High Scores");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Accessor for the cache shared by the whole program.
+     * @return the shared HighScoreCache
+     */
+    public static HighScoreCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Accessor for the table in memory, without contacting the server.
+     * @return the last table fetched, or null if none has been
+     */
+    public synchronized HighScore getIfPresent() {
+        return table;
+    }
+
+    /**
+     * Determines if the table in memory can be served without checking with
+     * the server.
+     * @return True if a table was fetched or confirmed within the time to live
+     */
+    public synchronized boolean isFresh() {
+        return table != null && System.nanoTime() - fetchedAt < timeToLiveNanos;
+    }
+
+    /**
+     * Passes the table to the callback on the event dispatch thread, at once
+     * if it is fresh, otherwise once it has been checked with the server.
+     * @param callback Consumer of the table, never given null
+     */
+    public void get(final Consumer<HighScore> callback) {
+        final HighScore current;
+        final Future<HighScore> pending;
+        synchronized (this) {
+            current = isFresh() ? table : null;
+            pending = current == null ? refresh() : null;
+        }
+        if (current != null) {
+            deliver(callback,
+                    current);
+            return;
+        }
+        worker.execute(() -> deliver(callback,
+                                     await(pending)));
+    }
+
+    /**
+     * Returns the table, checking with the server first if it is stale.
+     * Blocks, so it must not be called on the event dispatch thread.
+     * @return the table, empty if the server has never been reached
+     */
+    public HighScore get() {
+        Future<HighScore> pending;
+        synchronized (this) {
+            if (isFresh()) {
+                return table;
+            }
+            pending = refresh();
+        }
+        return await(pending);
+    }
+
+    /**
+     * Starts checking the table with the server in the background, unless a
+     * check is already running.
+     */
+    public synchronized void prefetch() {
+        if (!isFresh()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Marks the table stale, so it is checked with the server next time.
+     */
+    public synchronized void invalidate() {
+        fetchedAt = System.nanoTime() - timeToLiveNanos;
+    }
+
+    /**
+     * Posts a new entry in the background, then refreshes the table.
+     * @param entry HighScoreEntry to add
+     * @param replay Replay of the game for the server to check the score
+     * against, or null to send the score alone
+     */
+    public void postScore(final HighScoreEntry entry,
+                          final Replay replay) {
+        worker.execute(() -> {
+            HighScore.postScore(entry,
+                                replay);
+            synchronized (HighScoreCache.this) {
+                invalidate();
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Starts a conditional fetch on the worker thread, or joins the one
+     * already running.
+     */
+    private synchronized Future<HighScore> refresh() {
+        if (refresh == null) {
+            final HighScore cached = table;
+            refresh = worker.submit(() -> {
+                HighScore result = HighScore.fetch(cached);
+                synchronized (HighScoreCache.this) {
+                    if (result != null) {
+                        table = result;
+                        fetchedAt = System.nanoTime();
+                    }
+                    refresh = null;
+                    return table == null ? HighScore.empty() : table;
+                }
+            });
+        }
+        return refresh;
+    }
+
+    /**
+     * Waits for a refresh, falling back on the table in memory.
+     */
+    private HighScore await(Future<HighScore> pending) {
+        try {
+            return pending.get();
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException ex) {
+            Logger.getLogger(HighScoreCache.class.getName()).log(Level.SEVERE,
+                                                                 null,
+                                                                 ex);
+        }
+        synchronized (this) {
+            return table == null ? HighScore.empty() : table;
+        }
+    }
+
+    private static void deliver(final Consumer<HighScore> callback,
+                                final HighScore highScore) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            callback.accept(highScore);
+        }
+        else {
+            SwingUtilities.invokeLater(() -> callback.accept(highScore));
+        }
+    }
+}
@@ -0,0 +1,257 @@
+import java.awt.event.KeyEvent;
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Measures input to photon latency when the tetris.latency system property
+ * names a file. Each key press is timed at three points: when
+ * KeyActionListener receives it, when the Game has applied the action, and
+ * when the render thread has shown the first frame drawn after that and
+ * flushed it to the screen with Toolkit.sync(). One line per key press is written to the file as
+ * comma separated microseconds:
+ * <pre>
+ * key,queue_us,apply_us,present_us,total_us
+ * </pre>
+ * where queue is the time from the operating system event to the listener
+ * (only millisecond resolution, from KeyEvent.getWhen()), apply is listener to
+ * applied, present is applied to flushed, and total is listener to flushed.
+ * A summary of each stage is printed when the program exits, and running this
+ * class on one or more files prints the same summary for each, so runs with
+ * different rendering paths or JVM settings can be compared.
+ * When the property is not set each probe costs one static field read.
+ * @author Zach Cotter
+ */
+public final class LatencyProbe {
+
+    public static final String FILE_PROPERTY = "tetris.latency";
+    private static final String HEADER = "key,queue_us,apply_us,present_us,"
+                                         + "total_us";
+    private static final String[] STAGES = {"queue", "apply", "present",
+                                            "total"};
+    //lines written between flushes, so a killed kiosk loses little
+    private static final int FLUSH_INTERVAL = 64;
+
+    private static final LatencyProbe INSTANCE = create();
+
+    private final PrintWriter out;
+    private final long[][] samples = new long[STAGES.length][1024];
+    private int sampleCount;
+    private int keyCode;
+    private long queueMicros;
+    private long receivedNanos;
+    private long appliedNanos;
+    private boolean pending;
+
+    private LatencyProbe(PrintWriter out) {
+        this.out = out;
+        out.println(HEADER);
+    }
+
+    private static LatencyProbe create() {
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null) {
+            return null;
+        }
+        try {
+            final LatencyProbe probe =
+                new LatencyProbe(new PrintWriter(new FileWriter(file)));
+            Runtime.getRuntime().addShutdownHook(new Thread(probe::finish,
+                                                            "Latency Report"));
+            return probe;
+        }
+        catch (IOException ex) {
+            Logger.getLogger(LatencyProbe.class.getName()).log(Level.SEVERE,
+                                                               null,
+                                                               ex);
+            return null;
+        }
+    }
+
+    /**
+     * Determines if latency is being measured.
+     * @return True if the tetris.latency property named a writable file
+     */
+    public static boolean isEnabled() {
+        return INSTANCE != null;
+    }
+
+    /**
+     * Marks a key press as received by the listener. Only called for new
+     * presses of keys that act on the game, not repeats or unbound keys, so
+     * every press marked is followed by an action.
+     * @param e KeyEvent of the press
+     */
+    public static void keyReceived(KeyEvent e) {
+        LatencyProbe probe = INSTANCE;
+        if (probe != null) {
+            synchronized (probe) {
+                probe.keyCode = e.getKeyCode();
+                probe.receivedNanos = System.nanoTime();
+                probe.queueMicros =
+                    (System.currentTimeMillis() - e.getWhen()) * 1000;
+                probe.appliedNanos = 0;
+                probe.pending = true;
+            }
+        }
+    }
+
+    /**
+     * Marks the last key press as applied to the Game. Called for every
+     * action but game ticks.
+     */
+    public static void applied() {
+        LatencyProbe probe = INSTANCE;
+        if (probe != null) {
+            synchronized (probe) {
+                if (probe.pending && probe.appliedNanos == 0) {
+                    probe.appliedNanos = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks the last key press as shown and records it, if the frame just
+     * shown and flushed was drawn from a state published after the press was
+     * applied.
+     * @param stateNanos long representing the System.nanoTime() the frame's
+     * state was published at
+     */
+    public static void presented(long stateNanos) {
+        LatencyProbe probe = INSTANCE;
+        if (probe != null) {
+            probe.record(stateNanos,
+                         System.nanoTime());
+        }
+    }
+
+    private synchronized void record(long stateNanos,
+                                     long presentedNanos) {
+        if (!pending || appliedNanos == 0 || stateNanos - appliedNanos < 0) {
+            return;
+        }
+        pending = false;
+        long apply = (appliedNanos - receivedNanos) / 1000;
+        long present = (presentedNanos - appliedNanos) / 1000;
+        long total = (presentedNanos - receivedNanos) / 1000;
+        if (sampleCount == samples[0].length) {
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = Arrays.copyOf(samples[i],
+                                           sampleCount * 2);
+            }
+        }
+        samples[0][sampleCount] = queueMicros;
+        samples[1][sampleCount] = apply;
+        samples[2][sampleCount] = present;
+        samples[3][sampleCount] = total;
+        sampleCount++;
+        out.println(KeyEvent.getKeyText(keyCode) + "," + queueMicros + ","
+                    + apply + "," + present + "," + total);
+        if (sampleCount % FLUSH_INTERVAL == 0) {
+            out.flush();
+        }
+    }
+
+    private synchronized void finish() {
+        out.close();
+        System.out.print(summarize(samples,
+                                   sampleCount));
+    }
+
+    /**
+     * Describes the distribution of each stage.
+     * @param samples long[][] of microseconds per stage
+     * @param count int representing the number of samples per stage
+     * @return String with a line per stage
+     */
+    private static String summarize(long[][] samples,
+                                    int count) {
+        StringBuilder summary = new StringBuilder();
+        summary.append(count).append(" key presses\n");
+        if (count == 0) {
+            return summary.toString();
+        }
+        summary.append(String.format("%-8s %8s %8s %8s %8s %8s%n",
+                                     "stage",
+                                     "p50",
+                                     "p90",
+                                     "p99",
+                                     "max",
+                                     "mean"));
+        for (int stage = 0; stage < STAGES.length; stage++) {
+            long[] sorted = Arrays.copyOf(samples[stage],
+                                          count);
+            Arrays.sort(sorted);
+            long sum = 0;
+            for (long sample : sorted) {
+                sum += sample;
+            }
+            summary.append(String.format("%-8s %8d %8d %8d %8d %8d%n",
+                                         STAGES[stage],
+                                         percentile(sorted,
+                                                    50),
+                                         percentile(sorted,
+                                                    90),
+                                         percentile(sorted,
+                                                    99),
+                                         sorted[count - 1],
+                                         sum / count));
+        }
+        return summary.append("(microseconds)\n").toString();
+    }
+
+    private static long percentile(long[] sorted,
+                                   int percent) {
+        int index = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+        return sorted[Math.max(index,
+                               0)];
+    }
+
+    /**
+     * Prints the distribution of each stage in files written by this probe.
+     * Usage: java LatencyProbe latency.csv [more.csv ...]
+     * @param args String[] of files to summarize
+     * @throws IOException if a file can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java LatencyProbe latency.csv "
+                               + "[more.csv ...]");
+            return;
+        }
+        for (String file : args) {
+            long[][] samples = new long[STAGES.length][1024];
+            int count = 0;
+            try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.equals(HEADER) || line.isEmpty()) {
+                        continue;
+                    }
+                    String[] fields = line.split(",");
+                    if (count == samples[0].length) {
+                        for (int i = 0; i < samples.length; i++) {
+                            samples[i] = Arrays.copyOf(samples[i],
+                                                       count * 2);
+                        }
+                    }
+                    for (int stage = 0; stage < STAGES.length; stage++) {
+                        samples[stage][count] =
+                            Long.parseLong(fields[fields.length
+                                                  - STAGES.length + stage]);
+                    }
+                    count++;
+                }
+            }
+            System.out.println(file + ":");
+            System.out.print(summarize(samples,
+                                       count));
+        }
+    }
+}
@@ -0,0 +1,410 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * One partition of the leaderboard, run as a process of its own. A shard
+ * owns the players whose names ShardedLeaderboard.shardOf() maps to it and
+ * keeps each one's best score in memory, ranked, so a post costs a couple of
+ * tree operations and never touches the other shards. Posts that carry a
+ * Replay are played back on the shard's ScoreVerifier first, as postscore.php
+ * has them checked, and are refused with 503 while its queue is full.
+ * The shard serves its head, the best HEAD_SIZE players, as plain text
+ * tagged with a version that only changes when the head does, so a
+ * ShardedLeaderboard polling it gets 304 Not Modified for every post that
+ * did not reach the head. Posts can be appended to a log file, which is
+ * played back when the shard starts.
+ * <pre>
+ * POST /post  name=...&amp;score=...[&amp;replay=...]  200 ok, 400, 403, 503
+ * GET  /top                                      score TAB name per line
+ * </pre>
+ * @author Zach Cotter
+ */
+public class LeaderboardShard {
+
+    public static final int HEAD_SIZE = 100;
+    public static final int MAX_NAME_LENGTH = 64;
+    private static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+    //without it each small answer waits on the client's delayed ack
+    static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    //best first, then by name so every player has one place
+    static final Comparator<HighScoreEntry> RANKING = (a, b) -> {
+        if (a.getScore() != b.getScore()) {
+            return a.getScore() > b.getScore() ? -1 : 1;
+        }
+        return a.getName().compareTo(b.getName());
+    };
+
+    private final Map<String, Integer> best = new HashMap<String, Integer>();
+    private final TreeSet<HighScoreEntry> ranking =
+        new TreeSet<HighScoreEntry>(RANKING);
+    private final PrintWriter log;
+    private final ScoreVerifier verifier = new ScoreVerifier(
+        Runtime.getRuntime().availableProcessors(),
+        Runtime.getRuntime().availableProcessors() * 64);
+    //part of every version tag, so tags from before a restart never match
+    private final long epoch = System.currentTimeMillis();
+    //the lowest score in the head, while the head is full
+    private int headThreshold;
+    private long headVersion;
+    private byte[] headBody;
+
+    /**
+     * Constructs a shard, playing back the log file if it exists and
+     * appending later posts to it.
+     * @param logFile File of posts, or null to keep nothing on disk
+     * @throws IOException if the log can not be read or opened
+     */
+    public LeaderboardShard(File logFile) throws IOException {
+        if (logFile == null) {
+            log = null;
+        }
+        else {
+            if (logFile.exists()) {
+                try (BufferedReader in = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(logFile),
+                                              StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        int tab = line.indexOf('\t');
+                        if (tab > 0) {
+                            record(line.substring(tab + 1),
+                                   Integer.parseInt(line.substring(0,
+                                                                   tab)));
+                        }
+                    }
+                }
+            }
+            Writer out = new OutputStreamWriter(
+                new FileOutputStream(logFile,
+                                     true),
+                StandardCharsets.UTF_8);
+            log = new PrintWriter(out);
+        }
+    }
+
+    /**
+     * Determines if a name can be stored and listed.
+     * @param name String to check
+     * @return True if it is between 1 and MAX_NAME_LENGTH characters with no
+     * control characters
+     */
+    public static boolean isValidName(String name) {
+        if (name == null || name.isEmpty()
+            || name.length() > MAX_NAME_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (Character.isISOControl(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Records a score, keeping only the player's best.
+     * @param name String naming the player, which must be valid
+     * @param score int representing the score
+     * @return True if it is the player's new best
+     */
+    public synchronized boolean post(String name,
+                                     int score) {
+        if (!record(name,
+                    score)) {
+            return false;
+        }
+        if (log != null) {
+            log.print(score + "\t" + name + "\n");
+            log.flush();
+        }
+        return true;
+    }
+
+    private boolean record(String name,
+                           int score) {
+        Integer old = best.get(name);
+        if (old != null && old >= score) {
+            return false;
+        }
+        boolean full = ranking.size() >= HEAD_SIZE;
+        if (old != null) {
+            ranking.remove(new HighScoreEntry(name,
+                                              old));
+        }
+        best.put(name,
+                 score);
+        ranking.add(new HighScoreEntry(name,
+                                       score));
+        //a head that was full only changes if the player was or now is in it
+        if (!full || score >= headThreshold
+            || old != null && old >= headThreshold) {
+            headVersion++;
+            headBody = null;
+            headThreshold = full || ranking.size() >= HEAD_SIZE
+                            ? findHeadThreshold() : Integer.MIN_VALUE;
+        }
+        return true;
+    }
+
+    private int findHeadThreshold() {
+        Iterator<HighScoreEntry> entries = ranking.iterator();
+        HighScoreEntry entry = null;
+        for (int i = 0; i < HEAD_SIZE && entries.hasNext(); i++) {
+            entry = entries.next();
+        }
+        return entry == null ? Integer.MIN_VALUE : entry.getScore();
+    }
+
+    /**
+     * Accessor for the version of the head, which changes whenever a post
+     * changes the head.
+     * @return long representing the version
+     */
+    public synchronized long getHeadVersion() {
+        return headVersion;
+    }
+
+    /**
+     * Accessor for the head as served: a line per player, best first, of
+     * score and name separated by a tab.
+     * @return byte[] of UTF-8 text
+     */
+    public synchronized byte[] getHeadBody() {
+        if (headBody == null) {
+            StringBuilder text = new StringBuilder();
+            Iterator<HighScoreEntry> entries = ranking.iterator();
+            for (int i = 0; i < HEAD_SIZE && entries.hasNext(); i++) {
+                HighScoreEntry entry = entries.next();
+                text.append(entry.getScore()).append('\t')
+                    .append(entry.getName()).append('\n');
+            }
+            headBody = text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return headBody;
+    }
+
+    /**
+     * Accessor for the number of players.
+     * @return int representing the players with a score in this shard
+     */
+    public synchronized int size() {
+        return best.size();
+    }
+
+    /**
+     * Answers a POST to /post. A post with a replay is queued on the shard's
+     * ScoreVerifier and answered once checked, or 503 if the verifier is
+     * full.
+     */
+    private void handlePost(final HttpExchange exchange) throws IOException {
+        int status;
+        String answer;
+        try {
+            Map<String, String> form = readForm(exchange);
+            final String name = form.get("name");
+            final int score = Integer.parseInt(form.get("score"));
+            String replay = form.get("replay");
+            if (!isValidName(name) || score < 0) {
+                status = 400;
+                answer = "invalid";
+            }
+            else if (replay != null) {
+                verifier.submit(Base64.getDecoder().decode(replay),
+                                score,
+                                result -> answerPost(exchange,
+                                                     name,
+                                                     score,
+                                                     result));
+                return;
+            }
+            else {
+                post(name,
+                     score);
+                status = 200;
+                answer = "ok";
+            }
+        }
+        catch (RejectedExecutionException ex) {
+            status = 503;
+            answer = "busy";
+            exchange.getResponseHeaders().set("Retry-After",
+                                              "1");
+        }
+        catch (IllegalArgumentException | NullPointerException ex) {
+            status = 400;
+            answer = "invalid";
+        }
+        send(exchange,
+             status,
+             answer.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Records a checked post and answers it, on the verifier's thread.
+     */
+    private void answerPost(HttpExchange exchange,
+                            String name,
+                            int score,
+                            ScoreVerifier.Result result) {
+        int status = 400;
+        String answer = "invalid";
+        if (result == ScoreVerifier.Result.ACCEPTED) {
+            post(name,
+                 score);
+            status = 200;
+            answer = "ok";
+        }
+        else if (result == ScoreVerifier.Result.REJECTED) {
+            status = 403;
+            answer = "rejected";
+        }
+        try {
+            send(exchange,
+                 status,
+                 answer.getBytes(StandardCharsets.UTF_8));
+        }
+        catch (IOException ex) {
+            Logger.getLogger(LeaderboardShard.class.getName()).log(Level.SEVERE,
+                                                                   null,
+                                                                   ex);
+        }
+    }
+
+    /**
+     * Answers a GET to /top, with 304 if the client holds the current head.
+     */
+    private void handleTop(HttpExchange exchange) throws IOException {
+        long version;
+        byte[] body;
+        synchronized (this) {
+            version = headVersion;
+            body = getHeadBody();
+        }
+        String tag = "\"" + epoch + "-" + version + "\"";
+        exchange.getResponseHeaders().set("ETag",
+                                          tag);
+        String ifNoneMatch =
+            exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (tag.equals(ifNoneMatch)) {
+            exchange.sendResponseHeaders(304,
+                                         -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "text/plain; charset=UTF-8");
+        send(exchange,
+             200,
+             body);
+    }
+
+    static void send(HttpExchange exchange,
+                     int status,
+                     byte[] body) throws IOException {
+        exchange.sendResponseHeaders(status,
+                                     body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Reads a url encoded form from a request body.
+     */
+    static Map<String, String> readForm(HttpExchange exchange)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer,
+                            0,
+                            read);
+                if (bytes.size() > MAX_REQUEST_BYTES) {
+                    throw new IllegalArgumentException("Request too large");
+                }
+            }
+        }
+        Map<String, String> form = new HashMap<String, String>();
+        for (String pair : bytes.toString("US-ASCII").split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                form.put(URLDecoder.decode(pair.substring(0,
+                                                          equals),
+                                           "UTF-8"),
+                         URLDecoder.decode(pair.substring(equals + 1),
+                                           "UTF-8"));
+            }
+        }
+        return form;
+    }
+
+    /**
+     * Serves a shard over HTTP on the local machine.
+     * Usage: java LeaderboardShard port [log]
+     * @param args String[] of port and optional log file
+     * @throws IOException if the log can not be read or the server can not
+     * start
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java LeaderboardShard port [log]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        System.setProperty(NO_DELAY_PROPERTY,
+                           "true");
+        final LeaderboardShard shard =
+            new LeaderboardShard(args.length >= 2 ? new File(args[1]) : null);
+        HttpServer server = HttpServer.create(
+            new InetSocketAddress("127.0.0.1",
+                                  port),
+            0);
+        server.createContext("/post",
+                             shard::handlePost);
+        server.createContext("/top",
+                             shard::handleTop);
+        //handlers never wait, checks are answered from the verifier's threads
+        int threads = Runtime.getRuntime().availableProcessors();
+        server.setExecutor(new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(threads * 4),
+            Executors.defaultThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy()));
+        server.start();
+        System.out.println("Shard of " + shard.size() + " players on port "
+                           + port);
+    }
+}
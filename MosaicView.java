@@ -0,0 +1,415 @@
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Shows many live games at once, for bot tournaments. Every board is drawn at
+ * a small cell size into one shared image, a tile per board in a grid, and a
+ * board's tile is only redrawn in frames where its SnapshotPublisher has
+ * published something new; boards that did not change cost one version check.
+ * Each tile is drawn with a rectangle per run of same colored cells rather
+ * than one per cell, and without the ghost or score, which are unreadable at
+ * mosaic sizes. A render thread of its own reads the boards, brings the
+ * shared image up to date and copies it to the screen once per display
+ * refresh, so the threads playing the games never wait on it.
+ * @author Zach Cotter
+ */
+public class MosaicView extends Canvas {
+
+    private static final long serialVersionUID = 1L;
+    public static final int DEFAULT_CELL_SIZE = 4;
+    private static final int GAP = 4;
+    private static final int BUFFERS = 2;
+    private static final int DEFAULT_REFRESH_RATE = 60;
+    private static final Color GAP_COLOR = Color.DARK_GRAY;
+    private static final Color EMPTY_COLOR = Color.BLACK;
+    private static final Color GAME_OVER_COLOR = new Color(64,
+                                                           0,
+                                                           0);
+
+    private final SnapshotPublisher[] boards;
+    //only touched by the render thread, or by the caller of update()
+    private final GameSnapshot[] snapshots;
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int cellSize;
+    private final int columns;
+    private final int tileWidth;
+    private final int tileHeight;
+    private final BufferedImage mosaic;
+    private final Graphics2D mosaicGraphics;
+    private volatile boolean running;
+    private volatile long frameNanos;
+    private volatile int lastRedrawn;
+    private Thread renderThread;
+
+    /**
+     * Constructs a mosaic of the given boards, all of the same size.
+     * @param boards SnapshotPublisher[] the games are published through
+     * @param boardWidth int representing the width of every board
+     * @param boardHeight int representing the height of every board
+     * @param cellSize int representing the size of a space in pixels
+     */
+    public MosaicView(SnapshotPublisher[] boards,
+                      int boardWidth,
+                      int boardHeight,
+                      int cellSize) {
+        this.boards = boards.clone();
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.cellSize = cellSize;
+        snapshots = new GameSnapshot[boards.length];
+        for (int i = 0; i < boards.length; i++) {
+            snapshots[i] = new GameSnapshot();
+        }
+        columns = (int) Math.ceil(Math.sqrt(boards.length));
+        int rows = (boards.length + columns - 1) / columns;
+        tileWidth = boardWidth * cellSize + GAP;
+        tileHeight = boardHeight * cellSize + GAP;
+        mosaic = new BufferedImage(columns * tileWidth + GAP,
+                                   rows * tileHeight + GAP,
+                                   BufferedImage.TYPE_INT_RGB);
+        mosaicGraphics = mosaic.createGraphics();
+        mosaicGraphics.setColor(GAP_COLOR);
+        mosaicGraphics.fillRect(0,
+                                0,
+                                mosaic.getWidth(),
+                                mosaic.getHeight());
+        for (int i = 0; i < boards.length; i++) {
+            drawTile(i);
+        }
+        setPreferredSize(new Dimension(mosaic.getWidth(),
+                                       mosaic.getHeight()));
+        setIgnoreRepaint(true);
+        setBackground(GAP_COLOR);
+    }
+
+    /**
+     * Brings the shared image up to date, redrawing the tiles of the boards
+     * that have published since the last call. Called by the render thread;
+     * only to be called directly on a MosaicView that is not displayed.
+     * @return int representing the number of tiles redrawn
+     */
+    public int update() {
+        int redrawn = 0;
+        for (int i = 0; i < boards.length; i++) {
+            if (boards[i].read(snapshots[i])) {
+                drawTile(i);
+                redrawn++;
+            }
+        }
+        return redrawn;
+    }
+
+    /**
+     * Accessor for the shared image every board is drawn into.
+     * @return BufferedImage holding the whole mosaic
+     */
+    public BufferedImage getImage() {
+        return mosaic;
+    }
+
+    /**
+     * Accessor for how long the render thread took over its last frame.
+     * @return long representing the nanoseconds from reading the boards to
+     * the frame being shown
+     */
+    public long getFrameNanos() {
+        return frameNanos;
+    }
+
+    /**
+     * Accessor for how many tiles the render thread redrew in its last frame.
+     * @return int representing the number of boards that had changed
+     */
+    public int getLastRedrawn() {
+        return lastRedrawn;
+    }
+
+    /**
+     * Draws a board's tile from its snapshot: a rectangle for the empty
+     * board, one per horizontal run of a color in the pile, and one per space
+     * of the current Tetra.
+     */
+    private void drawTile(int board) {
+        GameSnapshot snapshot = snapshots[board];
+        Graphics2D g = mosaicGraphics;
+        int left = GAP + board % columns * tileWidth;
+        int top = GAP + board / columns * tileHeight;
+        g.setColor(snapshot.isGameOver() ? GAME_OVER_COLOR : EMPTY_COLOR);
+        g.fillRect(left,
+                   top,
+                   boardWidth * cellSize,
+                   boardHeight * cellSize);
+        if (snapshot.getVersion() == 0) {
+            return;
+        }
+        for (int y = snapshot.getTop(); y < boardHeight; y++) {
+            int x = 0;
+            while (x < boardWidth) {
+                Color color = snapshot.getColor(x,
+                                                y);
+                int end = x + 1;
+                while (end < boardWidth && snapshot.getColor(end,
+                                                             y) == color) {
+                    end++;
+                }
+                if (color != null) {
+                    g.setColor(color);
+                    g.fillRect(left + x * cellSize,
+                               top + y * cellSize,
+                               (end - x) * cellSize,
+                               cellSize);
+                }
+                x = end;
+            }
+        }
+        g.setColor(snapshot.getCurrentColor());
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int y = snapshot.getCurrentY(i);
+            if (y >= 0) {
+                g.fillRect(left + snapshot.getCurrentX(i) * cellSize,
+                           top + y * cellSize,
+                           cellSize,
+                           cellSize);
+            }
+        }
+    }
+
+    /**
+     * Starts the render thread once the Canvas can be drawn on.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(BUFFERS);
+        running = true;
+        renderThread = new Thread(this::renderLoop,
+                                  "Mosaic Renderer");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /**
+     * Stops the render thread before the Canvas goes away.
+     */
+    @Override
+    public void removeNotify() {
+        running = false;
+        Thread thread = renderThread;
+        renderThread = null;
+        if (thread != null) {
+            try {
+                thread.join(1000);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * Nothing to do, the render thread redraws every refresh anyway.
+     * @param g Graphics, unused
+     */
+    @Override
+    public void paint(Graphics g) {
+    }
+
+    @Override
+    public void update(Graphics g) {
+    }
+
+    /**
+     * Updates and shows a frame every display refresh until the Canvas goes
+     * away.
+     */
+    private void renderLoop() {
+        BufferStrategy strategy = getBufferStrategy();
+        long interval = 1000000000L / refreshRate();
+        long next = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            lastRedrawn = update();
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        g.drawImage(mosaic,
+                                    0,
+                                    0,
+                                    null);
+                    }
+                    finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            Toolkit.getDefaultToolkit().sync();
+            frameNanos = System.nanoTime() - start;
+            next += interval;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this,
+                                      wait);
+            }
+            else {
+                //too slow for the refresh rate, drop the missed frames
+                next = System.nanoTime();
+            }
+        }
+    }
+
+    private static int refreshRate() {
+        if (!GraphicsEnvironment.isHeadless()) {
+            int rate = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                .getDefaultScreenDevice()
+                .getDisplayMode()
+                .getRefreshRate();
+            if (rate > 0) {
+                return rate;
+            }
+        }
+        return DEFAULT_REFRESH_RATE;
+    }
+
+    /**
+     * Plays random games on every board in a tournament thread, a move per
+     * board per tick, and shows them in a window with the render time in the
+     * title. Without a display, times the mosaic updates and screen copies of
+     * a run of frames instead.
+     * Usage: java MosaicView [boards] [cellSize]
+     * @param args String[] of an optional number of boards and cell size
+     */
+    public static void main(String[] args) {
+        int count = args.length >= 1 ? Integer.parseInt(args[0]) : 256;
+        int cellSize = args.length >= 2 ? Integer.parseInt(args[1])
+                                        : DEFAULT_CELL_SIZE;
+        final SnapshotPublisher[] boards = new SnapshotPublisher[count];
+        final Game[] games = new Game[count];
+        for (int i = 0; i < count; i++) {
+            boards[i] = new SnapshotPublisher();
+            games[i] = new Game(Board.DEFAULT_WIDTH,
+                                Board.DEFAULT_HEIGHT,
+                                i);
+            boards[i].publish(games[i]);
+        }
+        final MosaicView view = new MosaicView(boards,
+                                               Board.DEFAULT_WIDTH,
+                                               Board.DEFAULT_HEIGHT,
+                                               cellSize);
+        if (GraphicsEnvironment.isHeadless()) {
+            benchmark(view,
+                      games,
+                      boards);
+            return;
+        }
+        Thread tournament = new Thread(() -> {
+            Random random = new Random(1);
+            long next = System.nanoTime();
+            while (true) {
+                playTick(games,
+                         boards,
+                         random);
+                next += Game.TICK_MILLIS * 1000000L;
+                LockSupport.parkNanos(next - System.nanoTime());
+            }
+        },
+                                       "Tournament");
+        tournament.setDaemon(true);
+        tournament.start();
+        SwingUtilities.invokeLater(() -> {
+            final JFrame frame = new JFrame("Mosaic");
+            frame.add(view);
+            frame.pack();
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setVisible(true);
+            Timer title = new Timer(500,
+                                    e -> frame.setTitle(String.format(
+                                        "Mosaic  %d boards  %.2f ms/frame  "
+                                        + "%d redrawn",
+                                        boards.length,
+                                        view.getFrameNanos() / 1e6,
+                                        view.getLastRedrawn())));
+            title.start();
+        });
+    }
+
+    /**
+     * Moves every game on by one random action, starting over any that have
+     * ended, and publishes them.
+     */
+    private static void playTick(Game[] games,
+                                 SnapshotPublisher[] boards,
+                                 Random random) {
+        for (int i = 0; i < games.length; i++) {
+            if (games[i].isGameOver()) {
+                games[i] = new Game(Board.DEFAULT_WIDTH,
+                                    Board.DEFAULT_HEIGHT,
+                                    random.nextLong());
+            }
+            //mostly ticks, so pieces fall as they would in play
+            byte action = random.nextInt(4) == 0
+                          ? (byte) random.nextInt(Replay.COUNTER_CLOCKWISE + 1)
+                          : Replay.STEP;
+            if (Replay.apply(games[i],
+                             action) || action != Replay.STEP) {
+                boards[i].publish(games[i]);
+            }
+        }
+    }
+
+    private static void benchmark(MosaicView view,
+                                  Game[] games,
+                                  SnapshotPublisher[] boards) {
+        int frames = 600;
+        Random random = new Random(1);
+        BufferedImage screen = new BufferedImage(view.mosaic.getWidth(),
+                                                 view.mosaic.getHeight(),
+                                                 BufferedImage.TYPE_INT_RGB);
+        Graphics screenGraphics = screen.getGraphics();
+        long redrawn = 0;
+        long worst = 0;
+        long total = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            playTick(games,
+                     boards,
+                     random);
+            long start = System.nanoTime();
+            redrawn += view.update();
+            screenGraphics.drawImage(view.mosaic,
+                                     0,
+                                     0,
+                                     null);
+            long nanos = System.nanoTime() - start;
+            //the first frames include warm up
+            if (frame >= frames / 10) {
+                total += nanos;
+                worst = Math.max(worst,
+                                 nanos);
+            }
+        }
+        int timed = frames - frames / 10;
+        System.out.printf("%d boards, %dx%d pixels: %.3f ms per frame, "
+                          + "%.3f ms worst, %d tiles redrawn per frame%n",
+                          boards.length,
+                          view.mosaic.getWidth(),
+                          view.mosaic.getHeight(),
+                          total / 1e6 / timed,
+                          worst / 1e6,
+                          redrawn / frames);
+    }
+}
@@ -0,0 +1,471 @@
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds every position a Tetra can come to rest in from where it spawns,
+ * including positions only reachable by sliding under an overhang or rotating
+ * into a gap. Moves are the ones a Game allows: a column left or right, a row
+ * down, and a rotation either way with no kicks, each only if the result fits.
+ * Gravity is assumed slow enough to allow a move at every row, so at 20G fewer
+ * positions may be reachable.
+ * A position is a center space plus one of four rotations. The search is a
+ * breadth first walk over positions, with a bitset marking the ones already
+ * seen. Positions that can not move down are lockable, and lockable positions
+ * covering the same spaces, such as the rotations of an O, are reported once.
+ * perft() counts the sequences of placements to a given depth, which checks
+ * the search against known counts and measures its speed.
+ * @author Zach Cotter
+ */
+public class PlacementSearch {
+
+    //furthest a center can be from the spaces of its Tetra
+    private static final int MARGIN = 4;
+    private static final int ROTATIONS = 4;
+
+    private final int width;
+    private final int height;
+    private final int spanX;
+    private final int spanY;
+    private final Shape[] shapes;
+    private final long[] visited;
+    private final long[] placed;
+    private final int[] queue;
+    private Board[] boards;
+    private int[][] found;
+
+    /**
+     * Constructs a search for boards of the given size.
+     * @param width int representing the number of columns
+     * @param height int representing the number of rows
+     */
+    public PlacementSearch(int width,
+                           int height) {
+        this.width = width;
+        this.height = height;
+        spanX = width + 2 * MARGIN;
+        spanY = height + 2 * MARGIN;
+        shapes = new Shape[Tetra.NUMBER_OF_TETRAS];
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Shape(new Tetra(Tetra.TETRA_IDENTIFIERS[i],
+                                            width));
+        }
+        int states = ROTATIONS * spanX * spanY;
+        visited = new long[(states + 63) / 64];
+        placed = new long[(ROTATIONS * width * height + 63) / 64];
+        queue = new int[states];
+        boards = new Board[0];
+        found = new int[0][];
+    }
+
+    /**
+     * Determines the most placements a single search can find.
+     * @return int representing the size needed for the results of search()
+     */
+    public int getMaxPlacements() {
+        return ROTATIONS * width * height;
+    }
+
+    /**
+     * Finds the distinct lockable placements of a Tetra on a board.
+     * @param board Board holding the pile
+     * @param identifier char representing the predefined Tetra
+     * @return List of Tetras at each placement, in the order found
+     */
+    public List<Tetra> findPlacements(Board board,
+                                      char identifier) {
+        Shape shape = shapeOf(identifier);
+        int[] results = new int[getMaxPlacements()];
+        int count = search(board,
+                           shape,
+                           results);
+        List<Tetra> placements = new ArrayList<Tetra>(count);
+        for (int i = 0; i < count; i++) {
+            placements.add(toTetra(shape,
+                                   results[i]));
+        }
+        return placements;
+    }
+
+    /**
+     * Counts the distinct lockable placements of a Tetra on a board.
+     * @param board Board holding the pile
+     * @param identifier char representing the predefined Tetra
+     * @return int representing the number of placements
+     */
+    public int countPlacements(Board board,
+                               char identifier) {
+        if (found.length == 0) {
+            found = new int[1][getMaxPlacements()];
+        }
+        return search(board,
+                      shapeOf(identifier),
+                      found[0]);
+    }
+
+    /**
+     * Counts the sequences of placements of the given Tetras, one after
+     * another, with full rows cleared after each. A sequence that fills the
+     * top row before the last Tetra ends the game and is not counted.
+     * @param board Board holding the pile, which is not changed
+     * @param pieces char[] of Tetra identifiers, one per placement
+     * @param depth int representing the number of placements per sequence
+     * @return long representing the number of sequences
+     */
+    public long perft(Board board,
+                      char[] pieces,
+                      int depth) {
+        if (depth <= 0) {
+            return 1;
+        }
+        if (pieces.length < depth) {
+            throw new IllegalArgumentException("Need " + depth + " pieces, got "
+                                               + pieces.length);
+        }
+        if (boards.length < depth) {
+            boards = new Board[depth];
+            found = new int[depth][getMaxPlacements()];
+            for (int i = 0; i < depth; i++) {
+                boards[i] = new Board(width,
+                                      height);
+            }
+        }
+        boards[0].copyFrom(board);
+        return perft(0,
+                     pieces,
+                     depth);
+    }
+
+    private long perft(int ply,
+                       char[] pieces,
+                       int depth) {
+        Board board = boards[ply];
+        Shape shape = shapeOf(pieces[ply]);
+        int[] results = found[ply];
+        int count = search(board,
+                           shape,
+                           results);
+        if (ply == depth - 1) {
+            return count;
+        }
+        Board next = boards[ply + 1];
+        long leaves = 0;
+        for (int i = 0; i < count; i++) {
+            next.copyFrom(board);
+            lock(next,
+                 shape,
+                 results[i]);
+            if (next.getTop() > 0) {
+                leaves += perft(ply + 1,
+                                pieces,
+                                depth);
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Walks every position reachable from the spawn position and writes the
+     * lockable ones to results.
+     * @return int representing the number of placements written
+     */
+    private int search(Board board,
+                       Shape shape,
+                       int[] results) {
+        if (board.getWidth() != width || board.getHeight() != height) {
+            throw new IllegalArgumentException("Board sizes differ");
+        }
+        Arrays.fill(visited,
+                    0);
+        Arrays.fill(placed,
+                    0);
+        int start = state(shape.spawnX,
+                          shape.spawnY,
+                          0);
+        if (!fits(board,
+                  shape,
+                  start)) {
+            return 0;
+        }
+        visit(start);
+        queue[0] = start;
+        int head = 0;
+        int tail = 1;
+        int count = 0;
+        int rotationStep = spanX * spanY;
+        while (head < tail) {
+            int state = queue[head++];
+            int rotation = state / rotationStep;
+            int other = state - rotation * rotationStep;
+            int down = state + spanX;
+            if (fits(board,
+                     shape,
+                     down)) {
+                tail = enqueue(down,
+                               tail);
+            }
+            else if (markPlaced(shape,
+                                state)) {
+                results[count++] = state;
+            }
+            int left = state - 1;
+            if (fits(board,
+                     shape,
+                     left)) {
+                tail = enqueue(left,
+                               tail);
+            }
+            int right = state + 1;
+            if (fits(board,
+                     shape,
+                     right)) {
+                tail = enqueue(right,
+                               tail);
+            }
+            int clockwise = ((rotation + 1) & 3) * rotationStep + other;
+            if (fits(board,
+                     shape,
+                     clockwise)) {
+                tail = enqueue(clockwise,
+                               tail);
+            }
+            int counterClockwise = ((rotation + 3) & 3) * rotationStep + other;
+            if (fits(board,
+                     shape,
+                     counterClockwise)) {
+                tail = enqueue(counterClockwise,
+                               tail);
+            }
+        }
+        return count;
+    }
+
+    private int enqueue(int state,
+                        int tail) {
+        if (!isVisited(state)) {
+            visit(state);
+            queue[tail++] = state;
+        }
+        return tail;
+    }
+
+    private boolean isVisited(int state) {
+        return (visited[state >>> 6] & (1L << state)) != 0;
+    }
+
+    private void visit(int state) {
+        visited[state >>> 6] |= 1L << state;
+    }
+
+    /**
+     * Records the spaces covered by a lockable position.
+     * @return True if no other position covering the same spaces was found
+     */
+    private boolean markPlaced(Shape shape,
+                               int state) {
+        int rotation = rotationOf(state);
+        int x = centerX(state) + shape.minX[rotation];
+        int y = centerY(state) + shape.minY[rotation];
+        int key = (shape.form[rotation] * height + y) * width + x;
+        long bit = 1L << key;
+        if ((placed[key >>> 6] & bit) != 0) {
+            return false;
+        }
+        placed[key >>> 6] |= bit;
+        return true;
+    }
+
+    /**
+     * Determines if every space of a position is inbounds and unoccupied.
+     */
+    private boolean fits(Board board,
+                         Shape shape,
+                         int state) {
+        int rotation = rotationOf(state);
+        int cx = centerX(state);
+        int cy = centerY(state);
+        if (cx < -MARGIN + 1 || cx >= width + MARGIN - 1
+            || cy < -MARGIN + 1 || cy >= height + MARGIN - 1) {
+            return false;
+        }
+        int[] dx = shape.dx[rotation];
+        int[] dy = shape.dy[rotation];
+        for (int i = 0; i < dx.length; i++) {
+            if (board.isBlocked(cx + dx[i],
+                                cy + dy[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a placement to the pile and clears any rows it fills.
+     */
+    private void lock(Board board,
+                      Shape shape,
+                      int state) {
+        int rotation = rotationOf(state);
+        int cx = centerX(state);
+        int cy = centerY(state);
+        int[] dx = shape.dx[rotation];
+        int[] dy = shape.dy[rotation];
+        for (int i = 0; i < dx.length; i++) {
+            board.place(cx + dx[i],
+                        cy + dy[i],
+                        shape.color);
+        }
+        board.clearFullRows(cy + shape.minY[rotation],
+                            cy + shape.maxY[rotation]);
+    }
+
+    private Tetra toTetra(Shape shape,
+                          int state) {
+        int rotation = rotationOf(state);
+        int cx = centerX(state);
+        int cy = centerY(state);
+        int[] dx = shape.dx[rotation];
+        int[] dy = shape.dy[rotation];
+        Coordinate[] cells = new Coordinate[dx.length];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = Coordinate.at(cx + dx[i],
+                                     cy + dy[i]);
+        }
+        return new Tetra(cells,
+                         shape.color,
+                         Coordinate.at(cx,
+                                       cy));
+    }
+
+    private Shape shapeOf(char identifier) {
+        for (int i = 0; i < Tetra.TETRA_IDENTIFIERS.length; i++) {
+            if (Tetra.TETRA_IDENTIFIERS[i] == identifier) {
+                return shapes[i];
+            }
+        }
+        throw new IllegalArgumentException("Unknown Tetra " + identifier);
+    }
+
+    private int state(int centerX,
+                      int centerY,
+                      int rotation) {
+        return (rotation * spanY + centerY + MARGIN) * spanX + centerX + MARGIN;
+    }
+
+    private int rotationOf(int state) {
+        return state / (spanX * spanY);
+    }
+
+    private int centerX(int state) {
+        return state % spanX - MARGIN;
+    }
+
+    private int centerY(int state) {
+        return state / spanX % spanY - MARGIN;
+    }
+
+    /**
+     * The spaces of a predefined Tetra in each rotation, as offsets from its
+     * center.
+     */
+    private static class Shape {
+
+        private final int[][] dx = new int[ROTATIONS][];
+        private final int[][] dy = new int[ROTATIONS][];
+        private final int[] minX = new int[ROTATIONS];
+        private final int[] minY = new int[ROTATIONS];
+        private final int[] maxY = new int[ROTATIONS];
+        //the first rotation covering the same spaces, up to a translation
+        private final int[] form = new int[ROTATIONS];
+        private final Color color;
+        private final int spawnX;
+        private final int spawnY;
+
+        private Shape(Tetra spawn) {
+            Tetra tetra = spawn.cloneMethod();
+            spawnX = tetra.getCenter().getX();
+            spawnY = tetra.getCenter().getY();
+            color = tetra.getColor();
+            for (int r = 0; r < ROTATIONS; r++) {
+                Coordinate[] cells = tetra.getCells();
+                dx[r] = new int[cells.length];
+                dy[r] = new int[cells.length];
+                for (int i = 0; i < cells.length; i++) {
+                    dx[r][i] = cells[i].getX() - spawnX;
+                    dy[r][i] = cells[i].getY() - spawnY;
+                }
+                minX[r] = tetra.findLeftBound() - spawnX;
+                minY[r] = tetra.findBottomBound() - spawnY;
+                maxY[r] = tetra.findTopBound() - spawnY;
+                form[r] = r;
+                for (int other = 0; other < r; other++) {
+                    if (sameSpaces(other,
+                                   r)) {
+                        form[r] = form[other];
+                        break;
+                    }
+                }
+                tetra.rotateClockwise();
+            }
+        }
+
+        /**
+         * Determines if two rotations cover the same spaces once both are
+         * moved so their leftmost and highest spaces line up.
+         */
+        private boolean sameSpaces(int a,
+                                   int b) {
+            for (int i = 0; i < dx[a].length; i++) {
+                boolean found = false;
+                for (int j = 0; j < dx[b].length; j++) {
+                    if (dx[a][i] - minX[a] == dx[b][j] - minX[b]
+                        && dy[a][i] - minY[a] == dy[b][j] - minY[b]) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Prints perft counts and speed on an empty board, placing the predefined
+     * Tetras in order.
+     * Usage: java PlacementSearch [depth [columns rows]]
+     * @param args String[] of optional depth and board size
+     */
+    public static void main(String[] args) {
+        int depth = args.length >= 1 ? Integer.parseInt(args[0]) : 3;
+        int columns = Board.DEFAULT_WIDTH;
+        int rows = Board.DEFAULT_HEIGHT;
+        if (args.length >= 3) {
+            columns = Integer.parseInt(args[1]);
+            rows = Integer.parseInt(args[2]);
+        }
+        char[] pieces = new char[depth];
+        for (int i = 0; i < depth; i++) {
+            pieces[i] = Tetra.TETRA_IDENTIFIERS[i % Tetra.NUMBER_OF_TETRAS];
+        }
+        Board board = new Board(columns,
+                                rows);
+        PlacementSearch search = new PlacementSearch(columns,
+                                                     rows);
+        for (int d = 1; d <= depth; d++) {
+            long start = System.nanoTime();
+            long leaves = search.perft(board,
+                                       pieces,
+                                       d);
+            long nanos = Math.max(System.nanoTime() - start,
+                                  1);
+            System.out.println("perft(" + d + ") = " + leaves + " in "
+                               + nanos / 1000000 + " ms, "
+                               + leaves * 1000000000L / nanos
+                               + " leaves/s");
+        }
+    }
+}
@@ -0,0 +1,269 @@
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws games by writing pixels straight into the int[] behind a
+ * BufferedImage, for machines where Graphics draws in software and a
+ * setColor() and fillRect() per space is most of the frame. The picture is
+ * exactly the one World.paintGame() draws. Each row of the board is split
+ * into runs of one color; a run is filled into the first line of pixels of
+ * the row with Arrays.fill(), and that line is copied down the rest of the
+ * row with System.arraycopy(). The empty rows above the pile are one fill.
+ * Only the score is drawn through Graphics. The image is then copied to the
+ * screen once per frame.
+ * @author Zach Cotter
+ */
+public class RasterRenderer {
+
+    private static final int BLOCK_SIZE = World.BLOCK_SIZE;
+    private static final int EMPTY_RGB = Color.WHITE.getRGB();
+
+    private final int width;
+    private final int height;
+    private final BufferedImage image;
+    private final int[] pixels;
+    private final int scanline;
+
+    /**
+     * Constructs a renderer for boards of the given size.
+     * @param width int representing the number of columns
+     * @param height int representing the number of rows
+     */
+    public RasterRenderer(int width,
+                          int height) {
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width * BLOCK_SIZE,
+                                  height * BLOCK_SIZE,
+                                  BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        scanline = width * BLOCK_SIZE;
+    }
+
+    /**
+     * Accessor for the image games are drawn into.
+     * @return BufferedImage the size of the board in pixels
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    /**
+     * Determines if a snapshot can be drawn by this renderer.
+     * @param snapshot GameSnapshot to draw
+     * @return True if its board is the size this renderer was made for
+     */
+    public boolean fits(GameSnapshot snapshot) {
+        return snapshot.getWidth() == width && snapshot.getHeight() == height;
+    }
+
+    /**
+     * Draws a whole frame of a game into the image.
+     * @param snapshot GameSnapshot of a board the size of this renderer's
+     */
+    public void render(GameSnapshot snapshot) {
+        render(snapshot,
+               0,
+               height - 1);
+    }
+
+    /**
+     * Draws the given rows of a game into the image, leaving the others as
+     * they were, then the score, as World.paintGame() does.
+     * @param snapshot GameSnapshot of a board the size of this renderer's
+     * @param fromY int representing the highest row to draw
+     * @param toY int representing the lowest row to draw
+     */
+    public void render(GameSnapshot snapshot,
+                       int fromY,
+                       int toY) {
+        int top = Math.max(fromY,
+                           Math.min(snapshot.getTop(),
+                                    toY + 1));
+        Arrays.fill(pixels,
+                    fromY * BLOCK_SIZE * scanline,
+                    top * BLOCK_SIZE * scanline,
+                    EMPTY_RGB);
+        for (int y = top; y <= toY; y++) {
+            int row = y * BLOCK_SIZE * scanline;
+            int x = 0;
+            while (x < width) {
+                Color color = snapshot.getColor(x,
+                                                y);
+                int end = x + 1;
+                while (end < width && snapshot.getColor(end,
+                                                        y) == color) {
+                    end++;
+                }
+                Arrays.fill(pixels,
+                            row + x * BLOCK_SIZE,
+                            row + end * BLOCK_SIZE,
+                            color == null ? EMPTY_RGB : color.getRGB());
+                x = end;
+            }
+            copyDown(row,
+                     0,
+                     scanline);
+        }
+        int rgb = snapshot.getCurrentColor().getRGB();
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int ghostY = snapshot.getCurrentY(i) + snapshot.getGhostDistance();
+            if (ghostY >= fromY && ghostY <= toY) {
+                paintGhost(snapshot.getCurrentX(i),
+                           ghostY,
+                           rgb);
+            }
+        }
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int y = snapshot.getCurrentY(i);
+            if (y >= fromY && y <= toY) {
+                paintCell(snapshot.getCurrentX(i),
+                          y,
+                          rgb);
+            }
+        }
+        Graphics g = image.getGraphics();
+        try {
+            World.paintScore(g,
+                             snapshot.getScore());
+        }
+        finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Copies part of the first line of pixels of a row down the rest of it.
+     */
+    private void copyDown(int row,
+                          int from,
+                          int length) {
+        for (int line = 1; line < BLOCK_SIZE; line++) {
+            System.arraycopy(pixels,
+                             row + from,
+                             pixels,
+                             row + line * scanline + from,
+                             length);
+        }
+    }
+
+    private void paintCell(int x,
+                           int y,
+                           int rgb) {
+        int row = y * BLOCK_SIZE * scanline;
+        Arrays.fill(pixels,
+                    row + x * BLOCK_SIZE,
+                    row + (x + 1) * BLOCK_SIZE,
+                    rgb);
+        copyDown(row,
+                 x * BLOCK_SIZE,
+                 BLOCK_SIZE);
+    }
+
+    /**
+     * Paints a space empty with an outline inset from its edges, as
+     * Block.paintGhost() does.
+     */
+    private void paintGhost(int x,
+                            int y,
+                            int rgb) {
+        paintCell(x,
+                  y,
+                  EMPTY_RGB);
+        int inset = Block.GHOST_INSET;
+        int left = x * BLOCK_SIZE + inset;
+        int right = (x + 1) * BLOCK_SIZE - inset - 1;
+        int first = y * BLOCK_SIZE + inset;
+        int last = (y + 1) * BLOCK_SIZE - inset - 1;
+        Arrays.fill(pixels,
+                    first * scanline + left,
+                    first * scanline + right + 1,
+                    rgb);
+        Arrays.fill(pixels,
+                    last * scanline + left,
+                    last * scanline + right + 1,
+                    rgb);
+        for (int line = first + 1; line < last; line++) {
+            pixels[line * scanline + left] = rgb;
+            pixels[line * scanline + right] = rgb;
+        }
+    }
+
+    /**
+     * Draws frames of random games through World.paintGame() and through a
+     * RasterRenderer, checks that both give the same pixels, and prints the
+     * time per frame of each.
+     * Usage: java RasterRenderer [frames]
+     * @param args String[] of an optional number of frames
+     */
+    public static void main(String[] args) {
+        int frames = args.length >= 1 ? Integer.parseInt(args[0]) : 20000;
+        Random random = new Random(1);
+        Game game = new Game(Board.DEFAULT_WIDTH,
+                             Board.DEFAULT_HEIGHT,
+                             1);
+        GameSnapshot[] snapshots = new GameSnapshot[frames];
+        for (int i = 0; i < frames; i++) {
+            if (game.isGameOver()) {
+                game = new Game(Board.DEFAULT_WIDTH,
+                                Board.DEFAULT_HEIGHT,
+                                random.nextLong());
+            }
+            Replay.apply(game,
+                         (byte) random.nextInt(Replay.COUNTER_CLOCKWISE + 1));
+            snapshots[i] = new GameSnapshot(game);
+        }
+        RasterRenderer raster = new RasterRenderer(Board.DEFAULT_WIDTH,
+                                                   Board.DEFAULT_HEIGHT);
+        BufferedImage reference =
+            new BufferedImage(raster.getImage().getWidth(),
+                              raster.getImage().getHeight(),
+                              BufferedImage.TYPE_INT_RGB);
+        int[] referencePixels =
+            ((DataBufferInt) reference.getRaster().getDataBuffer()).getData();
+        int mismatched = 0;
+        for (int i = 0; i < frames; i += 97) {
+            Graphics g = reference.getGraphics();
+            World.paintGame(g,
+                            snapshots[i],
+                            0,
+                            Board.DEFAULT_HEIGHT - 1);
+            g.dispose();
+            raster.render(snapshots[i]);
+            if (!Arrays.equals(referencePixels,
+                               raster.pixels)) {
+                mismatched++;
+            }
+        }
+        //twice each, the first pass warms up
+        long graphicsNanos = 0;
+        long rasterNanos = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            long start = System.nanoTime();
+            for (GameSnapshot snapshot : snapshots) {
+                Graphics g = reference.getGraphics();
+                World.paintGame(g,
+                                snapshot,
+                                0,
+                                Board.DEFAULT_HEIGHT - 1);
+                g.dispose();
+            }
+            graphicsNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (GameSnapshot snapshot : snapshots) {
+                raster.render(snapshot);
+            }
+            rasterNanos = System.nanoTime() - start;
+        }
+        System.out.printf("Graphics: %.1f us per frame%n",
+                          graphicsNanos / 1e3 / frames);
+        System.out.printf("raster:   %.1f us per frame%n",
+                          rasterNanos / 1e3 / frames);
+        System.out.println(mismatched + " of " + (frames + 96) / 97
+                           + " compared frames differ");
+    }
+}
@@ -0,0 +1,296 @@
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Draws a World's game on a thread of its own. The game logic publishes each
+ * change through a SnapshotPublisher and carries on at once; the render thread
+ * copies the latest GameSnapshot into one of its own, brings an image of the
+ * board up to date and copies it into the back buffer of a triple buffered
+ * BufferStrategy in one go, then shows it, so frames are never seen half
+ * drawn and game ticks never wait on painting. Only rows that changed are
+ * drawn into the image again: those whose row version in the snapshot moved,
+ * those the current Tetra or its ghost covered in the last frame or cover
+ * now, and the rows under the score when it changed. States published faster
+ * than frames can be drawn are skipped, only the newest one is drawn. Swing's
+ * own repaints are ignored, the Canvas only asks the render thread for a
+ * frame when the window system needs one. Setting the tetris.renderer system
+ * property to raster draws the rows with a RasterRenderer, which is faster
+ * where Graphics draws in software.
+ * @author Zach Cotter
+ */
+public class RenderCanvas extends Canvas {
+
+    private static final long serialVersionUID = 1L;
+    private static final int BUFFERS = 3;
+    private static final Color FOREGROUND_COLOR = Color.BLACK;
+    private static final Color BACKGROUND_COLOR = Color.WHITE;
+    private static final float GAME_OVER_FONT_SIZE = 80;
+    private static final int GAME_OVER_X = 10;
+    private static final int GAME_OVER_Y = 100;
+    public static final String RENDERER_PROPERTY = "tetris.renderer";
+    private static final boolean RASTER =
+        "raster".equals(System.getProperty(RENDERER_PROPERTY));
+
+    private final SnapshotPublisher snapshots;
+    //only touched by the render thread
+    private final GameSnapshot snapshot = new GameSnapshot();
+    private RasterRenderer raster;
+    //image of the board the frames are copied from, and what is drawn in it
+    private BufferedImage board;
+    private long[] drawnRowVersions = new long[0];
+    private boolean[] stale = new boolean[0];
+    private int drawnScore;
+    private int drawnPieceTop;
+    private int drawnPieceBottom = -1;
+    private volatile boolean dirty;
+    private volatile boolean running;
+    private Thread renderThread;
+
+    /**
+     * Constructs a canvas drawing the states published through the given
+     * publisher.
+     * @param snapshots SnapshotPublisher the game is published through
+     */
+    public RenderCanvas(SnapshotPublisher snapshots) {
+        this.snapshots = snapshots;
+        setIgnoreRepaint(true);
+        //keys belong to the applet
+        setFocusable(false);
+        setBackground(BACKGROUND_COLOR);
+    }
+
+    /**
+     * Tells the render thread a new state has been published. Never waits.
+     */
+    public void wake() {
+        Thread thread = renderThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Starts the render thread once the Canvas can be drawn on.
+     */
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        createBufferStrategy(BUFFERS);
+        running = true;
+        dirty = true;
+        renderThread = new Thread(this::renderLoop,
+                                  "Renderer");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    /**
+     * Stops the render thread before the Canvas goes away.
+     */
+    @Override
+    public void removeNotify() {
+        running = false;
+        Thread thread = renderThread;
+        renderThread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            }
+            catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * Asks the render thread to redraw, for when the window system has
+     * damaged the Canvas.
+     * @param g Graphics, unused
+     */
+    @Override
+    public void paint(Graphics g) {
+        dirty = true;
+        wake();
+    }
+
+    @Override
+    public void update(Graphics g) {
+        paint(g);
+    }
+
+    /**
+     * Draws each newly published state until the Canvas goes away, parking
+     * while there is nothing new.
+     */
+    private void renderLoop() {
+        BufferStrategy strategy = getBufferStrategy();
+        while (running) {
+            if (!snapshots.read(snapshot) && !dirty) {
+                LockSupport.park(this);
+                continue;
+            }
+            dirty = false;
+            render(strategy);
+        }
+    }
+
+    /**
+     * Draws a whole frame into the back buffer and shows it, starting again
+     * if the buffer's contents were lost meanwhile.
+     */
+    private void render(BufferStrategy strategy) {
+        TetrisEvents.FullRepaint event = new TetrisEvents.FullRepaint();
+        event.begin();
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    draw(g);
+                }
+                finally {
+                    g.dispose();
+                }
+            } while (strategy.contentsRestored());
+            strategy.show();
+        } while (strategy.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+        event.end();
+        if (snapshot.getVersion() != 0) {
+            LatencyProbe.presented(snapshot.getPublishedNanos());
+            if (event.shouldCommit()) {
+                event.gameOver = snapshot.isGameOver();
+                event.boardHeight = snapshot.getHeight() - snapshot.getTop();
+                event.commit();
+            }
+        }
+    }
+
+    private void draw(Graphics g) {
+        if (snapshot.getVersion() == 0) {
+            g.setColor(BACKGROUND_COLOR);
+            g.fillRect(0,
+                       0,
+                       getWidth(),
+                       getHeight());
+            return;
+        }
+        updateBoard();
+        g.drawImage(board,
+                    0,
+                    0,
+                    null);
+        if (snapshot.isGameOver()) {
+            g.setFont(g.getFont().deriveFont(GAME_OVER_FONT_SIZE));
+            g.setColor(FOREGROUND_COLOR);
+            g.drawString(" GAME ",
+                         GAME_OVER_X,
+                         GAME_OVER_Y);
+            g.drawString(" OVER ",
+                         GAME_OVER_X,
+                         2 * GAME_OVER_Y);
+        }
+    }
+
+    /**
+     * Draws the rows of the board image that no longer match the snapshot.
+     */
+    private void updateBoard() {
+        int height = snapshot.getHeight();
+        if (board == null || drawnRowVersions.length != height
+            || board.getWidth() != snapshot.getWidth() * World.BLOCK_SIZE) {
+            if (RASTER) {
+                raster = new RasterRenderer(snapshot.getWidth(),
+                                            height);
+                board = raster.getImage();
+            }
+            else {
+                board = new BufferedImage(snapshot.getWidth() * World.BLOCK_SIZE,
+                                          height * World.BLOCK_SIZE,
+                                          BufferedImage.TYPE_INT_RGB);
+            }
+            drawnRowVersions = new long[height];
+            Arrays.fill(drawnRowVersions,
+                        -1);
+            stale = new boolean[height];
+            drawnPieceBottom = -1;
+        }
+        for (int y = 0; y < height; y++) {
+            stale[y] = snapshot.getRowVersion(y) != drawnRowVersions[y];
+        }
+        markRows(drawnPieceTop,
+                 drawnPieceBottom);
+        int pieceTop = height;
+        int pieceBottom = -1;
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int y = snapshot.getCurrentY(i);
+            pieceTop = Math.min(pieceTop,
+                                y);
+            pieceBottom = Math.max(pieceBottom,
+                                   y + snapshot.getGhostDistance());
+        }
+        markRows(pieceTop,
+                 pieceBottom);
+        if (snapshot.getScore() != drawnScore) {
+            markRows(0,
+                     World.SCORE_BOTTOM_ROW);
+        }
+        Graphics g = RASTER ? null : board.getGraphics();
+        try {
+            int y = 0;
+            while (y < height) {
+                if (!stale[y]) {
+                    y++;
+                    continue;
+                }
+                int end = y;
+                while (end + 1 < height && stale[end + 1]) {
+                    end++;
+                }
+                if (RASTER) {
+                    raster.render(snapshot,
+                                  y,
+                                  end);
+                }
+                else {
+                    World.paintGame(g,
+                                    snapshot,
+                                    y,
+                                    end);
+                }
+                y = end + 1;
+            }
+        }
+        finally {
+            if (g != null) {
+                g.dispose();
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            drawnRowVersions[y] = snapshot.getRowVersion(y);
+        }
+        drawnScore = snapshot.getScore();
+        drawnPieceTop = pieceTop;
+        drawnPieceBottom = pieceBottom;
+    }
+
+    /**
+     * Marks the rows between two rows as needing to be drawn, clipped to the
+     * board.
+     */
+    private void markRows(int fromY,
+                          int toY) {
+        for (int y = Math.max(fromY,
+                              0); y <= Math.min(toY,
+                                                stale.length - 1); y++) {
+            stale[y] = true;
+        }
+    }
+}
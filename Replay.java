@@ -0,0 +1,467 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Records a game as the settings it started with and the actions passed to
+ * it, one byte per action. A Game is deterministic, so applying the actions
+ * to a new game built by newGame() plays the recorded game again exactly.
+ * Game ticks are recorded as STEP actions, so the number of STEPs before an
+ * action gives its time.
+ * Replay files store the actions in segments of KEYFRAME_TICKS ticks, each
+ * starting with a keyframe holding the complete state of the game at that
+ * point, and end with an index of where each keyframe starts, so ReplayFile
+ * can jump to any tick without playing everything before it. Files written
+ * before keyframes or lock delay were added can still be read, and play
+ * without lock delay.
+ * @author Zach Cotter
+ */
+public class Replay {
+
+    public static final byte STEP = 0;
+    public static final byte LEFT = 1;
+    public static final byte RIGHT = 2;
+    public static final byte DROP = 3;
+    public static final byte CLOCKWISE = 4;
+    public static final byte COUNTER_CLOCKWISE = 5;
+
+    private static final int MAGIC = 0x54545250; //"TTRP"
+    private static final int VERSION = 3;
+    private static final int FIRST_VERSION = 1;
+    //first version with keyframes
+    private static final int KEYFRAME_VERSION = 2;
+    //first version with lock delay, and keyframes Game.readState() can load
+    private static final int LOCK_DELAY_VERSION = 3;
+    //ticks between keyframes, about four seconds of play
+    public static final int KEYFRAME_TICKS = 256;
+    //limits on what read() accepts, far past any real game
+    public static final int MAX_GRAVITY_LEVELS = 1024;
+    public static final int MAX_SPACES = 1024 * 1024;
+    public static final int MAX_ACTIONS = 64 * 1024 * 1024;
+    public static final int MAX_STATE_BYTES = 16 * MAX_SPACES;
+    //actions read before the array holding them is grown
+    private static final int READ_CHUNK = 64 * 1024;
+
+    private final int columns;
+    private final int rows;
+    private final long seed;
+    private final int[] gravities;
+    private final GravityCurve gravityCurve;
+    private final int lockDelayTicks;
+    private final int lockResetLimit;
+    private byte[] actions;
+    private int actionCount;
+    private int tickCount;
+
+    /**
+     * Constructs an empty recording of a game with the given settings and no
+     * lock delay.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     * @param seed long seed of the piece generator
+     * @param gravityCurve GravityCurve the game is played with
+     */
+    public Replay(int columns,
+                  int rows,
+                  long seed,
+                  GravityCurve gravityCurve) {
+        this(columns,
+             rows,
+             seed,
+             gravityCurve,
+             0,
+             0);
+    }
+
+    /**
+     * Constructs an empty recording of a game with the given settings.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     * @param seed long seed of the piece generator
+     * @param gravityCurve GravityCurve the game is played with
+     * @param lockDelayTicks int representing the lock delay in ticks
+     * @param lockResetLimit int representing the lock delay restarts allowed
+     * per Tetra
+     * @see Game#setLockDelay(int, int)
+     */
+    public Replay(int columns,
+                  int rows,
+                  long seed,
+                  GravityCurve gravityCurve,
+                  int lockDelayTicks,
+                  int lockResetLimit) {
+        this(columns,
+             rows,
+             seed,
+             gravityCurve.getGravities(),
+             lockDelayTicks,
+             lockResetLimit,
+             new byte[256],
+             0);
+    }
+
+    private Replay(int columns,
+                   int rows,
+                   long seed,
+                   int[] gravities,
+                   int lockDelayTicks,
+                   int lockResetLimit,
+                   byte[] actions,
+                   int actionCount) {
+        this.columns = columns;
+        this.rows = rows;
+        this.seed = seed;
+        this.gravities = gravities;
+        this.gravityCurve = new GravityCurve(gravities);
+        this.lockDelayTicks = lockDelayTicks;
+        this.lockResetLimit = lockResetLimit;
+        this.actions = actions;
+        this.actionCount = actionCount;
+        for (int i = 0; i < actionCount; i++) {
+            if (actions[i] == STEP) {
+                tickCount++;
+            }
+        }
+    }
+
+    /**
+     * Builds the game this replay starts from.
+     * @return a new Game with the recorded settings and no actions applied
+     */
+    public Game newGame() {
+        Game game = new Game(columns,
+                             rows,
+                             seed);
+        game.setGravityCurve(gravityCurve);
+        game.setLockDelay(lockDelayTicks,
+                          lockResetLimit);
+        return game;
+    }
+
+    /**
+     * Accessor for the lock delay of the recorded game.
+     * @return int representing the lock delay in ticks
+     */
+    public int getLockDelayTicks() {
+        return lockDelayTicks;
+    }
+
+    /**
+     * Accessor for the lock delay restarts of the recorded game.
+     * @return int representing the restarts allowed per Tetra
+     */
+    public int getLockResetLimit() {
+        return lockResetLimit;
+    }
+
+    /**
+     * Accessor for the speeds the recorded game was played at.
+     * @return GravityCurve of the recorded game
+     */
+    public GravityCurve getGravityCurve() {
+        return gravityCurve;
+    }
+
+    /**
+     * Adds an action to the end of the recording.
+     * @param action byte representing one of the action constants
+     */
+    public void record(byte action) {
+        if (actionCount == actions.length) {
+            actions = Arrays.copyOf(actions,
+                                    actions.length * 2);
+        }
+        actions[actionCount++] = action;
+        if (action == STEP) {
+            tickCount++;
+        }
+    }
+
+    /**
+     * Accessor for a recorded action.
+     * @param index int representing the position of the action
+     * @return byte representing one of the action constants
+     */
+    public byte getAction(int index) {
+        return actions[index];
+    }
+
+    /**
+     * Accessor for the number of recorded actions.
+     * @return int representing the number of actions, ticks included
+     */
+    public int getActionCount() {
+        return actionCount;
+    }
+
+    /**
+     * Accessor for the number of recorded game ticks.
+     * @return int representing the number of STEP actions
+     */
+    public int getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Accessor for the width of the recorded board
+     * @return int representing the number of columns
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * Accessor for the height of the recorded board
+     * @return int representing the number of rows
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Accessor for the seed of the recorded game
+     * @return long seed of the piece generator
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Passes an action to a game.
+     * @param game Game to act on
+     * @param action byte representing one of the action constants
+     * @return whether or not the current Tetra moved
+     */
+    public static boolean apply(Game game,
+                                byte action) {
+        if (action == STEP) {
+            return game.step();
+        }
+        if (action == LEFT) {
+            return game.moveLeft();
+        }
+        if (action == RIGHT) {
+            return game.moveRight();
+        }
+        if (action == DROP) {
+            return game.hardDrop();
+        }
+        if (action == CLOCKWISE) {
+            return game.rotate(true);
+        }
+        if (action == COUNTER_CLOCKWISE) {
+            return game.rotate(false);
+        }
+        throw new IllegalArgumentException("Unknown action " + action);
+    }
+
+    /**
+     * Writes this replay to a stream, playing it through once to take the
+     * keyframes.
+     * @param out OutputStream to write to
+     * @throws IOException if the stream can not be written
+     */
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(columns);
+        data.writeInt(rows);
+        data.writeLong(seed);
+        data.writeInt(gravities.length);
+        for (int gravity : gravities) {
+            data.writeInt(gravity);
+        }
+        data.writeInt(lockDelayTicks);
+        data.writeInt(lockResetLimit);
+        data.writeInt(KEYFRAME_TICKS);
+        data.writeInt(actionCount);
+        int keyframes = tickCount / KEYFRAME_TICKS + 1;
+        int[] keyframeTicks = new int[keyframes];
+        int[] keyframeActions = new int[keyframes];
+        long[] keyframeOffsets = new long[keyframes];
+        int keyframeCount = 0;
+        ByteArrayOutputStream state = new ByteArrayOutputStream();
+        DataOutputStream stateData = new DataOutputStream(state);
+        Game game = newGame();
+        int index = 0;
+        int tick = 0;
+        do {
+            keyframeTicks[keyframeCount] = tick;
+            keyframeActions[keyframeCount] = index;
+            keyframeOffsets[keyframeCount] = data.size();
+            keyframeCount++;
+            state.reset();
+            game.writeState(stateData);
+            data.writeInt(state.size());
+            state.writeTo(data);
+            int end = index;
+            int endTick = tick + KEYFRAME_TICKS;
+            while (end < actionCount && tick < endTick) {
+                byte action = actions[end++];
+                apply(game,
+                      action);
+                if (action == STEP) {
+                    tick++;
+                }
+            }
+            data.writeInt(end - index);
+            data.write(actions,
+                       index,
+                       end - index);
+            index = end;
+        } while (index < actionCount);
+        long indexOffset = data.size();
+        data.writeInt(keyframeCount);
+        for (int i = 0; i < keyframeCount; i++) {
+            data.writeInt(keyframeTicks[i]);
+            data.writeInt(keyframeActions[i]);
+            data.writeLong(keyframeOffsets[i]);
+        }
+        data.writeLong(indexOffset);
+        data.flush();
+    }
+
+    /**
+     * Determines if the keyframes of a replay file of the given version can
+     * be read by Game.readState(). Keyframes written before lock delay was
+     * added hold less state.
+     * @param version int representing the version in the file header
+     * @return True if seeking may load the file's keyframes
+     */
+    static boolean hasReadableKeyframes(int version) {
+        return version >= LOCK_DELAY_VERSION;
+    }
+
+    /**
+     * Reads a replay written by write(). Every length in the stream is
+     * checked against a limit, and arrays only grow as their contents
+     * arrive, so a short or hostile stream can not make it allocate more than
+     * it holds.
+     * @param in InputStream to read from
+     * @return the Replay read
+     * @throws IOException if the stream can not be read or is not a replay
+     */
+    public static Replay read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a replay");
+        }
+        int version = data.readInt();
+        if (version < FIRST_VERSION || version > VERSION) {
+            throw new IOException("Unsupported replay version " + version);
+        }
+        int columns = data.readInt();
+        int rows = data.readInt();
+        if (columns <= 0 || rows <= 0
+            || (long) columns * rows > MAX_SPACES) {
+            throw new IOException("Corrupt replay");
+        }
+        long seed = data.readLong();
+        int gravityCount = data.readInt();
+        if (gravityCount <= 0 || gravityCount > MAX_GRAVITY_LEVELS) {
+            throw new IOException("Corrupt replay");
+        }
+        int[] gravities = new int[gravityCount];
+        for (int i = 0; i < gravities.length; i++) {
+            gravities[i] = data.readInt();
+        }
+        int lockDelayTicks = 0;
+        int lockResetLimit = 0;
+        if (version >= LOCK_DELAY_VERSION) {
+            lockDelayTicks = data.readInt();
+            lockResetLimit = data.readInt();
+            if (lockDelayTicks < 0 || lockResetLimit < 0) {
+                throw new IOException("Corrupt replay");
+            }
+        }
+        if (version >= KEYFRAME_VERSION) {
+            data.readInt();
+        }
+        int actionCount = data.readInt();
+        if (actionCount < 0 || actionCount > MAX_ACTIONS) {
+            throw new IOException("Corrupt replay");
+        }
+        byte[] actions = new byte[Math.max(Math.min(actionCount,
+                                                    READ_CHUNK),
+                                           1)];
+        int read = 0;
+        if (version == FIRST_VERSION) {
+            actions = readActions(data,
+                                  actions,
+                                  0,
+                                  actionCount);
+            read = actionCount;
+        }
+        byte[] skipped = new byte[READ_CHUNK];
+        while (read < actionCount) {
+            //keyframes are only needed for seeking
+            int stateLength = data.readInt();
+            if (stateLength < 0 || stateLength > MAX_STATE_BYTES) {
+                throw new IOException("Corrupt replay");
+            }
+            while (stateLength > 0) {
+                int length = Math.min(stateLength,
+                                      skipped.length);
+                data.readFully(skipped,
+                               0,
+                               length);
+                stateLength -= length;
+            }
+            int segmentLength = data.readInt();
+            if (segmentLength <= 0 || segmentLength > actionCount - read) {
+                throw new IOException("Corrupt replay");
+            }
+            actions = readActions(data,
+                                  actions,
+                                  read,
+                                  segmentLength);
+            read += segmentLength;
+        }
+        return new Replay(columns,
+                         rows,
+                         seed,
+                         gravities,
+                         lockDelayTicks,
+                         lockResetLimit,
+                         actions,
+                         actionCount);
+    }
+
+    /**
+     * Reads actions into an array at the given position, growing the array
+     * a chunk at a time as they arrive.
+     * @return the array holding the actions, which may be a new one
+     */
+    private static byte[] readActions(DataInputStream data,
+                                      byte[] actions,
+                                      int offset,
+                                      int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            if (offset == actions.length) {
+                actions = Arrays.copyOf(actions,
+                                        (int) Math.min((long) actions.length
+                                                       * 2,
+                                                       MAX_ACTIONS));
+            }
+            int count = Math.min(end - offset,
+                                 Math.min(actions.length - offset,
+                                          READ_CHUNK));
+            data.readFully(actions,
+                           offset,
+                           count);
+            for (int i = offset; i < offset + count; i++) {
+                if (actions[i] < STEP || actions[i] > COUNTER_CLOCKWISE) {
+                    throw new IOException("Corrupt replay");
+                }
+            }
+            offset += count;
+        }
+        return actions;
+    }
+}
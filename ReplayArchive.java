@@ -0,0 +1,807 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Append-only store for large numbers of replays in one directory. Replays are
+ * packed one after another into segment files of up to SEGMENT_SIZE bytes,
+ * each record holding the player's name and the bytes written by
+ * Replay.write(). A separate index file holds a fixed size entry per game with
+ * its date, a hash of the player, its score and where its record is, so games
+ * are listed and filtered by reading the index alone. Game IDs are positions
+ * in the index, so finding a game by ID is a single lookup, and dates are
+ * stamped on append and never go backwards, so date ranges are found by
+ * binary search. Two more mapped files index the games by player and by
+ * score. players.dat is a table of PLAYER_BUCKETS buckets of player keys,
+ * each holding its newest game, and every index entry holds the game before
+ * it in the same bucket, so a player's games are found by following one
+ * chain. top.dat holds the TOP_CAPACITY best games in order, kept sorted as
+ * games are appended, so the best games are read straight off it; asking
+ * for more than that many scans the index. Each of the two files records how
+ * many games it covers, so opening an archive only indexes games a crash
+ * left out, and nothing per game or per player is kept in memory. Opening
+ * therefore costs the same however many games are stored, and the two files
+ * take 8MB and 768KB of disk and page cache at any size.
+ * Both kinds of file are read through memory maps, and getReplayBytes() hands
+ * out a read-only view of the mapped segment without copying. The index is
+ * mapped in pages of INDEX_PAGE_ENTRIES entries and segments individually, so
+ * no single map passes the 2GB limit of a MappedByteBuffer however many games
+ * are stored. The segment being appended to is mapped ahead of its end, with
+ * the map doubling each time reads pass it, so a reader following new games
+ * only remaps a few times per segment; the file grows with the map, and
+ * the unused end is cut off when the archive is next opened.
+ * Any number of threads may append and read at once. Appends are serialized
+ * and publish a game by raising the entry count only after its record and
+ * entry are written, so readers never see a partly written game and need no
+ * lock. Only one process may open an archive at a time.
+ * @author Zach Cotter
+ */
+public class ReplayArchive implements Closeable {
+
+    public static final long SEGMENT_SIZE = 1L << 30;
+    public static final int INDEX_PAGE_ENTRIES = 1 << 20;
+    public static final int PLAYER_BUCKETS = 1 << 20;
+    public static final int TOP_CAPACITY = 1 << 16;
+    private static final int MAGIC = 0x54544152; //"TTAR"
+    private static final int VERSION = 2;
+    private static final String INDEX_NAME = "index.dat";
+    private static final String PLAYERS_NAME = "players.dat";
+    private static final String TOP_NAME = "top.dat";
+    private static final int HEADER_SIZE = 64;
+    private static final int COUNT_OFFSET = 8;
+    //entry layout
+    private static final int ENTRY_SIZE = 48;
+    private static final int DATE = 0;
+    private static final int PLAYER = 8;
+    private static final int SCORE = 16;
+    private static final int SEGMENT = 20;
+    private static final int OFFSET = 24;
+    private static final int LENGTH = 32;
+    //ID of the game before it in the same player bucket, or -1
+    private static final int PREVIOUS = 40;
+    //players.dat and top.dat start with the number of games they cover, -1
+    //while top.dat is part way through a change; players.dat then holds the
+    //newest game ID plus one of each bucket, top.dat its number of entries
+    //and entries of a score and a game ID, best first and earlier games
+    //first among equal scores
+    private static final int COVERED_OFFSET = 0;
+    private static final int TOP_SIZE_OFFSET = 8;
+    private static final int TABLE_HEADER_SIZE = 16;
+    private static final int TOP_ENTRY_SIZE = 12;
+    //smallest map of the segment being appended to
+    private static final long MIN_SEGMENT_MAP = 1L << 20;
+
+    private final File directory;
+    private final RandomAccessFile indexFile;
+    private final FileLock lock;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> indexPages =
+        new ArrayList<MappedByteBuffer>();
+    private final List<RandomAccessFile> segmentFiles =
+        new ArrayList<RandomAccessFile>();
+    private volatile MappedByteBuffer[] segmentMaps = new MappedByteBuffer[0];
+    private volatile long count;
+    private long segmentEnd;
+    private long lastDate;
+    //guarded by this
+    private final RandomAccessFile playersFile;
+    private final MappedByteBuffer players;
+    private final RandomAccessFile topFile;
+    private final MappedByteBuffer top;
+    private int topSize;
+
+    /**
+     * Opens the archive in a directory, creating it if needed. Records
+     * written after the last complete index entry, such as by a crash part
+     * way through an append, are discarded.
+     * @param directory File representing the archive's directory
+     * @throws IOException if the archive can not be opened or is in use
+     */
+    public ReplayArchive(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        this.directory = directory;
+        indexFile = new RandomAccessFile(new File(directory,
+                                                  INDEX_NAME),
+                                         "rw");
+        lock = indexFile.getChannel().tryLock();
+        if (lock == null) {
+            indexFile.close();
+            throw new IOException(directory + " is open in another process");
+        }
+        boolean created = indexFile.length() == 0;
+        header = indexFile.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                            0,
+                                            HEADER_SIZE);
+        if (created) {
+            header.putInt(0,
+                          MAGIC);
+            header.putInt(4,
+                          VERSION);
+            header.putLong(COUNT_OFFSET,
+                           0);
+        }
+        else if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            close();
+            throw new IOException(directory + " is not a replay archive");
+        }
+        count = header.getLong(COUNT_OFFSET);
+        segmentEnd = 0;
+        lastDate = 0;
+        if (count > 0) {
+            ByteBuffer page = indexPage(count - 1);
+            int entry = entryPosition(count - 1);
+            lastDate = page.getLong(entry + DATE);
+            int segment = page.getInt(entry + SEGMENT);
+            segmentEnd = page.getLong(entry + OFFSET)
+                         + page.getInt(entry + LENGTH);
+            //reopen every segment up to the last
+            for (int i = 0; i <= segment; i++) {
+                segmentFile(i);
+            }
+        }
+        //drop any torn record, and the end mapped ahead of the records
+        for (int i = 0; i < segmentFiles.size(); i++) {
+            long recordEnd = segmentRecordEnd(i);
+            if (segmentFiles.get(i).length() > recordEnd) {
+                segmentFiles.get(i).setLength(recordEnd);
+            }
+        }
+        playersFile = new RandomAccessFile(new File(directory,
+                                                    PLAYERS_NAME),
+                                           "rw");
+        players = playersFile.getChannel().map(
+            FileChannel.MapMode.READ_WRITE,
+            0,
+            TABLE_HEADER_SIZE + (long) PLAYER_BUCKETS * 8);
+        topFile = new RandomAccessFile(new File(directory,
+                                                TOP_NAME),
+                                       "rw");
+        top = topFile.getChannel().map(
+            FileChannel.MapMode.READ_WRITE,
+            0,
+            TABLE_HEADER_SIZE + (long) TOP_CAPACITY * TOP_ENTRY_SIZE);
+        catchUpIndexes();
+    }
+
+    /**
+     * Adds the games a crash left out of players.dat and top.dat, starting
+     * either over if it was left part way through a change.
+     */
+    private void catchUpIndexes() {
+        long covered = players.getLong(COVERED_OFFSET);
+        if (covered < 0 || covered > count) {
+            for (int i = 0; i < PLAYER_BUCKETS; i++) {
+                players.putLong(TABLE_HEADER_SIZE + i * 8,
+                                0);
+            }
+            covered = 0;
+        }
+        for (long id = covered; id < count; id++) {
+            linkPlayer(id);
+        }
+        covered = top.getLong(COVERED_OFFSET);
+        topSize = top.getInt(TOP_SIZE_OFFSET);
+        if (covered < 0 || covered > count || topSize < 0
+            || topSize > TOP_CAPACITY) {
+            topSize = 0;
+            covered = 0;
+        }
+        for (long id = covered; id < count; id++) {
+            insertTop(id,
+                      getScore(id));
+        }
+    }
+
+    /**
+     * Finds where the records of a segment end, from the last game stored in
+     * it, which is found by binary search as games fill segments in order.
+     */
+    private long segmentRecordEnd(int segment) {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (indexPage(middle).getInt(entryPosition(middle) + SEGMENT)
+                <= segment) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        if (low == 0) {
+            return 0;
+        }
+        ByteBuffer page = indexPage(low - 1);
+        int entry = entryPosition(low - 1);
+        if (page.getInt(entry + SEGMENT) != segment) {
+            return 0;
+        }
+        return page.getLong(entry + OFFSET) + page.getInt(entry + LENGTH);
+    }
+
+    /**
+     * Adds a game to the chain of its player bucket, and records that
+     * players.dat covers it.
+     */
+    private void linkPlayer(long id) {
+        ByteBuffer page = indexPage(id);
+        int entry = entryPosition(id);
+        int bucket = bucketPosition(page.getLong(entry + PLAYER));
+        long previous = players.getLong(bucket) - 1;
+        //a crash after linking this game, but before recording it, leaves it
+        //at the head already
+        while (previous >= id) {
+            previous = indexPage(previous).getLong(entryPosition(previous)
+                                                   + PREVIOUS);
+        }
+        page.putLong(entry + PREVIOUS,
+                     previous);
+        //stored plus one, so the zeros of a new file are empty buckets
+        players.putLong(bucket,
+                        id + 1);
+        players.putLong(COVERED_OFFSET,
+                        id + 1);
+    }
+
+    /**
+     * Adds a game to top.dat if it is among the best, and records that
+     * top.dat covers it. Games come in ID order, so the game goes after all
+     * others with its score.
+     */
+    private void insertTop(long id,
+                           int score) {
+        int low = 0;
+        int high = topSize;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (top.getInt(topPosition(middle)) >= score) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        if (low < TOP_CAPACITY) {
+            top.putLong(COVERED_OFFSET,
+                        -1);
+            int end = Math.min(topSize,
+                               TOP_CAPACITY - 1);
+            //move the worse entries down one, from the end, the last falling
+            //off a full table
+            byte[] chunk = new byte[Math.min(end - low,
+                                             4096) * TOP_ENTRY_SIZE];
+            int moved = topPosition(end);
+            while (moved > topPosition(low)) {
+                int from = Math.max(topPosition(low),
+                                    moved - chunk.length);
+                ByteBuffer source = top.duplicate();
+                source.position(from);
+                source.get(chunk,
+                           0,
+                           moved - from);
+                ByteBuffer target = top.duplicate();
+                target.position(from + TOP_ENTRY_SIZE);
+                target.put(chunk,
+                           0,
+                           moved - from);
+                moved = from;
+            }
+            top.putInt(topPosition(low),
+                       score);
+            top.putLong(topPosition(low) + 4,
+                        id);
+            topSize = end + 1;
+            top.putInt(TOP_SIZE_OFFSET,
+                       topSize);
+        }
+        top.putLong(COVERED_OFFSET,
+                    id + 1);
+    }
+
+    /**
+     * Accessor for the number of games stored.
+     * @return long representing the number of games, which is also the ID
+     * the next game will get
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Adds a game to the end of the archive, dated now.
+     * @param replay Replay of the game
+     * @param player String naming the player
+     * @param score int representing the final score
+     * @return long representing the ID of the game
+     * @throws IOException if the archive can not be written
+     */
+    public long append(Replay replay,
+                       String player,
+                       int score) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] name = player.getBytes(StandardCharsets.UTF_8);
+        if (name.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Player name too long");
+        }
+        bytes.write(name.length >>> 8);
+        bytes.write(name.length);
+        bytes.write(name);
+        replay.write(bytes);
+        byte[] record = bytes.toByteArray();
+        if (record.length > SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Replay too large to archive");
+        }
+        synchronized (this) {
+            long id = count;
+            int segment = segmentFiles.isEmpty() ? 0 : segmentFiles.size() - 1;
+            if (segmentEnd + record.length > SEGMENT_SIZE) {
+                segment++;
+                segmentEnd = 0;
+            }
+            RandomAccessFile file = segmentFile(segment);
+            long offset = segmentEnd;
+            FileChannel channel = file.getChannel();
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer,
+                                          position);
+            }
+            segmentEnd = position;
+            lastDate = Math.max(lastDate,
+                                System.currentTimeMillis());
+            ByteBuffer page = indexPage(id);
+            int entry = entryPosition(id);
+            long key = playerKey(player);
+            page.putLong(entry + DATE,
+                         lastDate);
+            page.putLong(entry + PLAYER,
+                         key);
+            page.putInt(entry + SCORE,
+                        score);
+            page.putInt(entry + SEGMENT,
+                        segment);
+            page.putLong(entry + OFFSET,
+                         offset);
+            page.putInt(entry + LENGTH,
+                        record.length);
+            //publish, so the count never covers an unwritten game, then index
+            header.putLong(COUNT_OFFSET,
+                           id + 1);
+            count = id + 1;
+            linkPlayer(id);
+            insertTop(id,
+                      score);
+            return id;
+        }
+    }
+
+    /**
+     * Writes everything appended so far to disk.
+     * @throws IOException if the archive can not be written
+     */
+    public synchronized void flush() throws IOException {
+        for (RandomAccessFile file : segmentFiles) {
+            file.getChannel().force(false);
+        }
+        for (MappedByteBuffer page : indexPages) {
+            page.force();
+        }
+        header.force();
+        players.force();
+        top.force();
+    }
+
+    /**
+     * Accessor for the time a game was archived.
+     * @param id long representing the game
+     * @return long representing milliseconds since the epoch
+     */
+    public long getDate(long id) {
+        return entryLong(id,
+                         DATE);
+    }
+
+    /**
+     * Accessor for the final score of a game.
+     * @param id long representing the game
+     * @return int representing the score
+     */
+    public int getScore(long id) {
+        checkId(id);
+        return indexPage(id).getInt(entryPosition(id) + SCORE);
+    }
+
+    /**
+     * Accessor for the player of a game.
+     * @param id long representing the game
+     * @return String naming the player
+     * @throws IOException if the segment can not be read
+     */
+    public String getPlayer(long id) throws IOException {
+        ByteBuffer record = getRecord(id);
+        int length = record.getShort(0) & 0xFFFF;
+        byte[] name = new byte[length];
+        record.position(2);
+        record.get(name);
+        return new String(name,
+                          StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Accessor for the stored bytes of a game's replay, without copying.
+     * @param id long representing the game
+     * @return ByteBuffer holding exactly the replay, read-only
+     * @throws IOException if the segment can not be mapped
+     */
+    public ByteBuffer getReplayBytes(long id) throws IOException {
+        ByteBuffer record = getRecord(id);
+        record.position(2 + (record.getShort(0) & 0xFFFF));
+        return record.slice();
+    }
+
+    /**
+     * Reads a game's Replay.
+     * @param id long representing the game
+     * @return Replay of the game
+     * @throws IOException if the replay can not be read
+     */
+    public Replay getReplay(long id) throws IOException {
+        final ByteBuffer bytes = getReplayBytes(id);
+        return Replay.read(new InputStream() {
+            @Override
+            public int read() {
+                return bytes.hasRemaining() ? bytes.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b,
+                            int off,
+                            int len) {
+                if (!bytes.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len,
+                                 bytes.remaining());
+                bytes.get(b,
+                          off,
+                          n);
+                return n;
+            }
+        });
+    }
+
+    /**
+     * Finds the games archived in a range of dates.
+     * @param from long representing the earliest date, inclusive
+     * @param to long representing the latest date, exclusive
+     * @return long[] of game IDs in the order they were archived
+     */
+    public long[] findBetween(long from,
+                              long to) {
+        long first = firstDateAtLeast(from);
+        long last = firstDateAtLeast(to);
+        long[] ids = new long[(int) Math.max(0,
+                                             last - first)];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = first + i;
+        }
+        return ids;
+    }
+
+    /**
+     * Finds every game of a player, by following the chain of the player's
+     * bucket.
+     * @param player String naming the player
+     * @return long[] of game IDs in the order they were archived
+     * @throws IOException if a segment can not be read
+     */
+    public long[] findByPlayer(String player) throws IOException {
+        long key = playerKey(player);
+        long[] candidates = new long[16];
+        int found = 0;
+        synchronized (this) {
+            long id = players.getLong(bucketPosition(key)) - 1;
+            while (id >= 0) {
+                ByteBuffer page = indexPage(id);
+                int entry = entryPosition(id);
+                if (page.getLong(entry + PLAYER) == key) {
+                    if (found == candidates.length) {
+                        candidates = Arrays.copyOf(candidates,
+                                                   found * 2);
+                    }
+                    candidates[found++] = id;
+                }
+                id = page.getLong(entry + PREVIOUS);
+            }
+        }
+        //the chain runs newest first, and names sharing a key are told apart
+        //by the stored name
+        long[] ids = new long[found];
+        int matched = 0;
+        for (int i = found - 1; i >= 0; i--) {
+            if (getPlayer(candidates[i]).equals(player)) {
+                ids[matched++] = candidates[i];
+            }
+        }
+        return Arrays.copyOf(ids,
+                             matched);
+    }
+
+    /**
+     * Finds the highest scoring games, from top.dat unless more than
+     * TOP_CAPACITY are asked for.
+     * @param k int representing the most games to return
+     * @return long[] of game IDs, highest score first, earlier games first
+     * among equal scores
+     */
+    public synchronized long[] findTopScores(int k) {
+        long[] ids = new long[(int) Math.min(Math.max(k,
+                                                      0),
+                                             count)];
+        if (ids.length > topSize) {
+            return scanTopScores(ids);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = top.getLong(topPosition(i) + 4);
+        }
+        return ids;
+    }
+
+    /**
+     * Fills in the highest scoring games by sorting the whole index, each
+     * game packed as its score, inverted so the highest sorts first, above
+     * its ID.
+     */
+    private long[] scanTopScores(long[] ids) {
+        long[] keys = new long[(int) count];
+        for (int id = 0; id < keys.length; id++) {
+            keys[id] = (~(getScore(id) ^ Integer.MIN_VALUE) & 0xFFFFFFFFL) << 31
+                       | id;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = keys[i] & Integer.MAX_VALUE;
+        }
+        return ids;
+    }
+
+    /**
+     * Releases the maps and files. Views returned by getReplayBytes() must
+     * not be used afterwards.
+     * @throws IOException if a file can not be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (RandomAccessFile file : segmentFiles) {
+            file.close();
+        }
+        if (playersFile != null) {
+            playersFile.close();
+        }
+        if (topFile != null) {
+            topFile.close();
+        }
+        if (lock != null && lock.isValid()) {
+            lock.release();
+        }
+        indexFile.close();
+    }
+
+    /**
+     * Finds the first game dated at or after the given time.
+     */
+    private long firstDateAtLeast(long date) {
+        long low = 0;
+        long high = count;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (getDate(middle) < date) {
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Accessor for a game's whole record: name length, name and replay.
+     */
+    private ByteBuffer getRecord(long id) throws IOException {
+        checkId(id);
+        ByteBuffer page = indexPage(id);
+        int entry = entryPosition(id);
+        int segment = page.getInt(entry + SEGMENT);
+        long offset = page.getLong(entry + OFFSET);
+        int length = page.getInt(entry + LENGTH);
+        ByteBuffer map = segmentMap(segment,
+                                    offset + length);
+        ByteBuffer record = map.duplicate();
+        record.position((int) offset);
+        record.limit((int) (offset + length));
+        return record.slice();
+    }
+
+    private void checkId(long id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("No game " + id);
+        }
+    }
+
+    private long entryLong(long id,
+                           int field) {
+        checkId(id);
+        return indexPage(id).getLong(entryPosition(id) + field);
+    }
+
+    private static int entryPosition(long id) {
+        return (int) (id % INDEX_PAGE_ENTRIES) * ENTRY_SIZE;
+    }
+
+    private static int bucketPosition(long playerKey) {
+        int bucket = (int) (playerKey ^ playerKey >>> 32) & (PLAYER_BUCKETS - 1);
+        return TABLE_HEADER_SIZE + bucket * 8;
+    }
+
+    private static int topPosition(int index) {
+        return TABLE_HEADER_SIZE + index * TOP_ENTRY_SIZE;
+    }
+
+    /**
+     * Finds the page of the index holding an entry, mapping it if needed.
+     */
+    private ByteBuffer indexPage(long id) {
+        int page = (int) (id / INDEX_PAGE_ENTRIES);
+        synchronized (indexPages) {
+            try {
+                while (indexPages.size() <= page) {
+                    long start = HEADER_SIZE + (long) indexPages.size()
+                                 * INDEX_PAGE_ENTRIES * ENTRY_SIZE;
+                    indexPages.add(indexFile.getChannel().map(
+                        FileChannel.MapMode.READ_WRITE,
+                        start,
+                        (long) INDEX_PAGE_ENTRIES * ENTRY_SIZE));
+                }
+            }
+            catch (IOException ex) {
+                throw new IllegalStateException("Can not map index",
+                                                ex);
+            }
+            return indexPages.get(page);
+        }
+    }
+
+    /**
+     * Opens a segment file, creating it and any before it if needed.
+     */
+    private RandomAccessFile segmentFile(int segment) throws IOException {
+        while (segmentFiles.size() <= segment) {
+            String name = String.format("segment-%06d.dat",
+                                        segmentFiles.size());
+            segmentFiles.add(new RandomAccessFile(new File(directory,
+                                                           name),
+                                                  "rw"));
+        }
+        return segmentFiles.get(segment);
+    }
+
+    /**
+     * Finds a read-only map of a segment covering at least the given number
+     * of bytes. Sealed segments are mapped to their end once; the segment
+     * being appended to is mapped ahead of its end, doubling each time a read
+     * passes the map, so the maps it leaves behind for the collector add up
+     * to less than the last one.
+     */
+    private ByteBuffer segmentMap(int segment,
+                                  long minimumSize) throws IOException {
+        MappedByteBuffer[] maps = segmentMaps;
+        if (segment < maps.length && maps[segment] != null
+            && maps[segment].capacity() >= minimumSize) {
+            return maps[segment];
+        }
+        synchronized (this) {
+            maps = segmentMaps;
+            if (segment < maps.length && maps[segment] != null
+                && maps[segment].capacity() >= minimumSize) {
+                return maps[segment];
+            }
+            if (segment >= maps.length) {
+                maps = Arrays.copyOf(maps,
+                                     segment + 1);
+            }
+            else {
+                maps = maps.clone();
+            }
+            FileChannel channel = segmentFile(segment).getChannel();
+            long size;
+            if (segment < segmentFiles.size() - 1) {
+                size = channel.size();
+            }
+            else {
+                //the file is writable, so mapping past its end extends it
+                long old = maps[segment] == null ? 0 : maps[segment].capacity();
+                size = Math.min(SEGMENT_SIZE,
+                                Math.max(minimumSize,
+                                         Math.max(old * 2,
+                                                  MIN_SEGMENT_MAP)));
+            }
+            maps[segment] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                        0,
+                                        size);
+            segmentMaps = maps;
+            return maps[segment];
+        }
+    }
+
+    /**
+     * Hashes a player name for the index. Matches are checked against the
+     * stored name, so collisions only cost a read.
+     */
+    private static long playerKey(String player) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : player.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Adds replay files to an archive, or lists an archive's best games.
+     * Usage: java ReplayArchive archiveDirectory [player replay.ttr ...]
+     * @param args String[] of archive directory, then optionally a player
+     * name and replay files to add
+     * @throws IOException if the archive or a replay can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ReplayArchive archiveDirectory"
+                               + " [player replay" + World.REPLAY_EXTENSION
+                               + " ...]");
+            return;
+        }
+        try (ReplayArchive archive = new ReplayArchive(new File(args[0]))) {
+            for (int i = 2; i < args.length; i++) {
+                Replay replay;
+                try (InputStream in =
+                        new BufferedInputStream(new FileInputStream(args[i]))) {
+                    replay = Replay.read(in);
+                }
+                Game game = replay.newGame();
+                for (int a = 0; a < replay.getActionCount(); a++) {
+                    Replay.apply(game,
+                                 replay.getAction(a));
+                }
+                long id = archive.append(replay,
+                                         args[1],
+                                         game.getScore());
+                System.out.println(args[i] + " archived as game " + id);
+            }
+            archive.flush();
+            System.out.println(archive.getCount() + " games");
+            for (long id : archive.findTopScores(10)) {
+                System.out.println("#" + id + "  " + archive.getScore(id)
+                                   + "  " + archive.getPlayer(id) + "  "
+                                   + new Date(archive.getDate(id)));
+            }
+        }
+    }
+}
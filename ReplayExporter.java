@@ -0,0 +1,235 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.imageio.ImageIO;
+
+/**
+ * Renders a Replay offline into numbered PNG frames at a chosen frame rate,
+ * for making videos of recorded games. Frames are painted by
+ * World.paintGame(), so they look exactly like the game did on screen.
+ * The frames are split into ranges that render in parallel. One quick pass
+ * through the replay takes a copy of the Game at the start of each range, so
+ * every range starts from its own snapshot instead of replaying from the
+ * beginning.
+ * @author Zach Cotter
+ */
+public class ReplayExporter {
+
+    //ranges per thread, so that threads finishing early can take more work
+    private static final int RANGES_PER_THREAD = 4;
+
+    private final Replay replay;
+    private final int framesPerSecond;
+    private final int threads;
+
+    /**
+     * Constructs an exporter for the given replay.
+     * @param replay Replay to render
+     * @param framesPerSecond int representing frames per second of game time
+     * @param threads int representing the number of frames rendered at once
+     */
+    public ReplayExporter(Replay replay,
+                          int framesPerSecond,
+                          int threads) {
+        if (framesPerSecond <= 0 || threads <= 0) {
+            throw new IllegalArgumentException(
+                    "Frame rate and thread count must be positive");
+        }
+        this.replay = replay;
+        this.framesPerSecond = framesPerSecond;
+        this.threads = threads;
+    }
+
+    /**
+     * Determines how many frames the replay takes at this frame rate.
+     * @return int representing the number of frames
+     */
+    public int getFrameCount() {
+        long millis = (long) replay.getTickCount() * Game.TICK_MILLIS;
+        return (int) (millis * framesPerSecond / 1000) + 1;
+    }
+
+    /**
+     * Renders every frame into the given directory as frame000000.png,
+     * frame000001.png and so on.
+     * @param directory File representing the directory to write to
+     * @throws IOException if a frame can not be written
+     */
+    public void export(final File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        int frameCount = getFrameCount();
+        int rangeCount = Math.min(frameCount,
+                                  threads * RANGES_PER_THREAD);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            Position position = new Position(replay.newGame());
+            for (int range = 0; range < rangeCount; range++) {
+                final int from = (int) ((long) frameCount * range
+                                        / rangeCount);
+                final int to = (int) ((long) frameCount * (range + 1)
+                                      / rangeCount);
+                position.advanceTo(tickForFrame(from));
+                final Position start = position.copy();
+                results.add(pool.submit(() -> {
+                    renderRange(start,
+                                from,
+                                to,
+                                directory);
+                    return null;
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted",
+                                  ex);
+        }
+        catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        }
+        finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders a range of frames, starting from a snapshot taken at the first.
+     * @param position Position at the first frame of the range, owned by the
+     * calling thread
+     * @param from int representing the first frame
+     * @param to int representing the frame after the last
+     * @param directory File representing the directory to write to
+     * @throws IOException if a frame can not be written
+     */
+    private void renderRange(Position position,
+                             int from,
+                             int to,
+                             File directory) throws IOException {
+        Board board = position.game.getBoard();
+        BufferedImage image =
+            new BufferedImage(board.getWidth() * World.BLOCK_SIZE,
+                              board.getHeight() * World.BLOCK_SIZE,
+                              BufferedImage.TYPE_INT_RGB);
+        GameSnapshot snapshot = new GameSnapshot();
+        Graphics2D g = image.createGraphics();
+        try {
+            for (int frame = from; frame < to; frame++) {
+                position.advanceTo(tickForFrame(frame));
+                snapshot.capture(position.game);
+                World.paintGame(g,
+                                snapshot,
+                                0,
+                                board.getHeight() - 1);
+                ImageIO.write(image,
+                              "png",
+                              new File(directory,
+                                       String.format("frame%06d.png",
+                                                     frame)));
+            }
+        }
+        finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Determines the last game tick shown by a frame.
+     * @param frame int representing the frame
+     * @return int representing the number of ticks played before the frame
+     */
+    private int tickForFrame(int frame) {
+        return (int) ((long) frame * 1000 / framesPerSecond
+                      / Game.TICK_MILLIS);
+    }
+
+    /**
+     * A Game part way through the replay, and how far through it is.
+     */
+    private class Position {
+
+        private final Game game;
+        private int actionIndex;
+        private int ticks;
+
+        private Position(Game game) {
+            this.game = game;
+        }
+
+        /**
+         * Applies actions until the given tick has been played, along with
+         * the actions that came before it.
+         * @param tick int representing the number of ticks to have played
+         */
+        private void advanceTo(int tick) {
+            while (ticks < tick && actionIndex < replay.getActionCount()) {
+                byte action = replay.getAction(actionIndex++);
+                Replay.apply(game,
+                             action);
+                if (action == Replay.STEP) {
+                    ticks++;
+                }
+            }
+        }
+
+        private Position copy() {
+            Position copy = new Position(game.copy());
+            copy.actionIndex = actionIndex;
+            copy.ticks = ticks;
+            return copy;
+        }
+    }
+
+    /**
+     * Exports a replay file to PNG frames.
+     * Usage: java ReplayExporter replay.ttr outputDirectory [fps [threads]]
+     * @param args String[] of replay file, output directory, and optional
+     * frame rate and thread count
+     * @throws IOException if the replay can not be read or a frame written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: java ReplayExporter replay"
+                               + World.REPLAY_EXTENSION
+                               + " outputDirectory [fps [threads]]");
+            return;
+        }
+        int framesPerSecond = args.length >= 3 ? Integer.parseInt(args[2]) : 30;
+        int threads = args.length >= 4
+                      ? Integer.parseInt(args[3])
+                      : Runtime.getRuntime().availableProcessors();
+        Replay replay;
+        InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+        try {
+            replay = Replay.read(in);
+        }
+        finally {
+            in.close();
+        }
+        ReplayExporter exporter = new ReplayExporter(replay,
+                                                     framesPerSecond,
+                                                     threads);
+        long start = System.nanoTime();
+        exporter.export(new File(args[1]));
+        System.out.println(exporter.getFrameCount() + " frames in "
+                           + (System.nanoTime() - start) / 1000000 + " ms");
+    }
+}
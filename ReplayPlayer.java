@@ -0,0 +1,437 @@
+import java.awt.Dimension;
+import java.awt.DisplayMode;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JFrame;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Plays a replay file from any point. The actions are read up front, while
+ * keyframes are left in the file and only the one at or before a seek target
+ * is read, so a seek costs one keyframe load plus at most KEYFRAME_TICKS ticks
+ * of play however long the game is. Playing forward steps the game normally
+ * until a jump would pass a keyframe, when loading the keyframe is cheaper.
+ * Run from the command line it shows the replay in a window at 1x to 1000x
+ * speed, painting once per display refresh however many ticks went by.
+ * @author Zach Cotter
+ */
+public class ReplayPlayer {
+
+    private static final int[] SPEEDS = {1, 2, 5, 10, 20, 50, 100, 200, 500,
+                                         1000};
+    private static final int SEEK_TICKS = 10000 / Game.TICK_MILLIS;
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    private final RandomAccessFile file;
+    private final Replay replay;
+    private final int[] keyframeTicks;
+    private final int[] keyframeActions;
+    private final long[] keyframeOffsets;
+    private Game game;
+    private int actionIndex;
+    private int tick;
+
+    /**
+     * Opens a replay file and positions it at the first tick.
+     * @param replayFile File written by Replay.write()
+     * @throws IOException if the file can not be read or is not a replay
+     */
+    public ReplayPlayer(File replayFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(replayFile));
+        try {
+            replay = Replay.read(in);
+        }
+        finally {
+            in.close();
+        }
+        file = new RandomAccessFile(replayFile,
+                                    "r");
+        try {
+            int keyframeCount = 0;
+            long indexOffset = 0;
+            if (readsAsKeyframed()) {
+                file.seek(file.length() - 8);
+                indexOffset = file.readLong();
+                //the index holds a count and the entries, then its own offset
+                if (indexOffset < 8 || indexOffset > file.length() - 12) {
+                    throw new IOException("Corrupt replay");
+                }
+                file.seek(indexOffset);
+                keyframeCount = file.readInt();
+                if (keyframeCount < 0
+                    || keyframeCount > (file.length() - 12 - indexOffset) / 16) {
+                    throw new IOException("Corrupt replay");
+                }
+            }
+            if (keyframeCount == 0) {
+                //older files have no usable keyframes, so every seek starts
+                //from the top
+                keyframeTicks = new int[]{0};
+                keyframeActions = new int[]{0};
+                keyframeOffsets = new long[]{-1};
+            }
+            else {
+                byte[] index = new byte[keyframeCount * 16];
+                file.readFully(index);
+                DataInputStream data =
+                    new DataInputStream(new ByteArrayInputStream(index));
+                keyframeTicks = new int[keyframeCount];
+                keyframeActions = new int[keyframeCount];
+                keyframeOffsets = new long[keyframeCount];
+                for (int i = 0; i < keyframeCount; i++) {
+                    keyframeTicks[i] = data.readInt();
+                    keyframeActions[i] = data.readInt();
+                    keyframeOffsets[i] = data.readLong();
+                    //keyframes lie before the index, in the order played
+                    if (keyframeTicks[i] < (i == 0 ? 0 : keyframeTicks[i - 1])
+                        || keyframeTicks[i] > replay.getTickCount()
+                        || keyframeActions[i] < 0
+                        || keyframeActions[i] > replay.getActionCount()
+                        || keyframeOffsets[i] < 0
+                        || keyframeOffsets[i] > indexOffset - 4) {
+                        throw new IOException("Corrupt replay");
+                    }
+                }
+            }
+            loadKeyframe(0);
+        }
+        catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Determines if the file is of a version with keyframes this version of
+     * Game can load.
+     */
+    private boolean readsAsKeyframed() throws IOException {
+        file.seek(4);
+        return Replay.hasReadableKeyframes(file.readInt())
+               && file.length() >= 16;
+    }
+
+    /**
+     * Accessor for the game at the current tick. The Game changes as the
+     * player moves and must not be changed by the caller.
+     * @return Game at the current tick
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Accessor for the current position.
+     * @return int representing the number of ticks played
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Accessor for the length of the replay.
+     * @return int representing the number of recorded ticks
+     */
+    public int getTickCount() {
+        return replay.getTickCount();
+    }
+
+    /**
+     * Accessor for the replay being played.
+     * @return Replay read from the file
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+
+    /**
+     * Moves to the given tick, from the nearest keyframe at or before it
+     * unless the current position is closer.
+     * @param target int representing the tick to move to, clamped to the
+     * replay
+     * @throws IOException if a keyframe can not be read
+     */
+    public void seek(int target) throws IOException {
+        target = Math.max(0,
+                          Math.min(target,
+                                   getTickCount()));
+        int keyframe = findKeyframe(target);
+        if (target < tick || keyframeTicks[keyframe] > tick) {
+            loadKeyframe(keyframe);
+        }
+        while (tick < target && actionIndex < replay.getActionCount()) {
+            byte action = replay.getAction(actionIndex++);
+            Replay.apply(game,
+                         action);
+            if (action == Replay.STEP) {
+                tick++;
+            }
+        }
+    }
+
+    /**
+     * Closes the file.
+     * @throws IOException if the file can not be closed
+     */
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Finds the last keyframe at or before a tick.
+     */
+    private int findKeyframe(int target) {
+        int low = 0;
+        int high = keyframeTicks.length - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (keyframeTicks[middle] <= target) {
+                low = middle;
+            }
+            else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Replaces the game with the one saved in a keyframe.
+     */
+    private void loadKeyframe(int keyframe) throws IOException {
+        if (keyframeOffsets[keyframe] < 0) {
+            game = replay.newGame();
+        }
+        else {
+            file.seek(keyframeOffsets[keyframe]);
+            int stateLength = file.readInt();
+            if (stateLength < 0 || stateLength > Replay.MAX_STATE_BYTES
+                || stateLength > file.length() - file.getFilePointer()) {
+                throw new IOException("Corrupt replay");
+            }
+            byte[] state = new byte[stateLength];
+            file.readFully(state);
+            //the state starts with the board's size, which must be the
+            //replay's before a board that size is allocated
+            ByteBuffer size = ByteBuffer.wrap(state);
+            if (stateLength < 8 || size.getInt(0) != replay.getColumns()
+                || size.getInt(4) != replay.getRows()) {
+                throw new IOException("Corrupt replay");
+            }
+            game = Game.readState(
+                new DataInputStream(new ByteArrayInputStream(state)),
+                replay.getGravityCurve());
+            if (!isPlayable(game)) {
+                throw new IOException("Corrupt replay");
+            }
+        }
+        tick = keyframeTicks[keyframe];
+        actionIndex = keyframeActions[keyframe];
+    }
+
+    /**
+     * Determines if a game's score and level are not negative, and its
+     * current Tetra and ghost lie on its board, as they do in any state a
+     * Game can be in.
+     */
+    private static boolean isPlayable(Game game) {
+        if (game.getScore() < 0 || game.getLevel() < 0) {
+            return false;
+        }
+        Board board = game.getBoard();
+        for (Coordinate c : game.getCurrent().getCells()) {
+            int ghostY = c.getY() + game.getGhostDistance();
+            if (c.getX() < 0 || c.getX() >= board.getWidth() || c.getY() < 0
+                || game.getGhostDistance() < 0 || ghostY >= board.getHeight()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Window showing a ReplayPlayer. Up and down change speed, left and right
+     * jump ten seconds, home goes back to the start and space pauses.
+     */
+    private static class ViewerFrame extends JFrame {
+
+        private static final long serialVersionUID = 1L;
+        private final ReplayPlayer player;
+        //the player's game is captured into it for each paint
+        private final GameSnapshot snapshot = new GameSnapshot();
+        private final JPanel panel;
+        private int speedIndex;
+        private boolean paused;
+        private long lastNanos;
+        //unplayed game time, in nanoseconds at 1x
+        private long pendingNanos;
+
+        private ViewerFrame(ReplayPlayer player) {
+            this.player = player;
+            final Replay replay = player.getReplay();
+            panel = new JPanel() {
+                @Override
+                protected void paintComponent(Graphics g) {
+                    snapshot.capture(ViewerFrame.this.player.getGame());
+                    World.paintGame(g,
+                                    snapshot,
+                                    0,
+                                    replay.getRows() - 1);
+                }
+            };
+            panel.setPreferredSize(
+                new Dimension(replay.getColumns() * World.BLOCK_SIZE,
+                              replay.getRows() * World.BLOCK_SIZE));
+            add(panel);
+            pack();
+            setDefaultCloseOperation(EXIT_ON_CLOSE);
+            addKeyListener(new ViewerKeyListener());
+            lastNanos = System.nanoTime();
+            Timer timer = new Timer(1000 / refreshRate(),
+                                    new FrameListener());
+            timer.start();
+            updateTitle();
+        }
+
+        /**
+         * Finds how often the display refreshes, so no more frames are
+         * painted than can be shown.
+         */
+        private static int refreshRate() {
+            try {
+                DisplayMode mode = GraphicsEnvironment
+                    .getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice()
+                    .getDisplayMode();
+                if (mode.getRefreshRate() != DisplayMode.REFRESH_RATE_UNKNOWN) {
+                    return mode.getRefreshRate();
+                }
+            }
+            catch (HeadlessException ex) {
+                //fall through to the default
+            }
+            return DEFAULT_REFRESH_RATE;
+        }
+
+        private void updateTitle() {
+            int seconds = player.getTick() * Game.TICK_MILLIS / 1000;
+            setTitle(String.format("Replay %d:%02d  %dx%s",
+                                   seconds / 60,
+                                   seconds % 60,
+                                   SPEEDS[speedIndex],
+                                   paused ? " (paused)" : ""));
+        }
+
+        private void seek(int tick) {
+            try {
+                player.seek(tick);
+            }
+            catch (IOException ex) {
+                Logger.getLogger(ReplayPlayer.class.getName()).log(Level.SEVERE,
+                                                                   null,
+                                                                   ex);
+            }
+            pendingNanos = 0;
+            panel.repaint();
+            updateTitle();
+        }
+
+        /**
+         * Plays the game time that passed since the last display frame, then
+         * paints once.
+         */
+        private class FrameListener implements ActionListener {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                long now = System.nanoTime();
+                long elapsed = now - lastNanos;
+                lastNanos = now;
+                if (paused || player.getTick() >= player.getTickCount()) {
+                    return;
+                }
+                pendingNanos += elapsed * SPEEDS[speedIndex];
+                long tickNanos = Game.TICK_MILLIS * 1000000L;
+                int ticks = (int) Math.min(pendingNanos / tickNanos,
+                                           Integer.MAX_VALUE);
+                if (ticks > 0) {
+                    long carry = pendingNanos - ticks * tickNanos;
+                    seek(player.getTick() + ticks);
+                    pendingNanos = carry;
+                }
+            }
+        }
+
+        private class ViewerKeyListener extends KeyAdapter {
+
+            @Override
+            public void keyPressed(KeyEvent e) {
+                int key = e.getKeyCode();
+                if (key == KeyEvent.VK_UP) {
+                    speedIndex = Math.min(speedIndex + 1,
+                                          SPEEDS.length - 1);
+                }
+                else if (key == KeyEvent.VK_DOWN) {
+                    speedIndex = Math.max(speedIndex - 1,
+                                          0);
+                }
+                else if (key == KeyEvent.VK_SPACE) {
+                    paused = !paused;
+                }
+                else if (key == KeyEvent.VK_LEFT) {
+                    seek(player.getTick() - SEEK_TICKS);
+                }
+                else if (key == KeyEvent.VK_RIGHT) {
+                    seek(player.getTick() + SEEK_TICKS);
+                }
+                else if (key == KeyEvent.VK_HOME) {
+                    seek(0);
+                }
+                updateTitle();
+            }
+        }
+    }
+
+    /**
+     * Shows a replay file in a window.
+     * Usage: java ReplayPlayer replay.ttr [speed]
+     * @param args String[] of replay file and optional starting speed
+     * @throws IOException if the replay can not be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java ReplayPlayer replay"
+                               + World.REPLAY_EXTENSION + " [speed]");
+            return;
+        }
+        final ReplayPlayer player = new ReplayPlayer(new File(args[0]));
+        final int speed = args.length >= 2 ? Integer.parseInt(args[1]) : 1;
+        SwingUtilities.invokeLater(() -> {
+            ViewerFrame frame = new ViewerFrame(player);
+            while (frame.speedIndex < SPEEDS.length - 1
+                   && SPEEDS[frame.speedIndex] < speed) {
+                frame.speedIndex++;
+            }
+            frame.updateTitle();
+            frame.setVisible(true);
+        });
+    }
+}
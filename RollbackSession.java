@@ -0,0 +1,391 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs a head to head match between a local and a remote player without
+ * waiting for the remote player's inputs. Both games are simulated on both
+ * machines from the same seed, a frame per game tick. The local input for a
+ * frame is applied at once; the remote input, until it arrives, is predicted
+ * to be nothing, which it is for most frames. When a remote input arrives
+ * that differs from the prediction, the games are restored to the saved
+ * state from before that frame and simulated again up to the present with
+ * the inputs now known, all before the next frame is shown. Games are
+ * deterministic, and saving and restoring a frame is Game.copyFrom() into
+ * states kept in a ring, which reuses their Board rows and Tetras, so a
+ * rollback of a few frames costs microseconds and allocates nothing.
+ * The session only runs ahead of the last frame whose remote input is known
+ * by the rollback window; beyond that advance() refuses, and the caller waits
+ * for the remote player as it would without rollback.
+ * Inputs are a byte of flags, the actions taken in the frame before its
+ * tick. Moving them between machines is left to the caller: each local input
+ * from advance() is to be sent, and each one received passed to
+ * receiveRemote(), in frame order.
+ * @author Zach Cotter
+ */
+public class RollbackSession {
+
+    public static final byte NO_INPUT = 0;
+    public static final byte INPUT_LEFT = 1;
+    public static final byte INPUT_RIGHT = 2;
+    public static final byte INPUT_CLOCKWISE = 4;
+    public static final byte INPUT_COUNTER_CLOCKWISE = 8;
+    public static final byte INPUT_DROP = 16;
+    public static final int DEFAULT_MAX_ROLLBACK = 8;
+    private static final int WARM_UP_FRAMES = 10000;
+    //the action each input flag stands for, in the order they are applied
+    private static final byte[] FLAG_ACTIONS = {Replay.LEFT, Replay.RIGHT,
+                                                Replay.CLOCKWISE,
+                                                Replay.COUNTER_CLOCKWISE,
+                                                Replay.DROP};
+
+    private final int localPlayer;
+    private final int maxRollback;
+    private final Game[] games = new Game[2];
+    //saved[frame % ring][player] is the game before the frame was simulated
+    private final Game[][] saved;
+    //inputs[frame % ring][player]; remote ones are predictions until known
+    private final byte[][] inputs;
+    private final int ring;
+    //the frame advance() simulates next
+    private int frame;
+    //the first frame whose remote input has not arrived
+    private int confirmed;
+    //the earliest frame simulated with a wrong prediction, or frame if none
+    private int rollbackFrom;
+    private long rollbacks;
+    private long resimulatedFrames;
+
+    /**
+     * Constructs a match on boards of the default size with the default
+     * rollback window.
+     * @param seed long seed both players' pieces are drawn with
+     * @param localPlayer int representing this machine's player, 0 or 1
+     */
+    public RollbackSession(long seed,
+                           int localPlayer) {
+        this(Board.DEFAULT_WIDTH,
+             Board.DEFAULT_HEIGHT,
+             seed,
+             localPlayer,
+             DEFAULT_MAX_ROLLBACK);
+    }
+
+    /**
+     * Constructs a match. Both machines must use the same size, seed and
+     * window, with different local players.
+     * @param columns int representing the width of both boards
+     * @param rows int representing the height of both boards
+     * @param seed long seed both players' pieces are drawn with
+     * @param localPlayer int representing this machine's player, 0 or 1
+     * @param maxRollback int representing how many frames the session may
+     * run ahead of the remote player's inputs
+     */
+    public RollbackSession(int columns,
+                           int rows,
+                           long seed,
+                           int localPlayer,
+                           int maxRollback) {
+        if (localPlayer != 0 && localPlayer != 1) {
+            throw new IllegalArgumentException("Player must be 0 or 1");
+        }
+        if (maxRollback < 1) {
+            throw new IllegalArgumentException("Rollback window too small");
+        }
+        this.localPlayer = localPlayer;
+        this.maxRollback = maxRollback;
+        //the remote player may be a window ahead of the last frame we know
+        //of theirs, which is itself a window behind us
+        ring = 2 * maxRollback + 2;
+        saved = new Game[ring][2];
+        inputs = new byte[ring][2];
+        for (int player = 0; player < 2; player++) {
+            games[player] = new Game(columns,
+                                     rows,
+                                     seed);
+            games[player].setLockDelay(Game.DEFAULT_LOCK_DELAY_TICKS,
+                                       Game.DEFAULT_LOCK_RESETS);
+            for (int i = 0; i < ring; i++) {
+                saved[i][player] = games[player].copy();
+            }
+        }
+    }
+
+    /**
+     * Simulates the next frame with the given local input, after first
+     * correcting any frames simulated with a wrong prediction.
+     * @param localInput byte of input flags for this frame
+     * @return True if the frame was simulated and its input should be sent,
+     * false if the session is a whole window ahead of the remote player and
+     * must wait for its inputs
+     */
+    public boolean advance(byte localInput) {
+        rollBack();
+        if (frame - confirmed >= maxRollback) {
+            return false;
+        }
+        int slot = frame % ring;
+        inputs[slot][localPlayer] = localInput;
+        if (frame >= confirmed) {
+            inputs[slot][1 - localPlayer] = NO_INPUT;
+        }
+        simulate(frame);
+        frame++;
+        rollbackFrom = frame;
+        return true;
+    }
+
+    /**
+     * Takes the remote player's input for a frame. Inputs must be passed in
+     * frame order; ones already taken are ignored.
+     * @param remoteFrame int representing the frame the input is for
+     * @param input byte of the remote player's input flags
+     * @throws IllegalArgumentException if an earlier input is missing or the
+     * frame is too far ahead of this session to have been played yet
+     */
+    public void receiveRemote(int remoteFrame,
+                              byte input) {
+        if (remoteFrame < confirmed) {
+            return;
+        }
+        if (remoteFrame > confirmed) {
+            throw new IllegalArgumentException("Missing remote input for frame "
+                                               + confirmed);
+        }
+        if (remoteFrame - frame >= ring - maxRollback) {
+            throw new IllegalArgumentException("Remote input for frame "
+                                               + remoteFrame
+                                               + " is too far ahead");
+        }
+        int slot = remoteFrame % ring;
+        if (remoteFrame < frame
+            && inputs[slot][1 - localPlayer] != input) {
+            rollbackFrom = Math.min(rollbackFrom,
+                                    remoteFrame);
+        }
+        inputs[slot][1 - localPlayer] = input;
+        confirmed++;
+    }
+
+    /**
+     * Restores the games to before the earliest mispredicted frame and
+     * simulates them up to the present again. advance() does this before
+     * each frame; it may also be called to correct the games before drawing.
+     */
+    public void rollBack() {
+        if (rollbackFrom >= frame) {
+            return;
+        }
+        int slot = rollbackFrom % ring;
+        for (int player = 0; player < 2; player++) {
+            games[player].copyFrom(saved[slot][player]);
+        }
+        for (int f = rollbackFrom; f < frame; f++) {
+            simulate(f);
+        }
+        rollbacks++;
+        resimulatedFrames += frame - rollbackFrom;
+        rollbackFrom = frame;
+    }
+
+    /**
+     * Saves both games as they are before a frame, then plays the frame.
+     */
+    private void simulate(int f) {
+        int slot = f % ring;
+        for (int player = 0; player < 2; player++) {
+            saved[slot][player].copyFrom(games[player]);
+            applyInput(games[player],
+                       inputs[slot][player]);
+        }
+    }
+
+    /**
+     * Plays one frame of a game: the actions flagged in the input, then a
+     * tick.
+     * @param game Game to play
+     * @param input byte of input flags
+     */
+    public static void applyInput(Game game,
+                                  byte input) {
+        for (int i = 0; i < FLAG_ACTIONS.length; i++) {
+            if ((input & 1 << i) != 0) {
+                Replay.apply(game,
+                             FLAG_ACTIONS[i]);
+            }
+        }
+        Replay.apply(game,
+                     Replay.STEP);
+    }
+
+    /**
+     * Accessor for a player's game as currently predicted. Only valid until
+     * the next call to advance() or rollBack().
+     * @param player int representing the player, 0 or 1
+     * @return Game of that player
+     */
+    public Game getGame(int player) {
+        return games[player];
+    }
+
+    /**
+     * Accessor for this machine's player.
+     * @return int representing the local player, 0 or 1
+     */
+    public int getLocalPlayer() {
+        return localPlayer;
+    }
+
+    /**
+     * Accessor for the next frame to be simulated.
+     * @return int representing the number of frames simulated
+     */
+    public int getFrame() {
+        return frame;
+    }
+
+    /**
+     * Accessor for how far the remote player's inputs are known.
+     * @return int representing the first frame whose remote input has not
+     * arrived
+     */
+    public int getConfirmedFrame() {
+        return confirmed;
+    }
+
+    /**
+     * Accessor for the number of rollbacks made.
+     * @return long representing the number of times the games were restored
+     */
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * Accessor for the number of frames simulated again by rollbacks.
+     * @return long representing the frames re-simulated
+     */
+    public long getResimulatedFrames() {
+        return resimulatedFrames;
+    }
+
+    /**
+     * Hashes both games, for checking that two machines that have simulated
+     * the same frames with the same inputs agree.
+     * @return long summarizing the state of both games
+     */
+    public long checksum() {
+        rollBack();
+        long hash = 0;
+        for (Game game : games) {
+            hash = Board.mix(hash ^ game.getBoard().getHash());
+            hash = Board.mix(hash ^ game.getScore());
+            hash = Board.mix(hash ^ game.getLockCount());
+            for (Coordinate c : game.getCurrent().getCells()) {
+                hash = Board.mix(hash ^ (c.getX() * 31L + c.getY()));
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Plays matches between pairs of sessions joined by a simulated link that
+     * delivers each input a number of frames late, with random inputs on both
+     * sides, until both games of each match are over. Checks that both
+     * sessions of each match end up with the same games, and prints the cost
+     * of advancing with rollbacks.
+     * Usage: java RollbackSession [frames] [delay]
+     * @param args String[] of an optional total number of frames and link
+     * delay
+     */
+    public static void main(String[] args) {
+        int frames = args.length >= 1 ? Integer.parseInt(args[0]) : 100000;
+        int delay = args.length >= 2 ? Integer.parseInt(args[1]) : 4;
+        Random random = new Random(1);
+        long[] samples = new long[2 * frames];
+        int sampleCount = 0;
+        long totalNanos = 0;
+        long rollbacks = 0;
+        long resimulated = 0;
+        int stalls = 0;
+        int matches = 0;
+        int disagreements = 0;
+        int played = 0;
+        while (played < frames) {
+            RollbackSession[] peers = {new RollbackSession(matches,
+                                                           0),
+                                       new RollbackSession(matches,
+                                                           1)};
+            //inputs in flight to each peer, as arrival tick, frame and input
+            List<ArrayDeque<int[]>> links = new ArrayList<ArrayDeque<int[]>>();
+            links.add(new ArrayDeque<int[]>());
+            links.add(new ArrayDeque<int[]>());
+            for (int tick = 0; played < frames
+                               && !(peers[0].getGame(0).isGameOver()
+                                    && peers[0].getGame(1).isGameOver());
+                 tick++) {
+                for (int p = 0; p < 2; p++) {
+                    RollbackSession peer = peers[p];
+                    ArrayDeque<int[]> link = links.get(p);
+                    while (!link.isEmpty() && link.peek()[0] <= tick) {
+                        int[] packet = link.poll();
+                        peer.receiveRemote(packet[1],
+                                           (byte) packet[2]);
+                    }
+                    byte input = random.nextInt(8) == 0
+                                 ? (byte) (1 << random.nextInt(
+                                     FLAG_ACTIONS.length))
+                                 : NO_INPUT;
+                    int sent = peer.getFrame();
+                    long start = System.nanoTime();
+                    boolean advanced = peer.advance(input);
+                    long nanos = System.nanoTime() - start;
+                    if (!advanced) {
+                        stalls++;
+                        continue;
+                    }
+                    totalNanos += nanos;
+                    //the first frames include class loading and warm up
+                    if (played >= WARM_UP_FRAMES) {
+                        samples[sampleCount++] = nanos;
+                    }
+                    links.get(1 - p).add(new int[]{tick + delay, sent, input});
+                }
+                played++;
+            }
+            //deliver everything still in flight, then compare
+            for (int p = 0; p < 2; p++) {
+                for (int[] packet : links.get(p)) {
+                    peers[p].receiveRemote(packet[1],
+                                           (byte) packet[2]);
+                }
+                rollbacks += peers[p].getRollbacks();
+                resimulated += peers[p].getResimulatedFrames();
+            }
+            if (peers[0].getFrame() != peers[1].getFrame()
+                || peers[0].checksum() != peers[1].checksum()) {
+                disagreements++;
+            }
+            matches++;
+        }
+        Arrays.sort(samples,
+                    0,
+                    sampleCount);
+        System.out.printf("%d matches, %d frames: %d rollbacks of %.1f frames "
+                          + "each, %d stalls, %d disagreements%n",
+                          matches,
+                          played,
+                          rollbacks,
+                          rollbacks == 0 ? 0.0 : (double) resimulated
+                                                 / rollbacks,
+                          stalls,
+                          disagreements);
+        System.out.printf("advance() %.2f us mean, %.2f us p99, %.2f us "
+                          + "p99.9%n",
+                          totalNanos / 1e3 / (2L * played - stalls),
+                          samples[(int) (sampleCount * 0.99)] / 1e3,
+                          samples[(int) (sampleCount * 0.999)] / 1e3);
+    }
+}
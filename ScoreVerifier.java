@@ -0,0 +1,354 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Checks submitted scores by playing their Replays back on a headless Game.
+ * A score is accepted only if the replay is a standard game and ends on
+ * exactly the claimed score. Checks run on a pool of one thread per core
+ * behind a bounded queue; when the queue is full new submissions are refused
+ * straight away instead of piling up, so a burst of posts is throttled rather
+ * than slowing every check down. A Game plays millions of ticks a second
+ * without graphics, so even a half hour game checks in tens of
+ * milliseconds.
+ * Run from the command line it serves the checks over HTTP for
+ * postscore.php: a form POST to /verify with score and a Base64 replay is
+ * answered "accepted" (200), "rejected" (403), "invalid" (400) or "busy"
+ * (503).
+ * @author Zach Cotter
+ */
+public class ScoreVerifier {
+
+    public static final int DEFAULT_PORT = 8765;
+    //four hours of play, far longer than any real game
+    public static final int MAX_TICKS = 4 * 60 * 60 * 1000 / Game.TICK_MILLIS;
+    private static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Outcome of a check.
+     */
+    public enum Result {
+        ACCEPTED, REJECTED, INVALID
+    }
+
+    private final ThreadPoolExecutor pool;
+
+    /**
+     * Constructs a verifier farm.
+     * @param threads int representing the number of checks run at once
+     * @param queueCapacity int representing the number of checks that may
+     * wait for a thread before submissions are refused
+     */
+    public ScoreVerifier(int threads,
+                         int queueCapacity) {
+        pool = new ThreadPoolExecutor(threads,
+                                      threads,
+                                      0,
+                                      TimeUnit.MILLISECONDS,
+                                      new ArrayBlockingQueue<Runnable>(
+                                          queueCapacity),
+                                      Executors.defaultThreadFactory(),
+                                      new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queues a check.
+     * @param replayBytes byte[] written by Replay.write()
+     * @param claimedScore int representing the score to check
+     * @return Future Result of the check
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public Future<Result> submit(final byte[] replayBytes,
+                                 final int claimedScore) {
+        return pool.submit(() -> check(replayBytes,
+                                       claimedScore));
+    }
+
+    /**
+     * Queues a check and passes its Result on without waiting for it, so the
+     * caller's thread is free as soon as the check is queued.
+     * @param replayBytes byte[] written by Replay.write()
+     * @param claimedScore int representing the score to check
+     * @param done Consumer called with the Result on the checking thread
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public void submit(final byte[] replayBytes,
+                       final int claimedScore,
+                       final Consumer<Result> done) {
+        pool.execute(() -> done.accept(check(replayBytes,
+                                             claimedScore)));
+    }
+
+    private static Result check(byte[] replayBytes,
+                                int claimedScore) {
+        Replay replay;
+        try {
+            replay = Replay.read(new ByteArrayInputStream(replayBytes));
+        }
+        catch (IOException ex) {
+            return Result.INVALID;
+        }
+        return verify(replay,
+                      claimedScore);
+    }
+
+    /**
+     * Plays a replay back and compares its score with the claimed one.
+     * @param replay Replay of the game
+     * @param claimedScore int representing the score to check
+     * @return ACCEPTED if the game is standard and scores exactly the claimed
+     * score, REJECTED if it scores something else, INVALID if it is not a
+     * game that could have been played
+     */
+    public static Result verify(Replay replay,
+                                int claimedScore) {
+        if (replay.getColumns() != Board.DEFAULT_WIDTH
+            || replay.getRows() != Board.DEFAULT_HEIGHT
+            || !isStandard(replay.getGravityCurve())
+            || !isStandardLockDelay(replay)
+            || replay.getTickCount() > MAX_TICKS) {
+            return Result.INVALID;
+        }
+        Game game = replay.newGame();
+        for (int i = 0; i < replay.getActionCount(); i++) {
+            byte action = replay.getAction(i);
+            if (action < Replay.STEP || action > Replay.COUNTER_CLOCKWISE) {
+                return Result.INVALID;
+            }
+            if (game.isGameOver()) {
+                //nothing can happen after the game ends
+                break;
+            }
+            Replay.apply(game,
+                         action);
+        }
+        return game.getScore() == claimedScore ? Result.ACCEPTED
+                                               : Result.REJECTED;
+    }
+
+    /**
+     * Determines if a curve is one the game offers, rather than a slower one
+     * made up to make the game easier.
+     */
+    private static boolean isStandard(GravityCurve curve) {
+        return Arrays.equals(curve.getGravities(),
+                             GravityCurve.STANDARD.getGravities())
+               || Arrays.equals(curve.getGravities(),
+                                GravityCurve.HIGH_GRAVITY.getGravities());
+    }
+
+    /**
+     * Determines if a replay uses the lock delay the game offers, or none, as
+     * replays recorded before lock delay was added do.
+     */
+    private static boolean isStandardLockDelay(Replay replay) {
+        return (replay.getLockDelayTicks() == 0
+                && replay.getLockResetLimit() == 0)
+               || (replay.getLockDelayTicks() == Game.DEFAULT_LOCK_DELAY_TICKS
+                   && replay.getLockResetLimit() == Game.DEFAULT_LOCK_RESETS);
+    }
+
+    /**
+     * Stops taking checks and lets the queued ones finish.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Answers a POST to /verify. The check is queued and answered from the
+     * checking thread, so a full queue is answered 503 straight away and
+     * requests never wait on the server's own threads.
+     */
+    private void handle(final HttpExchange exchange) throws IOException {
+        int status;
+        String answer;
+        try {
+            Map<String, String> form = readForm(exchange);
+            byte[] replayBytes = Base64.getDecoder().decode(form.get("replay"));
+            int claimedScore = Integer.parseInt(form.get("score"));
+            submit(replayBytes,
+                   claimedScore,
+                   result -> answer(exchange,
+                                    result == Result.ACCEPTED ? 200
+                                    : result == Result.REJECTED ? 403 : 400,
+                                    result.name().toLowerCase()));
+            return;
+        }
+        catch (RejectedExecutionException ex) {
+            status = 503;
+            answer = "busy";
+            exchange.getResponseHeaders().set("Retry-After",
+                                              "1");
+        }
+        catch (IllegalArgumentException | NullPointerException ex) {
+            status = 400;
+            answer = "invalid";
+        }
+        answer(exchange,
+               status,
+               answer);
+    }
+
+    private static void answer(HttpExchange exchange,
+                               int status,
+                               String answer) {
+        byte[] body = answer.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.sendResponseHeaders(status,
+                                         body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+        catch (IOException ex) {
+            Logger.getLogger(ScoreVerifier.class.getName()).log(Level.SEVERE,
+                                                                null,
+                                                                ex);
+        }
+    }
+
+    /**
+     * Reads a url encoded form from a request body.
+     */
+    private static Map<String, String> readForm(HttpExchange exchange)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer,
+                            0,
+                            read);
+                if (bytes.size() > MAX_REQUEST_BYTES) {
+                    throw new IllegalArgumentException("Request too large");
+                }
+            }
+        }
+        Map<String, String> form = new HashMap<String, String>();
+        for (String pair : bytes.toString("US-ASCII").split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                form.put(URLDecoder.decode(pair.substring(0,
+                                                          equals),
+                                           "UTF-8"),
+                         URLDecoder.decode(pair.substring(equals + 1),
+                                           "UTF-8"));
+            }
+        }
+        return form;
+    }
+
+    /**
+     * Plays random games until they add up to half an hour, then times
+     * checking all of them. Random play never lasts half an hour in one game,
+     * but a check costs the same per tick however the ticks are split up.
+     * @return long representing the nanoseconds the checks took
+     */
+    private static long benchmark() {
+        Random random = new Random(1);
+        int ticks = 30 * 60 * 1000 / Game.TICK_MILLIS;
+        List<Replay> replays = new ArrayList<Replay>();
+        List<Integer> scores = new ArrayList<Integer>();
+        for (int played = 0; played < ticks;) {
+            Replay replay = new Replay(Board.DEFAULT_WIDTH,
+                                       Board.DEFAULT_HEIGHT,
+                                       random.nextLong(),
+                                       GravityCurve.STANDARD);
+            Game game = replay.newGame();
+            while (!game.isGameOver() && played + replay.getTickCount() < ticks) {
+                byte action = (byte) random.nextInt(Replay.COUNTER_CLOCKWISE
+                                                    + 1);
+                if (action != Replay.DROP || random.nextInt(4) == 0) {
+                    replay.record(action);
+                    Replay.apply(game,
+                                 action);
+                }
+            }
+            played += replay.getTickCount();
+            replays.add(replay);
+            scores.add(game.getScore());
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < 20; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < replays.size(); i++) {
+                if (verify(replays.get(i),
+                           scores.get(i)) != Result.ACCEPTED) {
+                    throw new IllegalStateException("Benchmark game rejected");
+                }
+            }
+            best = Math.min(best,
+                            System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * Serves checks over HTTP, or times a check.
+     * Usage: java ScoreVerifier [port [threads [queueCapacity]]]
+     *        java ScoreVerifier benchmark
+     * @param args String[] of optional port, thread count and queue size
+     * @throws IOException if the server can not start
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && args[0].equals("benchmark")) {
+            System.out.println("30 minutes of play verified in "
+                               + benchmark() / 1000 + " us");
+            return;
+        }
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int threads = args.length >= 2
+                      ? Integer.parseInt(args[1])
+                      : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length >= 3
+                            ? Integer.parseInt(args[2]) : threads * 64;
+        final ScoreVerifier verifier = new ScoreVerifier(threads,
+                                                         queueCapacity);
+        //only postscore.php on the same machine should reach the verifier
+        HttpServer server = HttpServer.create(
+            new InetSocketAddress("127.0.0.1",
+                                  port),
+            0);
+        server.createContext("/verify",
+                             verifier::handle);
+        //requests are only read and queued here, checks run on the pool; when
+        //these threads are behind, the server's own thread reads the next
+        //request itself, so it stops accepting connections until they catch up
+        server.setExecutor(new ThreadPoolExecutor(
+            threads,
+            threads,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(threads * 4),
+            Executors.defaultThreadFactory(),
+            new ThreadPoolExecutor.CallerRunsPolicy()));
+        server.start();
+        System.out.println("Verifying scores on port " + port + " with "
+                           + threads + " threads");
+    }
+}
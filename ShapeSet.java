@@ -0,0 +1,228 @@
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable set of the pieces a Game draws from. Sets are read from a plain
+ * text definition with one shape per line:
+ * <pre>
+ * # identifier color center spaces...
+ * t FFC800 4,1 3,1 4,1 5,1 4,0
+ * </pre>
+ * The color is hexadecimal RGB, and the center and spaces are x,y positions
+ * at spawn on a board of the default width, with no space above the top row.
+ * Blank lines and lines starting with # are ignored. Games with a set must
+ * be at least its minimum width and height, so every shape spawns inside
+ * the board. The seven tetrominoes are built in as STANDARD; other
+ * sets, such as the pentominoes in pentominoes.shapes, are loaded from files.
+ * @author Zach Cotter
+ */
+public final class ShapeSet {
+
+    private static final String STANDARD_DEFINITION =
+        "o 00FF00 4,0 4,0 5,0 4,1 5,1\n"
+        + "i 0000FF 4,0 3,0 4,0 5,0 6,0\n"
+        + "l FF00FF 5,1 3,1 4,1 5,1 5,0\n"
+        + "j 00FFFF 3,1 3,1 4,1 5,1 3,0\n"
+        + "t FFC800 4,1 3,1 4,1 5,1 4,0\n"
+        + "z FFAFAF 4,1 3,0 4,0 4,1 5,1\n"
+        + "s FF0000 4,1 3,1 4,0 4,1 5,0\n";
+
+    /**
+     * The seven tetrominoes, in the order Tetra.TETRA_IDENTIFIERS lists them.
+     */
+    public static final ShapeSet STANDARD;
+
+    static {
+        try {
+            STANDARD = read(new StringReader(STANDARD_DEFINITION));
+        }
+        catch (IOException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final TetraShape[] shapes;
+    //shape for each identifier, indexed by char
+    private final TetraShape[] byIdentifier = new TetraShape[128];
+    private final int minimumWidth;
+    private final int minimumHeight;
+
+    private ShapeSet(TetraShape[] shapes) {
+        this.shapes = shapes;
+        int bottom = 0;
+        for (TetraShape shape : shapes) {
+            byIdentifier[shape.getIdentifier()] = shape;
+            for (int i = 0; i < shape.getSize(); i++) {
+                bottom = Math.max(bottom,
+                                  shape.getSpawnY() + shape.getDy(0,
+                                                                  i));
+            }
+        }
+        int width = Board.MIN_WIDTH;
+        while (!spawnsWithin(width)) {
+            width++;
+        }
+        minimumWidth = width;
+        minimumHeight = Math.max(Board.MIN_HEIGHT,
+                                 bottom + 1);
+    }
+
+    /**
+     * Determines if every shape spawns inside a board of the given width.
+     * Shapes are centered by Tetra.spawnShift(), which only moves them
+     * further in as boards widen, so the first width that fits is the
+     * narrowest.
+     */
+    private boolean spawnsWithin(int width) {
+        int shift = Tetra.spawnShift(width);
+        for (TetraShape shape : shapes) {
+            for (int i = 0; i < shape.getSize(); i++) {
+                int x = shape.getSpawnX() + shift + shape.getDx(0,
+                                                                i);
+                if (x < 0 || x >= width) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads a set from a definition file.
+     * @param file File holding the definition
+     * @return the ShapeSet defined
+     * @throws IOException if the file can not be read or is malformed
+     */
+    public static ShapeSet load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Reads a set from a definition.
+     * @param in InputStream of the definition
+     * @return the ShapeSet defined
+     * @throws IOException if the stream can not be read or is malformed
+     */
+    public static ShapeSet read(InputStream in) throws IOException {
+        return read(new InputStreamReader(in,
+                                          StandardCharsets.UTF_8));
+    }
+
+    private static ShapeSet read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<TetraShape> shapes = new ArrayList<TetraShape>();
+        boolean[] used = new boolean[128];
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length < 4 || fields[0].length() != 1
+                || fields[0].charAt(0) >= used.length) {
+                throw new IOException("Malformed shape on line " + lineNumber);
+            }
+            char identifier = fields[0].charAt(0);
+            if (used[identifier]) {
+                throw new IOException("Shape " + identifier
+                                      + " defined twice on line "
+                                      + lineNumber);
+            }
+            used[identifier] = true;
+            try {
+                Color color = new Color(Integer.parseInt(fields[1],
+                                                         16));
+                Coordinate center = parseCoordinate(fields[2]);
+                Coordinate[] cells = new Coordinate[fields.length - 3];
+                for (int i = 0; i < cells.length; i++) {
+                    cells[i] = parseCoordinate(fields[i + 3]);
+                    if (cells[i].getY() < 0) {
+                        throw new IllegalArgumentException("Above the board");
+                    }
+                }
+                shapes.add(new TetraShape(identifier,
+                                          color,
+                                          center,
+                                          cells));
+            }
+            catch (IllegalArgumentException ex) {
+                throw new IOException("Malformed shape on line " + lineNumber,
+                                      ex);
+            }
+        }
+        if (shapes.isEmpty()) {
+            throw new IOException("No shapes defined");
+        }
+        return new ShapeSet(shapes.toArray(new TetraShape[shapes.size()]));
+    }
+
+    private static Coordinate parseCoordinate(String field) {
+        int comma = field.indexOf(',');
+        if (comma < 0) {
+            throw new IllegalArgumentException("Expected x,y: " + field);
+        }
+        return Coordinate.at(Integer.parseInt(field.substring(0,
+                                                              comma)),
+                             Integer.parseInt(field.substring(comma + 1)));
+    }
+
+    /**
+     * Accessor for the number of shapes.
+     * @return int representing the number of shapes in the set
+     */
+    public int size() {
+        return shapes.length;
+    }
+
+    /**
+     * Accessor for the narrowest board every shape in the set spawns inside.
+     * @return int representing the fewest columns a Game with this set may
+     * have, at least Board.MIN_WIDTH
+     */
+    public int getMinimumWidth() {
+        return minimumWidth;
+    }
+
+    /**
+     * Accessor for the shortest board every shape in the set spawns inside.
+     * @return int representing the fewest rows a Game with this set may have,
+     * at least Board.MIN_HEIGHT
+     */
+    public int getMinimumHeight() {
+        return minimumHeight;
+    }
+
+    /**
+     * Accessor for a shape by position.
+     * @param index int representing the position in the definition
+     * @return TetraShape at that position
+     */
+    public TetraShape get(int index) {
+        return shapes[index];
+    }
+
+    /**
+     * Accessor for a shape by identifier.
+     * @param identifier char naming the shape
+     * @return TetraShape with that identifier, or null if there is none
+     */
+    public TetraShape get(char identifier) {
+        return identifier < byIdentifier.length ? byIdentifier[identifier]
+                                                : null;
+    }
+}
@@ -0,0 +1,569 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Leaderboard spread over several LeaderboardShard processes. Each player
+ * belongs to one shard, chosen from a hash of the name that every JVM
+ * computes the same way, so posts go straight to the owning shard and shards
+ * never talk to each other; adding shards adds write capacity. Reads never
+ * wait on a shard: a background thread keeps a copy of every shard's head,
+ * revalidated with conditional requests that cost a 304 when the head has
+ * not changed, and after each change merges the heads into one ranked list
+ * and the score needed to make the table. getTop() and getValueToQualify()
+ * only read those.
+ * Run from the command line it serves the merged table to the game as the
+ * front for the shards, in the same JSON as scorecheck.php, and takes posts
+ * as postscore.php does; setting the game's tetris.leaderboard system
+ * property to the front's address switches HighScore over to it. Fronts hold
+ * no state of their own, so there can be several.
+ * @author Zach Cotter
+ */
+public class ShardedLeaderboard {
+
+    public static final int TABLE_SIZE = 10;
+    public static final long DEFAULT_REFRESH_MILLIS = 250;
+    private static final int TIMEOUT_MILLIS = 2000;
+
+    private final String[] shards;
+    private final Head[] heads;
+    private final ScheduledExecutorService refresher;
+    //merged heads and the score needed to make the table, replaced whole
+    private volatile List<HighScoreEntry> top = Collections.emptyList();
+    private volatile int valueToQualify;
+
+    /**
+     * Latest copy of one shard's head.
+     */
+    private static class Head {
+
+        private HighScoreEntry[] entries = new HighScoreEntry[0];
+        private String eTag;
+    }
+
+    /**
+     * Constructs a leaderboard over the given shards and starts keeping
+     * their heads.
+     * @param shards String[] of the shards' base URLs, such as
+     * http://127.0.0.1:9001, in the same order everywhere
+     * @param refreshMillis long representing how often heads are revalidated
+     */
+    public ShardedLeaderboard(String[] shards,
+                              long refreshMillis) {
+        if (shards.length == 0) {
+            throw new IllegalArgumentException("No shards");
+        }
+        this.shards = shards.clone();
+        heads = new Head[shards.length];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = new Head();
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable,
+                                       "Leaderboard Heads");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh,
+                                         0,
+                                         refreshMillis,
+                                         TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Finds the shard that owns a player. Uses String.hashCode(), which is the
+     * same in every JVM.
+     * @param name String naming the player
+     * @param shardCount int representing the number of shards
+     * @return int representing the index of the owning shard
+     */
+    public static int shardOf(String name,
+                              int shardCount) {
+        return Math.floorMod(name.hashCode(),
+                             shardCount);
+    }
+
+    /**
+     * Posts a score to the shard that owns the player. Blocks until the
+     * shard answers. A score that makes the table has its shard's head
+     * fetched again straight away rather than at the next refresh.
+     * @param entry HighScoreEntry to add
+     * @param replay Replay of the game for the shard to check the score
+     * against, or null to send the score alone
+     * @return int representing the HTTP status of the shard's answer, or -1
+     * if it could not be reached
+     */
+    public int post(HighScoreEntry entry,
+                    Replay replay) {
+        String form = "name=" + encode(entry.getName()) + "&score="
+                      + entry.getScore();
+        if (replay != null) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try {
+                replay.write(bytes);
+            }
+            catch (IOException ex) {
+                Logger.getLogger(ShardedLeaderboard.class.getName()).log(
+                    Level.SEVERE,
+                    null,
+                    ex);
+                return -1;
+            }
+            form += "&replay="
+                    + encode(Base64.getEncoder().encodeToString(
+                        bytes.toByteArray()));
+        }
+        return post(entry.getName(),
+                    entry.getScore(),
+                    form);
+    }
+
+    /**
+     * Forwards a url encoded post to the shard that owns the named player.
+     */
+    private int post(String name,
+                     int score,
+                     String form) {
+        final int shard = shardOf(name,
+                                  shards.length);
+        int status = -1;
+        try {
+            HttpURLConnection connection = open(shards[shard] + "/post");
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type",
+                                          "application/x-www-form-urlencoded");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(form.getBytes(StandardCharsets.US_ASCII));
+            }
+            status = connection.getResponseCode();
+            drain(connection);
+        }
+        catch (IOException ex) {
+            Logger.getLogger(ShardedLeaderboard.class.getName()).log(
+                Level.SEVERE,
+                null,
+                ex);
+        }
+        if (status == HttpURLConnection.HTTP_OK && score >= valueToQualify) {
+            refresher.execute(() -> {
+                if (refreshHead(shard)) {
+                    merge();
+                }
+            });
+        }
+        return status;
+    }
+
+    /**
+     * Accessor for the best players across all shards, as of the last
+     * refresh. Never contacts a shard.
+     * @param k int representing the number of players wanted
+     * @return List of up to k HighScoreEntries, best first
+     */
+    public List<HighScoreEntry> getTop(int k) {
+        List<HighScoreEntry> merged = top;
+        return merged.subList(0,
+                              Math.min(k,
+                                       merged.size()));
+    }
+
+    /**
+     * Accessor for the score needed to make the table, as of the last
+     * refresh. Never contacts a shard.
+     * @return int representing the lowest score in a full table, or 0 while
+     * the table has room
+     */
+    public int getValueToQualify() {
+        return valueToQualify;
+    }
+
+    /**
+     * Stops keeping the heads.
+     */
+    public void close() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Revalidates every shard's head and merges them again if any changed.
+     */
+    private void refresh() {
+        boolean changed = false;
+        for (int i = 0; i < shards.length; i++) {
+            changed |= refreshHead(i);
+        }
+        if (changed) {
+            merge();
+        }
+    }
+
+    /**
+     * Fetches a shard's head unless the copy held is current.
+     * @return True if the head changed
+     */
+    private boolean refreshHead(int shard) {
+        Head head = heads[shard];
+        try {
+            HttpURLConnection connection = open(shards[shard] + "/top");
+            if (head.eTag != null) {
+                connection.setRequestProperty("If-None-Match",
+                                              head.eTag);
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK) {
+                drain(connection);
+                return false;
+            }
+            List<HighScoreEntry> entries = new ArrayList<HighScoreEntry>();
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(connection.getInputStream(),
+                                          StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) {
+                        entries.add(new HighScoreEntry(
+                            line.substring(tab + 1),
+                            Integer.parseInt(line.substring(0,
+                                                            tab))));
+                    }
+                }
+            }
+            head.entries = entries.toArray(new HighScoreEntry[entries.size()]);
+            head.eTag = connection.getHeaderField("ETag");
+            return true;
+        }
+        catch (IOException | NumberFormatException ex) {
+            //a shard that is down keeps its last head until it is back
+            Logger.getLogger(ShardedLeaderboard.class.getName()).log(
+                Level.WARNING,
+                "Shard " + shards[shard] + " unavailable: " + ex);
+            return false;
+        }
+    }
+
+    /**
+     * Merges the heads, each already ranked, into the ranked list of the best
+     * LeaderboardShard.HEAD_SIZE players, and finds the score needed to make
+     * the table.
+     */
+    private void merge() {
+        final Head[] held = heads;
+        //cursor per head: head index and position
+        PriorityQueue<int[]> cursors = new PriorityQueue<int[]>(
+            held.length,
+            (a, b) -> LeaderboardShard.RANKING.compare(
+                held[a[0]].entries[a[1]],
+                held[b[0]].entries[b[1]]));
+        for (int i = 0; i < held.length; i++) {
+            if (held[i].entries.length > 0) {
+                cursors.add(new int[]{i, 0});
+            }
+        }
+        List<HighScoreEntry> merged = new ArrayList<HighScoreEntry>();
+        while (merged.size() < LeaderboardShard.HEAD_SIZE
+               && !cursors.isEmpty()) {
+            int[] cursor = cursors.poll();
+            merged.add(held[cursor[0]].entries[cursor[1]]);
+            if (++cursor[1] < held[cursor[0]].entries.length) {
+                cursors.add(cursor);
+            }
+        }
+        top = Collections.unmodifiableList(merged);
+        valueToQualify = merged.size() < TABLE_SIZE
+                         ? 0 : merged.get(TABLE_SIZE - 1).getScore();
+    }
+
+    private static HttpURLConnection open(String url) throws IOException {
+        HttpURLConnection connection =
+            (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(TIMEOUT_MILLIS);
+        connection.setReadTimeout(TIMEOUT_MILLIS);
+        return connection;
+    }
+
+    /**
+     * Reads the rest of an answer, so the connection can be reused.
+     */
+    private static void drain(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getResponseCode() >= 400
+                         ? connection.getErrorStream()
+                         : connection.getInputStream();
+        if (in != null) {
+            try {
+                byte[] buffer = new byte[1024];
+                while (in.read(buffer) != -1) {
+                    //discard
+                }
+            }
+            finally {
+                in.close();
+            }
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value,
+                                     "UTF-8");
+        }
+        catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Answers a GET to /scores with the table in the JSON of scorecheck.php.
+     */
+    private void handleScores(HttpExchange exchange) throws IOException {
+        List<HighScoreEntry> table = getTop(TABLE_SIZE);
+        String tag = tagOf(table);
+        exchange.getResponseHeaders().set("ETag",
+                                          tag);
+        exchange.getResponseHeaders().set("Cache-Control",
+                                          "no-cache");
+        if (tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304,
+                                         -1);
+            exchange.close();
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type",
+                                          "application/json");
+        StringBuilder json = new StringBuilder("[");
+        for (HighScoreEntry entry : table) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append("{\"name\":\"");
+            for (char c : entry.getName().toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    json.append('\\');
+                }
+                json.append(c);
+            }
+            json.append("\",\"score\":").append(entry.getScore()).append('}');
+        }
+        json.append(']');
+        LeaderboardShard.send(exchange,
+                              200,
+                              json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tags a table by its contents, so every front, and a front after a
+     * restart, gives the same table the same tag and different tables
+     * different tags.
+     */
+    private static String tagOf(List<HighScoreEntry> table) {
+        long hash = table.size();
+        for (HighScoreEntry entry : table) {
+            for (char c : entry.getName().toCharArray()) {
+                hash = Board.mix(hash ^ c);
+            }
+            //above any char, so it also marks where the name ends
+            hash = Board.mix(hash ^ ((long) entry.getScore() << 17 | 0x10000));
+        }
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * Answers a POST to /post by passing it on to the owning shard.
+     */
+    private void handlePost(HttpExchange exchange) throws IOException {
+        int status;
+        try {
+            Map<String, String> form = LeaderboardShard.readForm(exchange);
+            String name = form.get("name");
+            int score = Integer.parseInt(form.get("score"));
+            if (!LeaderboardShard.isValidName(name)) {
+                throw new IllegalArgumentException("Bad name");
+            }
+            String forwarded = "name=" + encode(name) + "&score=" + score;
+            if (form.containsKey("replay")) {
+                forwarded += "&replay=" + encode(form.get("replay"));
+            }
+            status = post(name,
+                          score,
+                          forwarded);
+            if (status == -1) {
+                status = 503;
+            }
+        }
+        catch (IllegalArgumentException | NullPointerException ex) {
+            status = 400;
+        }
+        LeaderboardShard.send(exchange,
+                              status,
+                              new byte[0]);
+    }
+
+    /**
+     * Answers a GET to /qualify with the score needed to make the table.
+     */
+    private void handleQualify(HttpExchange exchange) throws IOException {
+        LeaderboardShard.send(exchange,
+                              200,
+                              String.valueOf(valueToQualify).getBytes(
+                                  StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Starts a shard process on this machine.
+     */
+    private static Process startShard(int port) throws IOException {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                      + File.separator + "java";
+        ProcessBuilder builder = new ProcessBuilder(
+            java,
+            "-cp",
+            System.getProperty("java.class.path"),
+            "LeaderboardShard",
+            String.valueOf(port));
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        return builder.start();
+    }
+
+    /**
+     * Starts shard processes on this machine, a power of two at a time up to
+     * the given number, and for each count times posts from a pool of
+     * writers for a few seconds, then top 10 reads.
+     */
+    private static void benchmark(int maxShards,
+                                  int seconds,
+                                  int writers) throws IOException,
+                                                      InterruptedException {
+        int basePort = 9100;
+        for (int count = 1; count <= maxShards; count *= 2) {
+            List<Process> processes = new ArrayList<Process>();
+            String[] urls = new String[count];
+            for (int i = 0; i < count; i++) {
+                processes.add(startShard(basePort + i));
+                urls[i] = "http://127.0.0.1:" + (basePort + i);
+            }
+            //give the shards time to start listening
+            Thread.sleep(1500);
+            final ShardedLeaderboard leaderboard =
+                new ShardedLeaderboard(urls,
+                                       DEFAULT_REFRESH_MILLIS);
+            final long end = System.nanoTime() + seconds * 1000000000L;
+            final AtomicLong posts = new AtomicLong();
+            Thread[] threads = new Thread[writers];
+            for (int t = 0; t < writers; t++) {
+                final Random random = new Random(t);
+                threads[t] = new Thread(() -> {
+                    while (System.nanoTime() - end < 0) {
+                        HighScoreEntry entry =
+                            new HighScoreEntry("player" + random.nextInt(100000),
+                                               random.nextInt(1000000));
+                        if (leaderboard.post(entry,
+                                             null) == HttpURLConnection.HTTP_OK) {
+                            posts.incrementAndGet();
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Thread.sleep(2 * DEFAULT_REFRESH_MILLIS);
+            long[] reads = new long[100000];
+            //summed so the reads can not be optimized away
+            long sizes = 0;
+            for (int i = 0; i < reads.length; i++) {
+                long start = System.nanoTime();
+                sizes += leaderboard.getTop(TABLE_SIZE).size()
+                         + leaderboard.getValueToQualify();
+                reads[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(reads);
+            System.out.printf("%d shards: %d posts/s, top 10 read %d ns p50, "
+                              + "%d ns p99, %d to qualify%n",
+                              count,
+                              posts.get() / seconds,
+                              reads[reads.length / 2],
+                              reads[reads.length * 99 / 100],
+                              sizes == 0 ? 0 : leaderboard.getValueToQualify());
+            leaderboard.close();
+            for (Process process : processes) {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+    }
+
+    /**
+     * Serves the merged table in front of running shards, or times shard
+     * processes started on this machine.
+     * Usage: java ShardedLeaderboard port shardUrl [shardUrl ...]
+     *        java ShardedLeaderboard benchmark [maxShards [seconds [writers]]]
+     * @param args String[] of port and shard URLs, or benchmark settings
+     * @throws IOException if the server or shards can not start
+     * @throws InterruptedException if interrupted while benchmarking
+     */
+    public static void main(String[] args) throws IOException,
+                                                  InterruptedException {
+        if (args.length >= 1 && args[0].equals("benchmark")) {
+            benchmark(args.length >= 2 ? Integer.parseInt(args[1]) : 4,
+                      args.length >= 3 ? Integer.parseInt(args[2]) : 5,
+                      args.length >= 4 ? Integer.parseInt(args[3]) : 16);
+            return;
+        }
+        if (args.length < 2) {
+            System.err.println("Usage: java ShardedLeaderboard port shardUrl "
+                               + "[shardUrl ...]");
+            System.err.println("       java ShardedLeaderboard benchmark "
+                               + "[maxShards [seconds [writers]]]");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        System.setProperty(LeaderboardShard.NO_DELAY_PROPERTY,
+                           "true");
+        final ShardedLeaderboard leaderboard = new ShardedLeaderboard(
+            Arrays.copyOfRange(args,
+                               1,
+                               args.length),
+            DEFAULT_REFRESH_MILLIS);
+        HttpServer server = HttpServer.create(new InetSocketAddress(port),
+                                              0);
+        server.createContext("/scores",
+                             leaderboard::handleScores);
+        server.createContext("/post",
+                             leaderboard::handlePost);
+        server.createContext("/qualify",
+                             leaderboard::handleQualify);
+        server.setExecutor(Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors() * 4));
+        server.start();
+        System.out.println("Leaderboard of " + (args.length - 1)
+                           + " shards on port " + port);
+    }
+}
@@ -0,0 +1,190 @@
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Hands the state of a Game from the thread playing it to any number of
+ * threads reading it, such as the renderer, bots, spectators and metrics,
+ * without locks on the reading side. The playing thread captures the game
+ * into a shared GameSnapshot after each change, as the writer of a sequence
+ * lock; readers copy the shared snapshot into one of their own with an
+ * optimistic read and copy again if a capture overlapped it, so every
+ * snapshot a reader ends up with is exactly one published state. Readers
+ * never take the lock, so the writer never waits for them, however many
+ * there are or however slowly they run; they only retry. Nothing is
+ * allocated per publish or per read once the snapshots have grown to the
+ * board's size.
+ * @author Zach Cotter
+ */
+public class SnapshotPublisher {
+
+    private final StampedLock lock = new StampedLock();
+    private final GameSnapshot shared = new GameSnapshot();
+
+    /**
+     * Publishes the current state of a game. Must only be called from one
+     * thread at a time, normally the one playing the game.
+     * @param game Game to publish
+     */
+    public void publish(Game game) {
+        long stamp = lock.writeLock();
+        try {
+            shared.capture(game);
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Copies the latest published state into a reader's snapshot, unless it
+     * already holds it.
+     * @param snapshot GameSnapshot owned by the reader
+     * @return True if the snapshot changed
+     */
+    public boolean read(GameSnapshot snapshot) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                if (shared.getVersion() == snapshot.getVersion()) {
+                    if (lock.validate(stamp)) {
+                        return false;
+                    }
+                }
+                else {
+                    snapshot.copyFrom(shared);
+                    if (lock.validate(stamp)) {
+                        return true;
+                    }
+                    //the copy may be torn, so it must not pass for current
+                    snapshot.invalidate();
+                }
+            }
+            //a capture is under way, and takes only a few microseconds
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Accessor for the version of the latest published state.
+     * @return long representing the number of publishes so far
+     */
+    public long getVersion() {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+            long version = shared.getVersion();
+            if (stamp != 0 && lock.validate(stamp)) {
+                return version;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Plays random games as fast as possible while reader threads copy
+     * snapshots, checking that every snapshot read is one the writer
+     * published, and prints publish and read rates.
+     * Usage: java SnapshotPublisher [readers] [seconds]
+     * @param args String[] of an optional number of readers and run time
+     * @throws InterruptedException if interrupted while waiting for readers
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int readerCount = args.length >= 1 ? Integer.parseInt(args[0]) : 3;
+        long seconds = args.length >= 2 ? Long.parseLong(args[1]) : 5;
+        final SnapshotPublisher publisher = new SnapshotPublisher();
+        final long[] reads = new long[readerCount];
+        final long[] torn = new long[readerCount];
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread[] readers = new Thread[readerCount];
+        for (int r = 0; r < readerCount; r++) {
+            final int reader = r;
+            readers[r] = new Thread(() -> {
+                GameSnapshot snapshot = new GameSnapshot();
+                while (publisher.getVersion() == 0) {
+                    Thread.onSpinWait();
+                }
+                while (running.get()) {
+                    if (publisher.read(snapshot)) {
+                        reads[reader]++;
+                        if (!isConsistent(snapshot)) {
+                            torn[reader]++;
+                        }
+                    }
+                }
+            },
+                                    "Reader " + r);
+            readers[r].start();
+        }
+        Random random = new Random(1);
+        Game game = new Game(Board.DEFAULT_WIDTH,
+                             Board.DEFAULT_HEIGHT,
+                             1);
+        long publishes = 0;
+        long start = System.nanoTime();
+        long end = start + seconds * 1000000000L;
+        while (System.nanoTime() - end < 0) {
+            if (game.isGameOver()) {
+                game = new Game(Board.DEFAULT_WIDTH,
+                                Board.DEFAULT_HEIGHT,
+                                random.nextLong());
+            }
+            Replay.apply(game,
+                         (byte) random.nextInt(Replay.COUNTER_CLOCKWISE + 1));
+            publisher.publish(game);
+            publishes++;
+        }
+        long nanos = System.nanoTime() - start;
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        System.out.println(publishes + " publishes, "
+                           + nanos / publishes + " ns each");
+        for (int r = 0; r < readerCount; r++) {
+            System.out.println("reader " + r + ": " + reads[r] + " reads, "
+                               + torn[r] + " inconsistent");
+        }
+    }
+
+    /**
+     * Checks what must hold for any state a Game can be in: the top is the
+     * highest occupied row, and unless the current Tetra has spawned onto the
+     * pile, its ghost lies on empty spaces with the floor or the pile just
+     * below it.
+     */
+    private static boolean isConsistent(GameSnapshot snapshot) {
+        int height = snapshot.getHeight();
+        int firstOccupied = height;
+        for (int y = 0; y < height && firstOccupied == height; y++) {
+            for (int x = 0; x < snapshot.getWidth(); x++) {
+                if (snapshot.getColor(x,
+                                      y) != null) {
+                    firstOccupied = y;
+                    break;
+                }
+            }
+        }
+        if (firstOccupied != snapshot.getTop()) {
+            return false;
+        }
+        boolean landed = false;
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int x = snapshot.getCurrentX(i);
+            int y = snapshot.getCurrentY(i);
+            if (y >= 0 && snapshot.getColor(x,
+                                            y) != null) {
+                return true;
+            }
+            int ghostY = y + snapshot.getGhostDistance();
+            if (ghostY < 0 || ghostY >= height
+                || snapshot.getColor(x,
+                                     ghostY) != null) {
+                return false;
+            }
+            landed |= ghostY + 1 == height || snapshot.getColor(x,
+                                                                ghostY + 1)
+                                              != null;
+        }
+        return landed;
+    }
+}
@@ -1,65 +1,35 @@
 import java.awt.Color;
 import java.awt.Graphics;
-import java.util.Arrays;
-import java.util.HashSet;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
- * Represents a Tetra piece for the tetris game.  A Tetra has a Set<Block> representing
- * it's Blocks. It contains methods to move each block in unison as a single
- * cohesive unit. Each Block in the Set is rotated around a defined center
- * Coordinate.
+ * Represents a Tetra piece for the tetris game.  A Tetra has an array of shared
+ * Coordinates representing the spaces of it's Blocks, and a single Color. It
+ * contains methods to move each block in unison as a single cohesive unit.
+ * Each space is rotated around a defined center Coordinate. Moving a Tetra
+ * swaps Coordinates out of the shared table rather than allocating. Predefined
+ * Tetras are spawned from the shared TetraShapes of a ShapeSet.
  * @author Zach Cotter
  */
 public class Tetra{
 
+    //the shapes of ShapeSet.STANDARD
     public static final int NUMBER_OF_TETRAS = 7;
     public static final char[] TETRA_IDENTIFIERS = {'o', 'i', 'l', 'j', 't', 'z', 's'};
-    private final Block[] O_BLOCKS = {new Block(4, 0, Color.GREEN),
-                                                new Block(5, 0, Color.GREEN),
-                                                new Block(4, 1, Color.GREEN),
-                                                new Block(5, 1, Color.GREEN)};
-    private final Block[] I_BLOCKS = {new Block(3, 0, Color.BLUE),
-                                                new Block(4, 0, Color.BLUE),
-                                                new Block(5, 0, Color.BLUE),
-                                                new Block(6, 0, Color.BLUE)};
-    private final Block[] L_BLOCKS = {new Block(3, 1, Color.MAGENTA),
-                                                new Block(4, 1, Color.MAGENTA),
-                                                new Block(5, 1, Color.MAGENTA),
-                                                new Block(5, 0, Color.MAGENTA)};
-    private final Block[] J_BLOCKS = {new Block(3, 1, Color.CYAN),
-                                                new Block(4, 1, Color.CYAN),
-                                                new Block(5, 1, Color.CYAN),
-                                                new Block(3, 0, Color.CYAN)};
-    private final Block[] T_BLOCKS = {new Block(3, 1, Color.ORANGE),
-                                                new Block(4, 1, Color.ORANGE),
-                                                new Block(5, 1, Color.ORANGE),
-                                                new Block(4, 0, Color.ORANGE)};
-    private final Block[] Z_BLOCKS = {new Block(3, 0, Color.PINK),
-                                                new Block(4, 0, Color.PINK),
-                                                new Block(4, 1, Color.PINK),
-                                                new Block(5, 1, Color.PINK)};
-    private final Block[] S_BLOCKS = {new Block(3, 1, Color.RED),
-                                                new Block(4, 0, Color.RED),
-                                                new Block(4, 1, Color.RED),
-                                                new Block(5, 0, Color.RED)};
-    private final Coordinate O_CENTER = new Coordinate(4, 0);
-    private final Coordinate I_CENTER = new Coordinate(4, 0);
-    private final Coordinate L_CENTER = new Coordinate(5, 1);
-    private final Coordinate J_CENTER = new Coordinate(3, 1);
-    private final Coordinate T_CENTER = new Coordinate(4, 1);
-    private final Coordinate Z_CENTER = new Coordinate(4, 1);
-    private final Coordinate S_CENTER = new Coordinate(4, 1);
-
-
-    private HashSet<Block> tetra;
+
+    private Coordinate[] cells;
+    private Color color;
     private Coordinate center;
 
     /**
      * Constructs a Tetra that has no blocks and has a center at (-1,-1)
      */
     public Tetra() {
-        tetra = new HashSet<Block>();
-        center = new Coordinate(-1, -1);
+        cells = new Coordinate[0];
+        color = Color.BLACK;
+        center = Coordinate.at(-1, -1);
     }
 
     /**
@@ -68,26 +38,75 @@ public class Tetra{
      * @param identifier char representing predefined target Tetra
      */
     public Tetra(char identifier) {
-        if (identifier == 'o') {
-            constructorHelper(O_BLOCKS, O_CENTER);
-        } else if (identifier == 'i') {
-            constructorHelper(I_BLOCKS, I_CENTER);
-        } else if (identifier == 'l') {
-            constructorHelper(L_BLOCKS, L_CENTER);
-        } else if (identifier == 'j'){
-            constructorHelper(J_BLOCKS, J_CENTER);
-        } else if (identifier == 't'){
-            constructorHelper(T_BLOCKS, T_CENTER);
-        } else if (identifier == 'z'){
-            constructorHelper(Z_BLOCKS, Z_CENTER);
-        } else if (identifier == 's'){
-            constructorHelper(S_BLOCKS, S_CENTER);
+        this(identifier,
+             Board.DEFAULT_WIDTH);
+    }
+
+    /**
+     * Constructs a tetra specific to Tetris, centered horizontally on a board
+     * of the given width.
+     * @param identifier char representing predefined target Tetra
+     * @param boardWidth int representing the number of columns of the board
+     */
+    public Tetra(char identifier, int boardWidth) {
+        this(standardShape(identifier), boardWidth);
+    }
+
+    /**
+     * Constructs a Tetra of the given shape in its spawn position, centered
+     * horizontally on a board of the given width.
+     * @param shape TetraShape to take the spaces and color of
+     * @param boardWidth int representing the number of columns of the board
+     */
+    public Tetra(TetraShape shape, int boardWidth) {
+        cells = new Coordinate[shape.getSize()];
+        reset(shape, boardWidth);
+    }
+
+    private static TetraShape standardShape(char identifier) {
+        TetraShape shape = ShapeSet.STANDARD.get(identifier);
+        if (shape == null) {
+            throw new IllegalArgumentException("Unknown Tetra " + identifier);
+        }
+        return shape;
+    }
+
+    /**
+     * Turns this Tetra into a newly spawned one of the given shape, reusing
+     * its array of spaces when the sizes match, so that a Game can recycle
+     * a Tetra it no longer needs instead of allocating a new one.
+     * @param shape TetraShape to take the spaces and color of
+     * @param boardWidth int representing the number of columns of the board
+     */
+    public void reset(TetraShape shape, int boardWidth) {
+        if (cells.length != shape.getSize()) {
+            cells = new Coordinate[shape.getSize()];
         }
+        int cx = shape.getSpawnX() + spawnShift(boardWidth);
+        int cy = shape.getSpawnY();
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = Coordinate.at(cx + shape.getDx(0, i),
+                                     cy + shape.getDy(0, i));
+        }
+        color = shape.getColor();
+        center = Coordinate.at(cx, cy);
+    }
+
+    /**
+     * Finds how far shapes are moved sideways at spawn to center them on a
+     * board of the given width, since their spawn positions are given for a
+     * board of the default width.
+     * @param boardWidth int representing the number of columns of the board
+     * @return int representing the columns to move right, or left if negative
+     */
+    static int spawnShift(int boardWidth) {
+        return (boardWidth - Board.DEFAULT_WIDTH) / 2;
     }
 
     /**
-     * Constructs a new Tetra from the given Blocks and center Coordinate.
-     * @param blocks Blocks to be placed in this Tetra's Set<Block>
+     * Constructs a new Tetra from the given Blocks and center Coordinate. The
+     * Tetra takes the color of the first Block.
+     * @param blocks Blocks whose spaces this Tetra will occupy
      * @param center Coordinate representing this tetra's center/axis of rotation
      */
     public Tetra(Block[] blocks, Coordinate center){
@@ -96,38 +115,86 @@ public class Tetra{
 
     /**
      * Copy Constructor
-     * @param tetra HashSet<Block> for new Tetra
+     * @param cells Coordinates of the spaces of the new Tetra
+     * @param color Color of the new Tetra
      * @param center Coordinate center of new Tetra
      */
-    public Tetra(HashSet<Block> tetra, Coordinate center) {
-        this.tetra = tetra;
+    public Tetra(Coordinate[] cells, Color color, Coordinate center) {
+        this.cells = cells;
+        this.color = color;
         this.center = center;
     }
 
     private void constructorHelper(Block[] blocks, Coordinate center) {
-        tetra = new HashSet<Block>();
-        tetra.addAll(Arrays.asList(blocks));
+        cells = new Coordinate[blocks.length];
+        for (int i = 0; i < blocks.length; i++) {
+            cells[i] = blocks[i].getPosition();
+        }
+        color = blocks.length > 0 ? blocks[0].getColor() : Color.BLACK;
         this.center = center;
     }
 
     /**
-     * Instantiates a new Tetra with the same values as this. Calls copy
-     * constructors of each field with as much depth as necessary to make
+     * Instantiates a new Tetra with the same values as this. Coordinates and
+     * Colors are immutable, so only the array of spaces is copied to make
      * the new Tetra completely independent.
      * @return a new, identical Tetra
      */
     public Tetra cloneMethod(){
-        HashSet<Block> cloneSet = new HashSet<Block>();
-        for (Block b : tetra) {
-            int x = b.getX();
-            int y = b.getY();
-            Color color = b.getColor();
-            int r = color.getRed();
-            int g = color.getGreen();
-            int bl = color.getBlue();
-            cloneSet.add(new Block(x, y, new Color(r,g,bl)));
+        return new Tetra(cells.clone(), color, center);
+    }
+
+    /**
+     * Makes this Tetra the same as another, reusing this Tetra's array of
+     * spaces when it is the right size.
+     * @param other Tetra to copy
+     */
+    public void copyFrom(Tetra other) {
+        if (cells.length == other.cells.length) {
+            System.arraycopy(other.cells, 0, cells, 0, cells.length);
+        }
+        else {
+            cells = other.cells.clone();
+        }
+        color = other.color;
+        center = other.center;
+    }
+
+    /**
+     * Writes the spaces, color and center of this Tetra.
+     * @param out DataOutput to write to
+     * @throws IOException if the output can not be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(cells.length);
+        for (Coordinate c : cells) {
+            out.writeInt(c.getX());
+            out.writeInt(c.getY());
         }
-        return new Tetra(cloneSet, new Coordinate(1000, 1000));
+        out.writeInt(color.getRGB());
+        out.writeInt(center.getX());
+        out.writeInt(center.getY());
+    }
+
+    /**
+     * Reads a Tetra written by writeTo().
+     * @param in DataInput to read from
+     * @return the Tetra read
+     * @throws IOException if the input can not be read
+     */
+    public static Tetra readFrom(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > 64) {
+            throw new IOException("Corrupt Tetra");
+        }
+        Coordinate[] cells = new Coordinate[length];
+        for (int i = 0; i < length; i++) {
+            int x = in.readInt();
+            cells[i] = Coordinate.at(x, in.readInt());
+        }
+        Color color = new Color(in.readInt(), true);
+        int x = in.readInt();
+        return new Tetra(cells, color, Coordinate.at(x, in.readInt()));
     }
 
     /**
@@ -135,9 +202,15 @@ public class Tetra{
      * @param c Color the blocks will change to.
      */
     public void setColor(Color c) {
-        for (Block b : tetra) {
-            b.setColor(c);
-        }
+        color = c;
+    }
+
+    /**
+     * Accessor for the color of the blocks in this tetra
+     * @return Color of the blocks
+     */
+    public Color getColor() {
+        return color;
     }
 
     /**
@@ -149,24 +222,24 @@ public class Tetra{
     }
 
     /**
-     * Calls paint() on each of the Blocks owned by this Tetra using the
-     * provided Graphics to fill the parameter.
+     * Paints each of the spaces owned by this Tetra using the provided
+     * Graphics.
      * @param g Graphics of Component to paint on.
      */
     public void paint(Graphics g) {
-        for (Block b : tetra) {
-            b.paint(g);
+        for (Coordinate c : cells) {
+            Block.paint(g, c.getX(), c.getY(), color);
         }
     }
 
     /**
-     * Calls paintAsEmpty() on each of the Blocks owned by this Tetra using the
-     * provided Graphics to fill the parameter.
+     * Paints each of the spaces owned by this Tetra as empty using the
+     * provided Graphics.
      * @param g Graphics of Component to paint on.
      */
     public void paintAsEmpty(Graphics g){
-        for (Block b : tetra) {
-            b.paintAsEmpty(g);
+        for (Coordinate c : cells) {
+            Block.paintAsEmpty(g, c.getX(), c.getY());
         }
     }
 
@@ -179,44 +252,52 @@ public class Tetra{
     }
 
     /**
-     * Adds the provided Block to the Set.
-     * @param newBlock Block to be added
-     */
-    public void addBlock(Block newBlock) {
-        tetra.add(newBlock);
-    }
-
-    /**
-     * Removes the provided block from the set, if it is present
-     * @param target Block to be removed.
+     * Accesses the spaces owned by this Tetra. The array is not copied and
+     * must not be modified.
+     * @return Coordinate[] containing this Tetra's spaces, in no particular
+     * order.
      */
-    public void removeBlock(Block target) {
-        tetra.remove(target);
+    public Coordinate[] getCells() {
+        return cells;
     }
 
     /**
-     * Accesses the Set containing this Tetra's Blocks.
-     * @return Set<Block> containing this Tetra's Blocks, in no particular order.
+     * Builds Blocks for the spaces owned by this Tetra.
+     * @return Block[] containing a Block for each space, in no particular
+     * order.
      */
-    public HashSet<Block> getTetra() {
-        return tetra;
+    public Block[] getBlocks() {
+        Block[] blocks = new Block[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            blocks[i] = new Block(cells[i], color);
+        }
+        return blocks;
     }
 
     /**
-     * Mutates the Set containing this Tetra's Blocks
-     * @param tetra The new HashSet.
+     * Determines if this Tetra owns the given space.
+     * @param x int representing x value of the space
+     * @param y int representing y value of the space
+     * @return True if one of this Tetra's Blocks is in the space
      */
-    public void setTetra(HashSet<Block> tetra) {
-        this.tetra = tetra;
+    public boolean contains(int x, int y) {
+        for (Coordinate c : cells) {
+            if (c.getX() == x && c.getY() == y) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
-     * Determines if all Blocks owned by this are inbounds
-     * @return Whether or not they are all inbounds
+     * Determines if all Blocks owned by this are inbounds and unoccupied on
+     * the given board.
+     * @param board Board to test against
+     * @return Whether or not they all fit
      */
-    public boolean inbounds() {
-        for (Block b : tetra) {
-            if (!b.inbounds()) {
+    public boolean fits(Board board) {
+        for (Coordinate c : cells) {
+            if (board.isBlocked(c.getX(), c.getY())) {
                 return false;
             }
         }
@@ -224,139 +305,127 @@ public class Tetra{
     }
 
     /**
-     * Moves all of the blocks in this tetra down if and only if they can all
-     * be moved down.
-     * @return Whether or not a movement could be made.
+     * Determines how many rows this Tetra could fall on the given board
+     * before landing.
+     * @param board Board the Tetra is falling on
+     * @return int representing the number of rows to the landing position
      */
-    public boolean moveDown() {
-        HashSet<Block> newBlocks = new HashSet<Block>();
-        for (Block b : tetra) {
-            boolean success = b.moveDown();
-            if (success) {
-                newBlocks.add(b);
-            } else {
-                return false;
+    public int findDropDistance(Board board) {
+        int min = board.getHeight();
+        for (Coordinate c : cells) {
+            int distance = board.findDropDistance(c.getX(), c.getY());
+            if (distance < min) {
+                min = distance;
             }
         }
-        this.setTetra(newBlocks);
-        this.setCenter(new Coordinate(
-                this.getCenter().getX(),
-                this.getCenter().getY() + 1));
-        return true;
+        return min;
     }
 
     /**
-     * Moves all of the blocks in this tetra left if and only if they can all
-     * be moved left.
-     * @return Whether or not a movement could be made.
+     * Moves all of the blocks in this tetra, and its center, by the given
+     * offsets. The caller determines if the result fits on the board.
+     * @param dx int representing horizontal offset
+     * @param dy int representing vertical offset
      */
-    public boolean moveLeft() {
-        Tetra newTetra = new Tetra();
-        Block[] temp = tetra.toArray(new Block[1]);
-        for (int count = 0; count < temp.length; count++) {
-            Block b = temp[count];
-            boolean success = b.moveLeft();
-            if (success) {
-                newTetra.addBlock(b);
-            } else {
-                return false;
-            }
+    public void translate(int dx, int dy) {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = cells[i].translate(dx, dy);
         }
-        this.setTetra(null);
-        this.setTetra(newTetra.getTetra());
-        this.setCenter(new Coordinate(
-                       this.getCenter().getX() - 1,
-                       this.getCenter().getY()));
-        return true;
+        center = center.translate(dx, dy);
     }
 
     /**
-     * Moves all of the blocks in this tetra right if and only if they can all
-     * be moved right.
-     * @return Whether or not a movement could be made.
+     * Moves all of the blocks in this tetra down a row.
      */
-    public boolean moveRight() {
-        Tetra newTetra = new Tetra();
-        for (Block b : this.getTetra()) {
-            boolean success = b.moveRight();
-            if (success) {
-                newTetra.addBlock(b);
-            } else {
-                return false;
-            }
-        }
-        this.setTetra(newTetra.getTetra());
-        this.setCenter(new Coordinate(
-                this.getCenter().getX() + 1,
-                this.getCenter().getY()));
-        return true;
+    public void moveDown() {
+        translate(0, 1);
+    }
+
+    /**
+     * Moves all of the blocks in this tetra left a column.
+     */
+    public void moveLeft() {
+        translate(-1, 0);
+    }
+
+    /**
+     * Moves all of the blocks in this tetra right a column.
+     */
+    public void moveRight() {
+        translate(1, 0);
     }
 
     /**
-     * Determines if all of the blocks in the given Tetra are equivalent (for
-     * this games purposes) to this. Equivalent does not necessarily mean they
-     * are identical(reference the same memory location)
-     * @param other The Tetra to compare this to.
+     * Determines if the given object is a Tetra occupying the same spaces as
+     * this. Equivalent does not necessarily mean they are identical(reference
+     * the same memory location), and color and center are not compared.
+     * @param obj The object to compare this to.
      * @return True if the two Tetras are equivalent.
      */
-    public boolean equals(Tetra other) {
-        boolean equivalent = true;
-        if (other.getTetra().size() != getTetra().size()) {
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Tetra)) {
             return false;
         }
-        for (Block b : tetra) {
+        Coordinate[] otherCells = ((Tetra) obj).cells;
+        if (otherCells.length != cells.length) {
+            return false;
+        }
+        for (Coordinate c : cells) {
             boolean found = false;
-            for (Block otherBlock : tetra) {
-                if (b.equals(otherBlock)) {
+            for (Coordinate otherCell : otherCells) {
+                if (c.equals(otherCell)) {
                     found = true;
                     break;
                 }
             }
             if (!found) {
-                equivalent = false;
-                break;
+                return false;
             }
         }
-        return equivalent;
+        return true;
     }
 
-    //TODO implement hashCode
+    /**
+     * Returns a hash code consistent with equals(), which does not depend on
+     * the order of the spaces.
+     * @return int hash of the spaces owned by this Tetra
+     */
+    @Override
+    public int hashCode() {
+        int hash = 0;
+        for (Coordinate c : cells) {
+            hash += c.hashCode();
+        }
+        return hash;
+    }
 
     /**
-     * Rotates each Block owned by this Tetra clockwise around the Tetra's
-     * center point, if and only if all rotations would be successful.
+     * Rotates each space owned by this Tetra clockwise around the Tetra's
+     * center point. The caller determines if the result fits on the board.
      */
     public void rotateClockwise() {
-        boolean possible = true;
-        for(Block b : tetra){
-            if(b.canRotateCW(center) == false){
-                possible = false;
-                break;
-            }
-        }
-        if(possible){
-            for(Block b : tetra){
-                b.rotateCW(center);
-            }
+        int cx = center.getX();
+        int cy = center.getY();
+        for (int i = 0; i < cells.length; i++) {
+            Coordinate c = cells[i];
+            cells[i] = Coordinate.at(cx - (cy - c.getY()),
+                                     cy - (c.getX() - cx));
         }
     }
 
     /**
-     * Rotates each Block owned by this Tetra counter-clockwise around the Tetra's
-     * center point, if and only if all rotations would be successful.
+     * Rotates each space owned by this Tetra counter-clockwise around the
+     * Tetra's center point. The caller determines if the result fits on the
+     * board.
      */
     public void rotateCounterClockwise() {
-        boolean possible = true;
-        for(Block b : tetra){
-            if(b.canRotateCCW(center) == false){
-                possible = false;
-                break;
-            }
-        }
-        if(possible){
-            for(Block b : tetra){
-                b.rotateCCW(center);
-            }
+        int cx = center.getX();
+        int cy = center.getY();
+        for (int i = 0; i < cells.length; i++) {
+            Coordinate c = cells[i];
+            cells[i] = Coordinate.at(cx + (cy - c.getY()),
+                                     cy + (c.getX() - cx));
         }
     }
 
@@ -366,9 +435,9 @@ public class Tetra{
      */
     public int findTopBound(){
         int max = 0;
-        for(Block b : tetra){
-            if(b.getY() > max){
-                max = b.getY();
+        for(Coordinate c : cells){
+            if(c.getY() > max){
+                max = c.getY();
             }
         }
         return max;
@@ -379,10 +448,10 @@ public class Tetra{
      * @return int representing min x
      */
     public int findLeftBound(){
-        int min = 100;
-        for(Block b : tetra){
-            if(b.getX() < min){
-                min = b.getX();
+        int min = Integer.MAX_VALUE;
+        for(Coordinate c : cells){
+            if(c.getX() < min){
+                min = c.getX();
             }
         }
         return min;
@@ -394,9 +463,9 @@ public class Tetra{
      */
     public int findRightBound(){
         int max = 0;
-        for(Block b : tetra){
-            if(b.getX() > max){
-                max = b.getX();
+        for(Coordinate c : cells){
+            if(c.getX() > max){
+                max = c.getX();
             }
         }
         return max;
@@ -407,10 +476,10 @@ public class Tetra{
      * @return int representing min y
      */
     public int findBottomBound(){
-        int min = 100;
-        for(Block b : tetra){
-            if(b.getY() < min){
-                min = b.getY();
+        int min = Integer.MAX_VALUE;
+        for(Coordinate c : cells){
+            if(c.getY() < min){
+                min = c.getY();
             }
         }
         return min;
@@ -423,9 +492,10 @@ public class Tetra{
      */
     @Override
     public String toString() {
-        String toString = "Tetra:\nCenter: " + center.toString() + "\n[\n";
-        for (Block b : tetra) {
-            toString += b.toString() + "\n";
+        String toString = "Tetra:\nCenter: " + center.toString() + "\n"
+                          + color + "\n[\n";
+        for (Coordinate c : cells) {
+            toString += c.toString() + "\n";
         }
         return toString + "]";
     }
@@ -0,0 +1,126 @@
+import java.awt.Color;
+
+/**
+ * Immutable definition of a piece: its identifier, its Color, where it spawns
+ * on a board of the default width, and the offsets of its spaces from its
+ * center in each of its four rotations. Shapes are created once by a ShapeSet
+ * and shared by every Tetra spawned from them.
+ * @author Zach Cotter
+ */
+public final class TetraShape {
+
+    public static final int ROTATIONS = 4;
+
+    private final char identifier;
+    private final Color color;
+    private final int spawnX;
+    private final int spawnY;
+    private final int[][] dx = new int[ROTATIONS][];
+    private final int[][] dy = new int[ROTATIONS][];
+
+    /**
+     * Constructs a shape from its spaces at spawn. The other rotations are
+     * worked out by turning the spaces clockwise around the center, exactly
+     * as Tetra.rotateClockwise() does.
+     * @param identifier char naming the shape within its ShapeSet
+     * @param color Color of the shape's Blocks
+     * @param center Coordinate of the center at spawn, on a board of the
+     * default width
+     * @param cells Coordinate[] of the spaces at spawn
+     */
+    public TetraShape(char identifier,
+                      Color color,
+                      Coordinate center,
+                      Coordinate[] cells) {
+        if (cells.length == 0) {
+            throw new IllegalArgumentException("Shape " + identifier
+                                               + " has no spaces");
+        }
+        this.identifier = identifier;
+        this.color = color;
+        spawnX = center.getX();
+        spawnY = center.getY();
+        for (int r = 0; r < ROTATIONS; r++) {
+            dx[r] = new int[cells.length];
+            dy[r] = new int[cells.length];
+            for (int i = 0; i < cells.length; i++) {
+                if (r == 0) {
+                    dx[r][i] = cells[i].getX() - spawnX;
+                    dy[r][i] = cells[i].getY() - spawnY;
+                }
+                else {
+                    dx[r][i] = dy[r - 1][i];
+                    dy[r][i] = -dx[r - 1][i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Accessor for the identifier.
+     * @return char naming the shape within its ShapeSet
+     */
+    public char getIdentifier() {
+        return identifier;
+    }
+
+    /**
+     * Accessor for the color.
+     * @return Color of the shape's Blocks
+     */
+    public Color getColor() {
+        return color;
+    }
+
+    /**
+     * Accessor for the number of spaces.
+     * @return int representing the number of Blocks in the shape
+     */
+    public int getSize() {
+        return dx[0].length;
+    }
+
+    /**
+     * Accessor for the center column at spawn.
+     * @return int representing the x value of the center on a board of the
+     * default width
+     */
+    public int getSpawnX() {
+        return spawnX;
+    }
+
+    /**
+     * Accessor for the center row at spawn.
+     * @return int representing the y value of the center
+     */
+    public int getSpawnY() {
+        return spawnY;
+    }
+
+    /**
+     * Accessor for the horizontal offset of a space from the center.
+     * @param rotation int representing quarter turns clockwise from spawn
+     * @param index int representing the space
+     * @return int representing the x offset
+     */
+    public int getDx(int rotation,
+                     int index) {
+        return dx[rotation & (ROTATIONS - 1)][index];
+    }
+
+    /**
+     * Accessor for the vertical offset of a space from the center.
+     * @param rotation int representing quarter turns clockwise from spawn
+     * @param index int representing the space
+     * @return int representing the y offset
+     */
+    public int getDy(int rotation,
+                     int index) {
+        return dy[rotation & (ROTATIONS - 1)][index];
+    }
+
+    @Override
+    public String toString() {
+        return "TetraShape " + identifier;
+    }
+}
@@ -0,0 +1,150 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder events emitted from the key phases of the game. Every event
+ * is disabled by default, so an uninstrumented run only pays for a begin/end
+ * pair on an object the JIT never allocates. Fields that take work to compute
+ * are filled in only after shouldCommit() confirms a recording wants them.
+ * The events are switched on by starting the JVM with
+ * -XX:StartFlightRecording:settings=tetris.jfc
+ * @author Zach Cotter
+ */
+public final class TetrisEvents {
+
+    private static final String CATEGORY = "Tetris";
+
+    private TetrisEvents() {
+    }
+
+    /**
+     * Emitted when the current Tetra is locked into the pile.
+     */
+    @Name("tetris.PieceLock")
+    @Label("Piece Lock")
+    @Category(CATEGORY)
+    @Description("Current Tetra added to the pile, including row clearing")
+    @Enabled(false)
+    @StackTrace(false)
+    public static class PieceLock extends Event {
+
+        @Label("Score")
+        public int score;
+
+        @Label("Board Height")
+        @Description("Rows occupied by the pile after the lock")
+        public int boardHeight;
+    }
+
+    /**
+     * Emitted when the pile is scanned for full rows.
+     */
+    @Name("tetris.RowClear")
+    @Label("Row Clear")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class RowClear extends Event {
+
+        @Label("Rows Cleared")
+        public int rowsCleared;
+
+        @Label("Board Height")
+        @Description("Rows occupied by the pile after clearing")
+        public int boardHeight;
+    }
+
+    /**
+     * Emitted for every frame the render thread draws and shows.
+     */
+    @Name("tetris.FullRepaint")
+    @Label("Full Repaint")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class FullRepaint extends Event {
+
+        @Label("Game Over")
+        public boolean gameOver;
+
+        @Label("Board Height")
+        public int boardHeight;
+    }
+
+    /**
+     * Emitted for every firing of the game Timer, which polls for due game
+     * ticks far more often than they come due.
+     */
+    @Name("tetris.TimerTick")
+    @Label("Timer Tick")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class TimerTick extends Event {
+
+        @Label("Ticks Run")
+        @Description("Game ticks run by this firing, 0 between ticks and more"
+                     + " than 1 when catching up")
+        public int ticks;
+
+        @Label("Level")
+        public int level;
+
+        @Label("Score")
+        public int score;
+    }
+
+    /**
+     * Emitted for every round trip to the high score server.
+     */
+    @Name("tetris.HighScoreRequest")
+    @Label("High Score Request")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class HighScoreRequest extends Event {
+
+        @Label("Operation")
+        public String operation;
+
+        @Label("Entries")
+        @Description("Entries fetched or posted")
+        public int entries;
+
+        @Label("Success")
+        public boolean success;
+    }
+
+    /**
+     * Emitted periodically with the running totals of a TranspositionTable.
+     */
+    @Name("tetris.TranspositionTable")
+    @Label("Transposition Table")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    public static class TranspositionTableStats extends Event {
+
+        @Label("Table")
+        public String table;
+
+        @Label("Probes")
+        public long probes;
+
+        @Label("Hits")
+        public long hits;
+
+        @Label("Stores")
+        public long stores;
+
+        @Label("Hit Rate")
+        @Percentage
+        public double hitRate;
+    }
+}
@@ -2,8 +2,12 @@ import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.FocusEvent;
+import java.awt.event.FocusListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
+import java.util.HashSet;
+import java.util.Set;
 import javax.swing.JApplet;
 import javax.swing.JButton;
 import javax.swing.JFrame;
@@ -39,7 +43,9 @@ public class TetrisFrame extends JApplet {
 
         this.add(buttonPanel, BorderLayout.PAGE_END);
         this.setFocusable(true);
-        this.addKeyListener(new KeyActionListener());
+        KeyActionListener keyListener = new KeyActionListener();
+        this.addKeyListener(keyListener);
+        this.addFocusListener(keyListener);
         this.setVisible(true);
     }
 
@@ -96,7 +102,8 @@ public class TetrisFrame extends JApplet {
 
             @Override
             public void actionPerformed(ActionEvent e) {
-                new HighScoreTableFrame().setVisible(true);
+                HighScoreCache.getShared().get(
+                    table -> new HighScoreTableFrame(table).setVisible(true));
             }
         }
         //action listeners pass to old code
@@ -107,8 +114,7 @@ public class TetrisFrame extends JApplet {
      */
     private class HighScoreTableFrame extends JFrame{
         private JTextArea highScoreLabel;
-        public HighScoreTableFrame(){
-            HighScore h = new HighScore();
+        public HighScoreTableFrame(HighScore h){
             this.setLayout(new GridLayout(1,1,10,10));
             highScoreLabel = new JTextArea(h.toString());
             highScoreLabel.setFont(highScoreLabel.getFont().deriveFont(
@@ -123,9 +129,16 @@ public class TetrisFrame extends JApplet {
     }
 
     /**
-     * Passes KeyEvents that throw KeyAdapter.keyPressed() to the World.
+     * Passes KeyEvents to the World. Keys are tracked as held or released,
+     * so operating system key repeat never reaches the game; holding left or
+     * right repeats through the World's AutoShift instead. Keys released while
+     * another window has the focus are never reported, so losing the focus
+     * forgets every held key.
      */
-    public class KeyActionListener extends KeyAdapter {
+    public class KeyActionListener extends KeyAdapter
+            implements FocusListener {
+
+        private final Set<Integer> heldKeys = new HashSet<Integer>();
 
         /**
          * Passes the provided KeyEvent to the World
@@ -134,37 +147,60 @@ public class TetrisFrame extends JApplet {
         @Override
         public void keyPressed(KeyEvent e) {
             int keyCode = e.getKeyCode();
+            if (!heldKeys.add(keyCode)) {
+                //operating system repeat of a held key
+                return;
+            }
             if (keyCode == KeyEvent.VK_LEFT) {
-                world.throwLeftwardAction();
+                LatencyProbe.keyReceived(e);
+                world.pressShift(-1);
             }
             if (keyCode == KeyEvent.VK_RIGHT) {
-                world.throwRightwardAction();
+                LatencyProbe.keyReceived(e);
+                world.pressShift(1);
             }
             if (keyCode == KeyEvent.VK_DOWN) {
+                LatencyProbe.keyReceived(e);
                 world.throwDownwardAction();
             }
             if (keyCode == KeyEvent.VK_A) {
+                LatencyProbe.keyReceived(e);
                 world.throwCounterClockwiseRotationAction();
             }
             if (keyCode == KeyEvent.VK_S) {
+                LatencyProbe.keyReceived(e);
                 world.throwClockwiseRotationAction();
             }
         }
-    }
 
-    /**
-     * Global function for determining if a Coordinate or Block location is
-     * in the bounds of the grid.
-     * @param x int representing x value of Coordinate or Block location
-     * @param y int representing y value of Coordinate or Block location
-     * @return True if both values are within the bounds of the Tetris grid,
-     * @return False otherwise.
-     */
-    public static boolean inbounds(int x,
-                                   int y) {
-        return ((x >= 0)
-                && (x < World.GRID_WIDTH)
-                && (y >= 0)
-                && (y < World.GRID_HEIGHT));
+        /**
+         * Tells the World a key is no longer held.
+         * @param e KeyEvent generated by user.
+         */
+        @Override
+        public void keyReleased(KeyEvent e) {
+            int keyCode = e.getKeyCode();
+            heldKeys.remove(keyCode);
+            if (keyCode == KeyEvent.VK_LEFT) {
+                world.releaseShift(-1);
+            }
+            if (keyCode == KeyEvent.VK_RIGHT) {
+                world.releaseShift(1);
+            }
+        }
+
+        @Override
+        public void focusGained(FocusEvent e) {
+        }
+
+        /**
+         * Forgets the held keys, whose releases will go to another window.
+         * @param e FocusEvent generated when the applet lost the focus
+         */
+        @Override
+        public void focusLost(FocusEvent e) {
+            heldKeys.clear();
+            world.releaseShifts();
+        }
     }
 }
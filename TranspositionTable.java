@@ -0,0 +1,279 @@
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * Fixed size cache of evaluations of a pile for a Tetra, keyed by the Board's
+ * hash and the Tetra's identifier, so a search that reaches the same pile by
+ * different moves only evaluates it once. Any number of threads may probe and
+ * store at once without locks. Each entry is two longs, the key XORed with the
+ * data and the data itself; a probe that reads halves of two different writes
+ * finds the XOR does not give back its key and treats it as a miss, so a race
+ * can lose an entry but never return another entry's data.
+ * Entries come in buckets of two. The first keeps the entry searched deepest
+ * and the second always takes the newest, so deep results survive a flood of
+ * shallow ones while recent results still get cached.
+ * Probe and hit counts are kept for every table and published to Flight
+ * Recorder as tetris.TranspositionTable events.
+ * @author Zach Cotter
+ */
+public class TranspositionTable {
+
+    //returned by probe() when the key is not in the table
+    public static final long MISSING = -1L;
+    private static final int LONGS_PER_ENTRY = 2;
+    private static final int ENTRIES_PER_BUCKET = 2;
+    //tables to publish statistics for, dropped once no longer used
+    private static final Set<TranspositionTable> TABLES =
+        Collections.synchronizedSet(
+            Collections.newSetFromMap(
+                new WeakHashMap<TranspositionTable, Boolean>()));
+
+    static {
+        FlightRecorder.addPeriodicEvent(TetrisEvents.TranspositionTableStats.class,
+                                        TranspositionTable::publishStats);
+    }
+
+    private final String name;
+    private final AtomicLongArray entries;
+    private final int bucketMask;
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder stores = new LongAdder();
+
+    /**
+     * Constructs an empty table.
+     * @param name String naming the table in statistics
+     * @param buckets int representing the number of buckets, rounded up to a
+     * power of two
+     */
+    public TranspositionTable(String name,
+                              int buckets) {
+        if (buckets <= 0 || buckets > 1 << 26) {
+            throw new IllegalArgumentException("Bucket count out of range: "
+                                               + buckets);
+        }
+        int size = Integer.highestOneBit(buckets);
+        if (size < buckets) {
+            size <<= 1;
+        }
+        this.name = name;
+        bucketMask = size - 1;
+        entries = new AtomicLongArray(size * ENTRIES_PER_BUCKET
+                                      * LONGS_PER_ENTRY);
+        clear();
+        TABLES.add(this);
+    }
+
+    /**
+     * Combines a pile and a Tetra into a key for the table.
+     * @param board Board holding the pile
+     * @param identifier char representing the Tetra to be placed
+     * @return long key
+     */
+    public static long key(Board board,
+                           char identifier) {
+        return board.getHash() ^ Board.mix(identifier);
+    }
+
+    /**
+     * Looks up a key.
+     * @param key long from key()
+     * @return long holding the value and depth stored, read with valueOf()
+     * and depthOf(), or MISSING if the key is not in the table
+     */
+    public long probe(long key) {
+        probes.increment();
+        int base = bucketOf(key);
+        for (int i = 0; i < ENTRIES_PER_BUCKET; i++) {
+            int slot = base + i * LONGS_PER_ENTRY;
+            long data = entries.getOpaque(slot + 1);
+            if ((entries.getOpaque(slot) ^ data) == key && data != MISSING) {
+                hits.increment();
+                return data;
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Stores an evaluation, possibly replacing another.
+     * @param key long from key()
+     * @param value int representing the evaluation
+     * @param depth int representing how deep the evaluation searched, at
+     * least 0
+     */
+    public void store(long key,
+                      int value,
+                      int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Negative depth " + depth);
+        }
+        stores.increment();
+        long data = ((long) value << 32) | depth;
+        int slot = bucketOf(key);
+        long deepData = entries.getOpaque(slot + 1);
+        boolean sameKey = (entries.getOpaque(slot) ^ deepData) == key;
+        if (deepData == MISSING || depthOf(deepData) <= depth || sameKey) {
+            write(slot,
+                  key,
+                  data);
+            return;
+        }
+        write(slot + LONGS_PER_ENTRY,
+              key,
+              data);
+    }
+
+    /**
+     * Empties the table. Not safe to call while other threads use it.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length(); i += LONGS_PER_ENTRY) {
+            entries.setOpaque(i,
+                              0);
+            entries.setOpaque(i + 1,
+                              MISSING);
+        }
+    }
+
+    /**
+     * Reads the evaluation out of a probe result.
+     * @param data long returned by probe()
+     * @return int representing the evaluation
+     */
+    public static int valueOf(long data) {
+        return (int) (data >> 32);
+    }
+
+    /**
+     * Reads the search depth out of a probe result.
+     * @param data long returned by probe()
+     * @return int representing the depth
+     */
+    public static int depthOf(long data) {
+        return (int) data;
+    }
+
+    /**
+     * Accessor for the number of lookups so far.
+     * @return long representing the number of calls to probe()
+     */
+    public long getProbes() {
+        return probes.sum();
+    }
+
+    /**
+     * Accessor for the number of lookups that found their key.
+     * @return long representing the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Determines the fraction of lookups that found their key.
+     * @return double between 0 and 1
+     */
+    public double getHitRate() {
+        long probeCount = getProbes();
+        return probeCount == 0 ? 0 : (double) getHits() / probeCount;
+    }
+
+    private int bucketOf(long key) {
+        return ((int) (key >>> 32) & bucketMask)
+               * ENTRIES_PER_BUCKET * LONGS_PER_ENTRY;
+    }
+
+    private void write(int slot,
+                       long key,
+                       long data) {
+        entries.setOpaque(slot,
+                          key ^ data);
+        entries.setOpaque(slot + 1,
+                          data);
+    }
+
+    /**
+     * Emits a statistics event for every live table.
+     */
+    private static void publishStats() {
+        TranspositionTable[] tables;
+        synchronized (TABLES) {
+            tables = TABLES.toArray(new TranspositionTable[0]);
+        }
+        for (TranspositionTable table : tables) {
+            TetrisEvents.TranspositionTableStats event =
+                new TetrisEvents.TranspositionTableStats();
+            event.table = table.name;
+            event.probes = table.getProbes();
+            event.hits = table.getHits();
+            event.stores = table.stores.sum();
+            event.hitRate = table.getHitRate();
+            event.commit();
+        }
+    }
+
+    /**
+     * Counts placements two Tetras deep from an empty board on several
+     * threads sharing one table, each placing the predefined Tetras in a
+     * different order, and prints the hit rate.
+     * Usage: java TranspositionTable [threads]
+     * @param args String[] of an optional thread count
+     * @throws InterruptedException if interrupted while waiting for threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length >= 1
+                      ? Integer.parseInt(args[0])
+                      : Runtime.getRuntime().availableProcessors();
+        final TranspositionTable table = new TranspositionTable("placements",
+                                                                1 << 16);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            pool.execute(() -> {
+                PlacementSearch search =
+                    new PlacementSearch(Board.DEFAULT_WIDTH,
+                                        Board.DEFAULT_HEIGHT);
+                Board board = new Board();
+                for (int i = 0; i < Tetra.NUMBER_OF_TETRAS; i++) {
+                    char first = Tetra.TETRA_IDENTIFIERS[
+                        (i + offset) % Tetra.NUMBER_OF_TETRAS];
+                    for (Tetra placement : search.findPlacements(board,
+                                                                  first)) {
+                        Board next = board.copy();
+                        for (Coordinate c : placement.getCells()) {
+                            next.place(c.getX(),
+                                       c.getY(),
+                                       placement.getColor());
+                        }
+                        for (char second : Tetra.TETRA_IDENTIFIERS) {
+                            long key = key(next,
+                                           second);
+                            if (table.probe(key) == MISSING) {
+                                table.store(key,
+                                            search.countPlacements(next,
+                                                                   second),
+                                            0);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(1,
+                              TimeUnit.HOURS);
+        System.out.println(table.getProbes() + " probes, " + table.getHits()
+                           + " hits (" + Math.round(table.getHitRate() * 100)
+                           + "%) in " + (System.nanoTime() - start) / 1000000
+                           + " ms");
+    }
+}
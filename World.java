@@ -4,9 +4,13 @@ import java.awt.Graphics;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -16,64 +20,81 @@ import javax.swing.JTextField;
 import javax.swing.Timer;
 
 /**
- * Runs game operations and handles graphics.  Blocks that have already reached
- * the bottom are
- * stored in a matrix representing the game-play grid.  Blocks that are still
- * in motion are stored by a single Tetra, their positions represented as part
- * of a hypothetical grid. Note: The Tetra that is currently in motion is
- * referred to in comments as the "current Tetra", while the Blocks not in
- * motion are referred to as the "pile".
+ * Shows a Game and passes user and Timer actions to it.  Game operations are
+ * run by the Game; after each change the panel publishes a GameSnapshot
+ * through a SnapshotPublisher, from which its RenderCanvas's render thread and
+ * any other reader copy it without locking, so game logic never paints or
+ * waits on a reader. Game ticks are run by
+ * System.nanoTime() rather than by counting Timer events, and held left and
+ * right keys repeat through an AutoShift on the same clock, so neither depends
+ * on how promptly the Timer fires. Note: The Tetra that is currently in
+ * motion is referred to in comments as the "current Tetra", while the Blocks
+ * not in motion are referred to as the "pile".
  * @author Zach Cotter
  */
 public class World extends JPanel {
 
     //Game and Graphics Constants
-    public static final int GRID_HEIGHT = 20;
-    public static final int GRID_WIDTH = 10;
     public static final int BLOCK_SIZE = 30;
-    public static final int PANEL_WIDTH = BLOCK_SIZE * GRID_WIDTH;
-    public static final int PANEL_HEIGHT = BLOCK_SIZE * GRID_HEIGHT;
     private static final int MAX_CHARS_ON_HIGH_SCORE_LINE = 23; //includes score
     private static final String PAUSE_TEXT = "     Pause";
     private static final String NEW_GAME_TEXT = "  New Game";
     private static final String CONTINUE_TEXT = "   Continue";
-    private static final int TIMER_INITIAL_DELAY = 600;
-    private static final int DEFAULT_COMPONENT_SEPARATOR = 10;
+    //the Timer polls for due ticks and auto shifts, speed comes from the
+    //GravityCurve
+    private static final int POLL_DELAY = 2;
+    private static final long TICK_NANOS = Game.TICK_MILLIS * 1000000L;
+    //after a longer stall the missed ticks are dropped rather than rushed
+    private static final int MAX_CATCH_UP_TICKS = 8;
     private static final float SCORE_TEXT_FONT_SIZE = 20;
     private static final int SCORE_TEXT_X_LOCATION = 10;
     private static final int SCORE_TEXT_Y_LOCATION = 15;
-    //Velocity increases by 20 milliseconds per 1000 points, see below
-    private static final int TIMER_DELAY_DECREMENT_PER_THOUSAND_VALUE = 20;
+    //lowest row the score can reach into, with room below the baseline
+    static final int SCORE_BOTTOM_ROW =
+        (SCORE_TEXT_Y_LOCATION + (int) SCORE_TEXT_FONT_SIZE) / BLOCK_SIZE;
+    private static final String REPLAY_DIRECTORY_PROPERTY = "tetris.replays";
+    public static final String REPLAY_EXTENSION = ".ttr";
     private static final Color BACKGROUND_COLOR = Color.WHITE;
-    private static final Color FOREGROUND_COLOR = Color.BLACK;
-    private static final int POINTS_PER_BLOCK = 10;
-    private static final int POINTS_PER_TOTAL_CLEAR = 500;
-    private static final int POINTS_PER_CLEAR = 100;
 
     //Game and Graphics fields.
-    private Tetra current;
+    private Game game;
+    private Replay replay;
     private Timer timer;
-    private Block[][] grid;
-    private boolean gameOver;
     private boolean gameInProgress;
     private boolean paused;
-    private int score;
-    private int lastThousandForScore;
-    private HighScore highScoreTable;
+    private GravityCurve gravityCurve = GravityCurve.STANDARD;
     private HighScoreFrame highScoreFrame;
+    private final AutoShift autoShift = new AutoShift();
+    private final SnapshotPublisher snapshots = new SnapshotPublisher();
+    private final RenderCanvas canvas = new RenderCanvas(snapshots);
+    private long nextTickNanos;
 
     /**
-     * Constructs a new world and waits for user interaction.
+     * Constructs a new world with a board of the default size and waits for
+     * user interaction.
      */
     public World() {
+        this(Board.DEFAULT_WIDTH,
+             Board.DEFAULT_HEIGHT);
+    }
+
+    /**
+     * Constructs a new world with a board of the given size and waits for
+     * user interaction.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     */
+    public World(int columns,
+                 int rows) {
+        game = new Game(columns,
+                        rows);
         gameInProgress = false;
         paused = false;
-		try{
-			highScoreTable = new HighScore();
-		}
-		catch (Exception e){
-			System.out.println("High score broke, moving on");
-		}
+        //fetched in the background, so it is ready by the end of the game
+        HighScoreCache.getShared().prefetch();
+        this.setLayout(new BorderLayout());
+        this.add(canvas,
+                 BorderLayout.CENTER);
         setUpGUI();
     }
 
@@ -96,48 +117,74 @@ public class World extends JPanel {
     }
 
     /**
-     * Starts a new game.
+     * Starts a new game on a board the size of the last one.
      */
     public void startGame() {
+        startGame(game.getBoard().getWidth(),
+                  game.getBoard().getHeight());
+    }
+
+    /**
+     * Starts a new game on a board of the given size.
+     * @param columns int representing the width of the board
+     * @param rows int representing the height of the board
+     */
+    public void startGame(int columns,
+                          int rows) {
+        Board board = game.getBoard();
+        boolean resized = columns != board.getWidth()
+                          || rows != board.getHeight();
+        long seed = System.nanoTime();
+        replay = new Replay(columns,
+                            rows,
+                            seed,
+                            gravityCurve,
+                            Game.DEFAULT_LOCK_DELAY_TICKS,
+                            Game.DEFAULT_LOCK_RESETS);
+        game = replay.newGame();
+        if (resized) {
+            setUpGUI();
+            revalidate();
+        }
         gameInProgress = true;
         paused = false;
+        releaseShifts();
         TetrisFrame.gameButton.setText(PAUSE_TEXT);
-        current = generateTetra();
-
-        gameOver = false;
-        score = 0;
-        lastThousandForScore = 0;
-        grid = new Block[GRID_WIDTH][GRID_HEIGHT];
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                grid[x][y] = null;
-            }
-        }
-        timer = new Timer(TIMER_INITIAL_DELAY,
+        nextTickNanos = System.nanoTime() + TICK_NANOS;
+        timer = new Timer(POLL_DELAY,
                           new TimerActionListener());
         timer.start();
-        paintComponent(this.getGraphics());
+        publish();
+    }
+
+    /**
+     * Publishes the state of the game to the render thread and any other
+     * readers, without waiting for them.
+     */
+    private void publish() {
+        snapshots.publish(game);
+        canvas.wake();
     }
 
     /**
      * Sets up graphics components.
      */
     private void setUpGUI() {
-        this.setSize(PANEL_WIDTH,
-                     PANEL_HEIGHT);
-        this.setLayout(new BorderLayout());
+        this.setSize(BLOCK_SIZE * game.getBoard().getWidth(),
+                     BLOCK_SIZE * game.getBoard().getHeight());
         this.setPreferredSize(this.getSize());
         this.setFocusable(true);
         this.setBackground(BACKGROUND_COLOR);
-        this.setDoubleBuffered(true);
         this.setVisible(true);
     }
 
     /**
-     * Pauses the game on next paint
+     * Pauses the game on next paint. Held left and right keys are forgotten,
+     * so time spent paused never comes due as auto shifts.
      */
     public void pause() {
         paused = true;
+        releaseShifts();
         TetrisFrame.gameButton.setText(CONTINUE_TEXT);
         timer.stop();
     }
@@ -148,444 +195,344 @@ public class World extends JPanel {
     public void unpause() {
         paused = false;
         TetrisFrame.gameButton.setText(PAUSE_TEXT);
+        nextTickNanos = System.nanoTime() + TICK_NANOS;
         timer.start();
     }
 
     /**
-     * Paints the score on the given Graphics
+     * Paints a score on the given Graphics
      * @param g Graphics the score will be painted on.
+     * @param score int representing the score painted
      */
-    private void paintScore(Graphics g) {
+    static void paintScore(Graphics g,
+                           int score) {
         g.setFont(g.getFont().deriveFont(SCORE_TEXT_FONT_SIZE));
         g.setColor(Color.GREEN);
         g.drawString("" + score,
                      SCORE_TEXT_X_LOCATION,
                      SCORE_TEXT_Y_LOCATION);
-        int thousands = score / 1000;
-        if (thousands > lastThousandForScore) {
-            lastThousandForScore = thousands;
-            timer.setDelay(
-                    timer.getDelay() - TIMER_DELAY_DECREMENT_PER_THOUSAND_VALUE);
-        }
     }
 
     /**
-     * Handles Timer events by passing them to the appropriate method.
+     * Mutator for the speed curve used from the next game on. The curve is
+     * part of a game's Replay, so it can not change mid game.
+     * GravityCurve.HIGH_GRAVITY plays every level at 20G.
+     * @param gravityCurve GravityCurve giving the speed of each level
      */
-    public class TimerActionListener implements ActionListener {
-
-        /**
-         * Calls World.throwStepAction() when the Timer throws an ActionEvent
-         * @param e the ActionEvent thrown by the Timer.
-         */
-        @Override
-        public void actionPerformed(ActionEvent e) {
-            throwStepAction();
-        }
+    public void setGravityCurve(GravityCurve gravityCurve) {
+        this.gravityCurve = gravityCurve;
     }
 
     /**
-     * Paints the entire panel.
-     * @param g Graphics to be painted on.
+     * Accessor for the recording of the game being shown. Between games this
+     * is the recording of the last game played.
+     * @return Replay of the game, or null if no game has started
      */
-    @Override
-    protected void paintComponent(Graphics g) {
-        if (gameOver) {
-            g.setFont(g.getFont().deriveFont((float) 80));
-            g.setColor(FOREGROUND_COLOR);
-            g.drawString(" GAME ",
-                         DEFAULT_COMPONENT_SEPARATOR,
-                         100);
-            g.drawString(" OVER ",
-                         DEFAULT_COMPONENT_SEPARATOR,
-                         200);
-            TetrisFrame.gameButton.setText(NEW_GAME_TEXT);
-        }
-        if (gameInProgress) {
-            current.paint(g);
-            paintEmpties(g);
-            paintPile(g);
-        }
+    public Replay getReplay() {
+        return replay;
     }
 
     /**
-     * Paints spaces not occupied by Blocks in the pile
-     * @param g Graphics to paint on.
+     * Accessor for the published state of the game being shown, for threads
+     * other than the event dispatch thread, which must not touch the Game
+     * itself.
+     * @return SnapshotPublisher the game is published through after each
+     * change
      */
-    private void paintEmpties(Graphics g) {
-        g.setColor(BACKGROUND_COLOR);
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                if (grid[x][y] == null) {
-                    g.fillRect(x * BLOCK_SIZE,
-                               y * BLOCK_SIZE,
-                               BLOCK_SIZE,
-                               BLOCK_SIZE);
-                }
-            }
-        }
+    public SnapshotPublisher getSnapshots() {
+        return snapshots;
     }
 
     /**
-     * Paints spaces occupied by Blocks in the pile.
-     * @param g Graphics to paint on.
+     * Accessor for the game being shown. Between games this is the last game
+     * played.
+     * @return Game whose state this panel paints
      */
-    private void paintPile(Graphics g) {
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                if (grid[x][y] != null) {
-                    grid[x][y].paint(g);
-                }
-            }
-        }
-        paintScore(g);
+    public Game getGame() {
+        return game;
     }
 
     /**
-     * Paints spaces occupied by the Blocks of the provided Tetra the background
-     * color, then paints spaces occupied by currently falling Tetra appropriately.
-     * Intended to minimize flickering from excessive painting, so it should
-     * be called if nothing changes except the position of the current tetra.
-     * @param oldTetra Tetra containing Blocks who's spaces will be erased.
+     * Handles Timer events by passing them to the appropriate method.
      */
-    private void paintCurrent(Tetra oldTetra) {
-        HashSet<Block> allBlocks = new HashSet<Block>();
-        allBlocks.addAll(current.getTetra());
-        allBlocks.addAll(oldTetra.getTetra());
-        if (current.getTetra().size() == allBlocks.size()) {
-            return;
-        }
-        for (Block b : allBlocks) {
-            boolean occupied = setContains(current.getTetra(),
-                                           b);
-            if (occupied) {
-                b.paint(this.getGraphics());
-            }
-            else {
-                b.paintAsEmpty(this.getGraphics());
+    public class TimerActionListener implements ActionListener {
+
+        /**
+         * Calls World.runDueTicks() when the Timer throws an ActionEvent
+         * @param e the ActionEvent thrown by the Timer.
+         */
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            TetrisEvents.TimerTick event = new TetrisEvents.TimerTick();
+            event.begin();
+            int ticks = runDueTicks();
+            event.end();
+            if (event.shouldCommit()) {
+                event.ticks = ticks;
+                event.level = game.getLevel();
+                event.score = game.getScore();
+                event.commit();
             }
         }
     }
 
     /**
-     * Adds the current Tetra to the pile, then processes the pile.
+     * Runs every game tick that has come due, each preceded by the auto
+     * shifts due before it, then the auto shifts due since the last tick.
+     * @return int representing the number of game ticks run
      */
-    private void addCurrentToPile() {
-        for (Block b : current.getTetra()) {
-            grid[b.getX()][b.getY()] = b;
-            score += POINTS_PER_BLOCK;
+    private int runDueTicks() {
+        long now = System.nanoTime();
+        int ticks = 0;
+        while (now - nextTickNanos >= 0 && !paused) {
+            if (ticks == MAX_CATCH_UP_TICKS) {
+                nextTickNanos = now + TICK_NANOS;
+                break;
+            }
+            applyAutoShift(nextTickNanos);
+            throwStepAction();
+            nextTickNanos += TICK_NANOS;
+            ticks++;
         }
-        dumpFullRows();
-        checkGridEmptyForScore();
-        paintComponent(this.getGraphics());
+        applyAutoShift(now);
+        return ticks;
     }
 
     /**
-     * Determines if there are no blocks in the grid for scoring purposes.
+     * Moves the current Tetra by the auto shifts due at the given time.
+     * @param nanos long representing the System.nanoTime() to shift up to
      */
-    private void checkGridEmptyForScore() {
-        boolean emptyGrid = true;
-        for (int y = 0; y < GRID_HEIGHT; y++) {
-            for (int x = 0; x < GRID_WIDTH; x++) {
-                if (grid[x][y] != null) {
-                    emptyGrid = false;
-                    break;
-                }
-            }
-            if (!emptyGrid) {
+    private void applyAutoShift(long nanos) {
+        int moves = autoShift.poll(nanos);
+        String identifier = autoShift.getDirection() < 0 ? "left" : "right";
+        for (int i = 0; i < moves; i++) {
+            if (!throwAction(identifier)) {
                 break;
             }
         }
-        if (emptyGrid) {
-            score += POINTS_PER_TOTAL_CLEAR;
-        }
     }
 
     /**
-     * Erases rows of the grid that are full and moves rows above down as needed.
+     * Tells the World that the left or right key went down. A new press moves
+     * the current Tetra at once, and holding it repeats through the AutoShift.
+     * @param direction int representing -1 for left or 1 for right
      */
-    private void dumpFullRows() {
-        for (int y = 0; y < GRID_HEIGHT; y++) {
-            boolean rowFull = true;
-            for (int x = 0; x < GRID_WIDTH; x++) {
-                if (grid[x][y] == null) {
-                    rowFull = false;
-                    break;
-                }
-            }
-            if (rowFull) {
-                deleteRow(y);
-                score += POINTS_PER_CLEAR;
-            }
+    public void pressShift(int direction) {
+        if (autoShift.press(direction,
+                            System.nanoTime())) {
+            throwAction(direction < 0 ? "left" : "right");
         }
     }
 
     /**
-     * Shifts all rows above the given row down one.
-     * @param row int representing highest row that is not moved down.
+     * Tells the World that the left or right key went up.
+     * @param direction int representing -1 for left or 1 for right
      */
-    private void shiftAllAboveDownOne(int row) {
-        for (int y = row; y >= 0; y--) {
-            for (int x = 0; x < GRID_WIDTH; x++) {
-                if (grid[x][y] != null) {
-                    grid[x][y].moveDown();
-                    grid[x][y + 1] = grid[x][y];
-                    grid[x][y] = null;
-                }
-            }
-        }
+    public void releaseShift(int direction) {
+        autoShift.release(direction,
+                          System.nanoTime());
     }
 
     /**
-     * Deletes the given row and moves all rows above it down by one.
-     * @param row int representing row to delete.
+     * Tells the World that neither the left nor the right key is held any
+     * more, for when their releases may never arrive, such as when the window
+     * loses the keyboard focus.
      */
-    private void deleteRow(int row) {
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            grid[x][row] = null;
-        }
-        shiftAllAboveDownOne(row);
+    public void releaseShifts() {
+        autoShift.reset();
     }
 
     /**
-     * Determines if the blocks in motion have collided with
-     * stationary blocks.
-     * @return Whether or not a collision is taking place.
-     */
-    private boolean checkIfCurrentIntersectsPile() {
-        boolean overlap = false;
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            for (int y = 0; y < GRID_HEIGHT; y++) {
-                if (grid[x][y] != null) {
-                    for (Block b : current.getTetra()) {
-                        if (b.equals(grid[x][y])) {
-                            overlap = true;
-                            break;
-                        }
-                    }
-                }
-                if (overlap == true) {
-                    break;
-                }
+     * Paints the given rows of a snapshot of a Game exactly as the panel shows
+     * them: empty spaces, the pile, and any part of the current Tetra and its
+     * ghost within them, followed by the score. Used by the panel's render
+     * thread and by anything that draws games offscreen, which keeps a
+     * GameSnapshot to capture() each state into, so only rows that changed
+     * are copied.
+     * @param g Graphics to paint on.
+     * @param snapshot GameSnapshot to paint
+     * @param fromY int representing the highest row to paint
+     * @param toY int representing the lowest row to paint
+     */
+    public static void paintGame(Graphics g,
+                                 GameSnapshot snapshot,
+                                 int fromY,
+                                 int toY) {
+        Color color = snapshot.getCurrentColor();
+        int ghostDistance = snapshot.getGhostDistance();
+        paintEmpties(g,
+                     snapshot,
+                     fromY,
+                     toY);
+        paintPile(g,
+                  snapshot,
+                  fromY,
+                  toY);
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int ghostY = snapshot.getCurrentY(i) + ghostDistance;
+            if (ghostY >= fromY && ghostY <= toY) {
+                Block.paintGhost(g,
+                                 snapshot.getCurrentX(i),
+                                 ghostY,
+                                 color);
             }
-            if (overlap == true) {
-                break;
+        }
+        for (int i = 0; i < snapshot.getCurrentSize(); i++) {
+            int y = snapshot.getCurrentY(i);
+            if (y >= fromY && y <= toY) {
+                Block.paint(g,
+                            snapshot.getCurrentX(i),
+                            y,
+                            color);
             }
         }
-        return overlap;
+        paintScore(g,
+                   snapshot.getScore());
     }
 
     /**
-     * Determines if blocks are present in the top most row of the game-play
-     * grid, and if so responds appropriately.
-     */
-    private void checkGameOver() {
-        for (int x = 0; x < GRID_WIDTH; x++) {
-            if (grid[x][0] != null) {
-                gameOver = true;
-                checkHighScorer();
-                pause();
-                gameInProgress = false;
-                TetrisFrame.gameButton.setText(NEW_GAME_TEXT);
+     * Paints spaces in the given rows not occupied by Blocks in the pile
+     * @param g Graphics to paint on.
+     * @param snapshot GameSnapshot holding the pile
+     * @param fromY int representing the highest row to paint
+     * @param toY int representing the lowest row to paint
+     */
+    private static void paintEmpties(Graphics g,
+                                     GameSnapshot snapshot,
+                                     int fromY,
+                                     int toY) {
+        g.setColor(BACKGROUND_COLOR);
+        //rows above the pile are painted as a single rectangle
+        int pileTop = Math.max(fromY,
+                               snapshot.getTop());
+        if (pileTop > fromY) {
+            g.fillRect(0,
+                       fromY * BLOCK_SIZE,
+                       snapshot.getWidth() * BLOCK_SIZE,
+                       (pileTop - fromY) * BLOCK_SIZE);
+        }
+        for (int y = pileTop; y <= toY; y++) {
+            for (int x = 0; x < snapshot.getWidth(); x++) {
+                if (snapshot.getColor(x,
+                                      y) == null) {
+                    g.fillRect(x * BLOCK_SIZE,
+                               y * BLOCK_SIZE,
+                               BLOCK_SIZE,
+                               BLOCK_SIZE);
+                }
             }
         }
     }
 
     /**
-     * Abstracts singular horizontal and vertical movements of the Tetra
-     * currently in motion. Parameter indicates lateral offset of target
-     * location. A movement is made if and only if all Blocks of the Tetra
-     * currently in motion can complete the motion in the same direction.
-     * @param direction int representing lateral offset of target location
-     * (ie -1==left, 0==done, 1==right)
-     * @return whether or not movement was successful
-     */
-    private boolean attemptToMoveCurrent(int direction) {
-        boolean possible = true;
-        boolean putInPile = false;
-        /*
-         * For each block in the tetra, the new x and y positions are
-         * determined by separately.
-         */
-        for (Block b : current.getTetra()) {
-            int currentX = b.getX();
-            int currentY = b.getY();
-            int targetX = currentX + direction;
-            int targetY = -1;
-            if (direction == 0) {
-                targetY = currentY + 1;
-            }
-            else {
-                targetY = currentY;
-            }
-            if (TetrisFrame.inbounds(targetX,
-                                     targetY)) {
-                boolean filled = (grid[targetX][targetY] != null);
-                if (filled) {
-                    possible = false;
-                    if (direction == 0) {
-                        putInPile = true;
-                    }
+     * Paints spaces in the given rows occupied by Blocks in the pile.
+     * @param g Graphics to paint on.
+     * @param snapshot GameSnapshot holding the pile
+     * @param fromY int representing the highest row to paint
+     * @param toY int representing the lowest row to paint
+     */
+    private static void paintPile(Graphics g,
+                                  GameSnapshot snapshot,
+                                  int fromY,
+                                  int toY) {
+        for (int y = Math.max(fromY,
+                              snapshot.getTop()); y <= toY; y++) {
+            for (int x = 0; x < snapshot.getWidth(); x++) {
+                Color color = snapshot.getColor(x,
+                                                y);
+                if (color != null) {
+                    Block.paint(g,
+                                x,
+                                y,
+                                color);
                 }
-
-            }
-            else {
-                possible = false;
-            }
-            if (!((targetY >= 0) && (targetY < 20))) {
-                putInPile = true;
-            }
-        }
-        if (possible) {
-            if (direction == 0) {
-                current.moveDown();
-            }
-            if (direction == 1) {
-                current.moveRight();
             }
-            if (direction == -1) {
-                current.moveLeft();
-            }
-            return true;
-        }
-        else if (putInPile) {
-            addCurrentToPile();
-            current = generateTetra();
-            paintCurrent(current);
-            return false;
-        }
-        else {
-            return false;
         }
     }
 
     /**
-     * Recursively moves the Tetra currently in motion down until it can
-     * no longer.
-     * @return always returns false.
+     * Determines if blocks are present in the top most row of the game-play
+     * grid, and if so responds appropriately.
      */
-    private boolean attemptToMoveCurrentToMaximumDownwardPosition() {
-        boolean keepGoing = true;
-        while (keepGoing) {
-            keepGoing = attemptToMoveCurrentDown();
+    private void checkGameOver() {
+        if (game.isGameOver()) {
+            saveReplay();
+            checkHighScorer();
+            pause();
+            gameInProgress = false;
+            TetrisFrame.gameButton.setText(NEW_GAME_TEXT);
         }
-        return keepGoing;
     }
 
     /**
-     * Rotates the tetra currently in motion if possible.
-     * @param clockwise whether or not the rotation is clockwise
-     * @return whether or not a rotation could be made.
+     * Writes the Replay of the finished game to the directory named by the
+     * tetris.replays system property, if it is set.
      */
-    private boolean attemptToRotateCurrent(boolean clockwise) {
-        if (clockwise) {
-            current.rotateClockwise();
-            boolean overlap = checkIfCurrentIntersectsPile();
-            if (overlap) {
-                current.rotateCounterClockwise();
-            }
+    private void saveReplay() {
+        String directory = System.getProperty(REPLAY_DIRECTORY_PROPERTY);
+        if (directory == null) {
+            return;
         }
-        else {
-            current.rotateCounterClockwise();
-            boolean overlap = checkIfCurrentIntersectsPile();
-            if (overlap) {
-                current.rotateClockwise();
-            }
+        File file = new File(directory,
+                             "tetris-" + replay.getSeed() + REPLAY_EXTENSION);
+        try (OutputStream out =
+                new BufferedOutputStream(new FileOutputStream(file))) {
+            replay.write(out);
+        }
+        catch (IOException ex) {
+            Logger.getLogger(World.class.getName()).log(Level.SEVERE,
+                                                        null,
+                                                        ex);
         }
-        return true;
     }
 
     /**
      * Handles actions based on the provided identifier and paints
      * appropriately.
      * @param identifier String representing requested action.
+     * @return whether or not the current Tetra moved
      */
-    private void throwAction(String identifier) {
-        if (!paused) {
-            boolean actionSuccess = false;
-            Tetra oldTetra = current.cloneMethod();
-            if (identifier.equals("step")) {
-                actionSuccess = attemptToMoveCurrentDown();
-            }
-            if (identifier.equals("left")) {
-                actionSuccess = attemptToMoveCurrentLeft();
-            }
-            if (identifier.equals("right")) {
-                actionSuccess = attemptToMoveCurrentRight();
-            }
-            if (identifier.equals("down")) {
-                actionSuccess = attemptToMoveCurrentToMaximumDownwardPosition();
-            }
-            if (identifier.equals("cwr")) {
-                actionSuccess = attemptToRotateCurrent(true);
-            }
-            if (identifier.equals("ccwr")) {
-                actionSuccess = attemptToRotateCurrent(false);
-            }
-            if (actionSuccess) {
-                paintCurrent(oldTetra);
-            }
-            checkGameOver();
-            if (gameOver) {
-                paintComponent(this.getGraphics());
-            }
+    private boolean throwAction(String identifier) {
+        if (paused || !gameInProgress) {
+            return false;
         }
-    }
-
-    /**
-     * Determines if given Set of Blocks contains a Block equivalent to the
-     * given target Block.  Equivalency is not based on default hash
-     * equivalency, but on the custom comparator defined in the Block class.
-     * @param set Set to be searched
-     * @param target Search element.
-     * @return True if the Block was found, otherwise false
-     */
-    private static boolean setContains(Set<Block> set,
-                                       Block target) {
-        for (Block b : set) {
-            if (b.equals(target)) {
-                return true;
+        boolean actionSuccess = false;
+        int oldLockCount = game.getLockCount();
+        byte action = -1;
+        if (identifier.equals("step")) {
+            action = Replay.STEP;
+        }
+        if (identifier.equals("left")) {
+            action = Replay.LEFT;
+        }
+        if (identifier.equals("right")) {
+            action = Replay.RIGHT;
+        }
+        if (identifier.equals("down")) {
+            action = Replay.DROP;
+        }
+        if (identifier.equals("cwr")) {
+            action = Replay.CLOCKWISE;
+        }
+        if (identifier.equals("ccwr")) {
+            action = Replay.COUNTER_CLOCKWISE;
+        }
+        if (action != -1) {
+            replay.record(action);
+            actionSuccess = Replay.apply(game,
+                                         action);
+            //ticks are not key presses, and must not stand in for one
+            if (action != Replay.STEP) {
+                LatencyProbe.applied();
             }
         }
-        return false;
-    }
-
-    /**
-     * Pseudorandomly generates a new Tetra from one of the predefined options.
-     * @see java.util.Random
-     * @return a Tetra
-     */
-    private Tetra generateTetra() {
-        Random generator = new Random();
-        int random = generator.nextInt(Tetra.NUMBER_OF_TETRAS);
-        return new Tetra(Tetra.TETRA_IDENTIFIERS[random]);
-    }
-
-    /**
-     * Convenience function that handles singular vertical movement of the
-     * current Tetra.
-     * @return whether or not the movement was successful.
-     */
-    private boolean attemptToMoveCurrentDown() {
-        return attemptToMoveCurrent(0);
-    }
-
-    /**
-     * Convenience function that handles singular leftward movement of the
-     * current Tetra.
-     * @return whether or not the movement was successful
-     */
-    private boolean attemptToMoveCurrentLeft() {
-        return attemptToMoveCurrent(-1);
-    }
-
-    /**
-     * Convenience function that handles singular rightward movement of the
-     * current Tetra.
-     * @return whether or not the movement was successful
-     */
-    private boolean attemptToMoveCurrentRight() {
-        return attemptToMoveCurrent(1);
+        checkGameOver();
+        //a tick that moved nothing leaves the picture as it was
+        if (actionSuccess || action != Replay.STEP
+            || game.getLockCount() != oldLockCount) {
+            publish();
+        }
+        return actionSuccess;
     }
 
     /**
@@ -655,7 +602,6 @@ public class World extends JPanel {
          * Constructs a new dialog.
          */
         public HighScoreFrame() {
-            gameOver = false;
             pause();
             this.setSize(300,
                          200);
@@ -683,7 +629,7 @@ public class World extends JPanel {
                         true);
                 return;
             }
-            String scoreString = score + "";
+            String scoreString = game.getScore() + "";
             int maxNameSize =
                 MAX_CHARS_ON_HIGH_SCORE_LINE - 2 - scoreString.length();
             if (nameField.getText().length() > maxNameSize) {
@@ -698,7 +644,10 @@ public class World extends JPanel {
                                                 score);
             highScoreTable.save();
             */
-            highScoreTable.postScore(new HighScoreEntry(nameField.getText(), score));
+            HighScoreCache.getShared().postScore(
+                new HighScoreEntry(nameField.getText(),
+                                   game.getScore()),
+                replay);
             this.dispose();
             this.setVisible(false);
 
@@ -727,12 +676,15 @@ public class World extends JPanel {
      * it opens a HighScoreFrame dialog.
      */
     private void checkHighScorer() {
-        if (score < highScoreTable.getValueToQualify()) {
-            return;
-        }
-        if (highScoreFrame == null || highScoreFrame.isVisible() == false) {
-            highScoreFrame = new HighScoreFrame();
-            highScoreFrame.setVisible(true);
-        }
+        final int score = game.getScore();
+        HighScoreCache.getShared().get(table -> {
+            if (score < table.getValueToQualify()) {
+                return;
+            }
+            if (highScoreFrame == null || highScoreFrame.isVisible() == false) {
+                highScoreFrame = new HighScoreFrame();
+                highScoreFrame.setVisible(true);
+            }
+        });
     }
 }
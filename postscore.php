@@ -1,7 +1,27 @@
 <?php
+	$score = intval($_REQUEST['score']);
+	//games sent with a replay are played back by ScoreVerifier first
+	if (isset($_REQUEST['replay'])) {
+		$context = stream_context_create(array('http' => array(
+			'method' => 'POST',
+			'header' => "Content-Type: application/x-www-form-urlencoded\r\n",
+			'content' => http_build_query(array('score' => $score,
+			                                    'replay' => $_REQUEST['replay'])),
+			'ignore_errors' => true)));
+		$verdict = @file_get_contents("http://localhost:8765/verify", false, $context);
+		if ($verdict === false || $verdict == "busy") {
+			header("HTTP/1.1 503 Service Unavailable");
+			header("Retry-After: 1");
+			exit;
+		}
+		if ($verdict != "accepted") {
+			header("HTTP/1.1 403 Forbidden");
+			exit;
+		}
+	}
 	mysql_connect("mysql.zachcotter.com","tetris_hs","password");
 	mysql_select_db("tetris_hs");
 	//mysql_query("insert into entries values('Test0',50)");
-	mysql_query("insert into entries values('".$_REQUEST['name']."', ".$_REQUEST['score'].")");
+	mysql_query("insert into entries values('".mysql_real_escape_string($_REQUEST['name'])."', ".$score.")");
 	mysql_close();
 ?>
@@ -4,6 +4,17 @@
     $query=mysql_query("SELECT * FROM entries ORDER BY score desc LIMIT 0, 10");
     while($entry=mysql_fetch_assoc($query))
         $output[]=$entry;
-    print(json_encode($output));
     mysql_close();
+    //clients send back the tag of the table they hold, and only download
+    //the table again if it changed
+    $body=json_encode($output);
+    $etag='"'.md5($body).'"';
+    header("ETag: ".$etag);
+    header("Cache-Control: no-cache");
+    if(isset($_SERVER['HTTP_IF_NONE_MATCH'])
+       && trim($_SERVER['HTTP_IF_NONE_MATCH'])==$etag){
+        header("HTTP/1.1 304 Not Modified");
+        exit;
+    }
+    print($body);
 ?>